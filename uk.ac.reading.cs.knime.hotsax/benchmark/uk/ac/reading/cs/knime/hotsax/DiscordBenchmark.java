@@ -0,0 +1,212 @@
+package uk.ac.reading.cs.knime.hotsax;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * Times HOTSAX against the brute force search on reproducible synthetic series, to track the
+ * speedup from release to release. A series is a random walk with anomalies injected at
+ * random places, a sine burst, a flat run or a burst of noise in turn, each a window long.
+ * Both engines search it with the same settings; their distance calls, median wall times and
+ * discords are printed, with the speedup factors and whether the discords agree.
+ *
+ * Usage: DiscordBenchmark [length] [window size] [anomalies] [seed] [threads] [runs]
+ *
+ * @author Ryan Faulkner
+ */
+public final class DiscordBenchmark {
+	/**
+	 * Constructor.
+	 */
+	private DiscordBenchmark() {}
+
+	/**
+	 * Runs the benchmark.
+	 * @param args The length, window size, number of anomalies, seed, threads and runs, all optional.
+	 * @throws Exception if a search fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		int length = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+		int windowSize = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+		int anomalies = (args.length > 2) ? Integer.parseInt(args[2]) : 3;
+		long seed = (args.length > 3) ? Long.parseLong(args[3]) : 42L;
+		int threads = (args.length > 4) ? Integer.parseInt(args[4]) : 1;
+		int runs = (args.length > 5) ? Integer.parseInt(args[5]) : 3;
+
+		int[] injected = new int[anomalies];
+		double[] series = generate(length, windowSize, injected, seed);
+		System.out.println("Series of " + length + ", window size " + windowSize + ", seed " + seed + ", anomalies at "
+				+ Arrays.toString(injected));
+
+		Result hotsax = run(series, windowSize, anomalies, seed, threads, runs, HotSAXNodeModel.HOTSAX_ENGINE);
+		Result bruteForce = run(series, windowSize, anomalies, seed, threads, runs, HotSAXNodeModel.BRUTE_FORCE_ENGINE);
+		for (Result result : new Result[]{hotsax, bruteForce})
+			System.out.println(result.engine + ": " + result.distances + " distance calls, " + result.millis + " ms, "
+					+ found(result.discords, injected, windowSize) + " of " + anomalies + " anomalies found, discords"
+					+ describe(result.discords));
+		System.out.println(String.format("Speedup: %.1fx distance calls, %.1fx wall time",
+				(double) bruteForce.distances / Math.max(1L, hotsax.distances),
+				(double) bruteForce.millis / Math.max(1L, hotsax.millis)));
+		System.out.println("Discords " + (agree(hotsax.discords, bruteForce.discords) ? "agree" : "DIFFER"));
+	}
+
+	/**
+	 * Generates a random walk with anomalies a window long.
+	 * @param length		The length of the series.
+	 * @param windowSize	The length of an anomaly.
+	 * @param injected		The array the anomaly positions are written to, in increasing order.
+	 * @param seed			The seed.
+	 * @return the series.
+	 */
+	static double[] generate(int length, int windowSize, int[] injected, long seed) {
+		Random rnd = new Random(seed);
+		double[] series = new double[length];
+		double v = 0.0D;
+		for (int i = 0; i < length; i++) {
+			v += rnd.nextGaussian();
+			series[i] = v;
+		}
+		// the anomalies are spread over slots far enough apart not to be trivial matches
+		int slots = injected.length;
+		int slot = length / Math.max(1, slots);
+		for (int a = 0; a < slots; a++) {
+			int room = Math.max(1, slot - 3 * windowSize);
+			int pos = a * slot + windowSize + rnd.nextInt(room);
+			injected[a] = pos;
+			double level = series[pos];
+			for (int k = 0; k < windowSize && pos + k < length; k++) {
+				switch (a % 3) {
+				case 0:
+					series[pos + k] = level + 3.0D * Math.sqrt(windowSize) * Math.sin(4.0D * Math.PI * k / windowSize);
+					break;
+				case 1:
+					series[pos + k] = level;
+					break;
+				default:
+					series[pos + k] = level + 3.0D * rnd.nextGaussian();
+				}
+			}
+			// the walk carries on from the end of the anomaly
+			int end = Math.min(length, pos + windowSize);
+			if (end < length) {
+				double shift = series[end - 1] - series[end] + rnd.nextGaussian();
+				for (int i = end; i < length; i++)
+					series[i] += shift;
+			}
+		}
+		return series;
+	}
+
+	/**
+	 * Searches the discords with an engine, a number of times.
+	 * @param series		The series.
+	 * @param windowSize	The window size.
+	 * @param discords		The number of discords.
+	 * @param seed			The seed of the HOTSAX random visits.
+	 * @param threads		The number of threads.
+	 * @param runs			The number of searches, the median wall time is reported.
+	 * @param engine		The engine.
+	 * @return the result.
+	 * @throws Exception if the search fails.
+	 */
+	private static Result run(double[] series, int windowSize, int discords, long seed, int threads, int runs,
+			String engine) throws Exception {
+		SAXParameters params = new SAXParameters();
+		params.SAX_WINDOW_SIZE = windowSize;
+		params.SAX_PAA_SIZE = 4;
+		params.SAX_ALPHABET_SIZE = 4;
+		params.SAX_NR_STRATEGY = NumerosityReductionStrategy.NONE;
+		params.DISCORDS = discords;
+		params.SEED = seed;
+		params.HOTSAX_THREADS = threads;
+		params.HOTSAX_ZNORM = true;
+		params.HOTSAX_SEARCH = HotSAXNodeModel.MINDIST_SEARCH;
+		params.HOTSAX_ENGINE = engine;
+
+		Result result = new Result(engine);
+		long[] millis = new long[Math.max(1, runs)];
+		for (int r = 0; r < millis.length; r++) {
+			HotSAXProcessor hsp = new HotSAXProcessor();
+			long start = System.nanoTime();
+			result.discords = hsp.series2Discords(series, params, new ExecutionMonitor());
+			millis[r] = (System.nanoTime() - start) / 1000000L;
+			result.distances = 0;
+			for (SearchStatistics stats : hsp.getStatistics())
+				result.distances += stats.distances;
+		}
+		Arrays.sort(millis);
+		result.millis = millis[millis.length / 2];
+		return result;
+	}
+
+	/**
+	 * Counts the anomalies a discord overlaps.
+	 * @param discords		The discords.
+	 * @param injected		The anomaly positions.
+	 * @param windowSize	The window size.
+	 * @return the count.
+	 */
+	private static int found(DiscordRecords discords, int[] injected, int windowSize) {
+		int count = 0;
+		for (int pos : injected)
+			for (DiscordRecord discord : discords)
+				if (Math.abs(discord.getPosition() - pos) < windowSize) {
+					count++;
+					break;
+				}
+		return count;
+	}
+
+	/**
+	 * Tells if two engines found discords as far from their neighbours, rank by rank.
+	 * @param a	The discords of an engine.
+	 * @param b	The discords of the other engine.
+	 * @return true if they agree.
+	 */
+	private static boolean agree(DiscordRecords a, DiscordRecords b) {
+		if (a.getSize() != b.getSize())
+			return false;
+		Iterator<DiscordRecord> i = a.iterator();
+		Iterator<DiscordRecord> j = b.iterator();
+		while (i.hasNext()) {
+			double d = j.next().getNNDistance();
+			if (Math.abs(i.next().getNNDistance() - d) > 1.0E-9D * Math.max(1.0D, d))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Describes discords.
+	 * @param discords The discords.
+	 * @return their positions and distances.
+	 */
+	private static String describe(DiscordRecords discords) {
+		ArrayList<String> list = new ArrayList<String>();
+		for (DiscordRecord discord : discords)
+			list.add(discord.getPosition() + String.format(":%.4f", discord.getNNDistance()));
+		return " " + String.join(" ", list);
+	}
+
+	/**
+	 * The outcome of the searches of an engine.
+	 */
+	private static final class Result {
+		final String engine;
+		DiscordRecords discords;
+		long distances;
+		long millis;
+
+		/**
+		 * Constructor.
+		 * @param engine The engine.
+		 */
+		Result(String engine) {
+			this.engine = engine;
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package uk.ac.reading.cs.knime.hotsax;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * Exact discord discovery by brute force, the baseline HOTSAX is checked and timed against.
+ * The nearest neighbour distance of every candidate is computed against every subsequence
+ * which is not a trivial match of it, a distance being abandoned as soon as its partial sum
+ * reaches the candidate's nearest neighbour so far. No SAX words, no ordering heuristic and no
+ * bound shared between candidates are involved, so the discords don't depend on any of the
+ * HOTSAX machinery. The top discords are picked best first, a window either side of each one
+ * excluded, as HOTSAX does.
+ *
+ * @author Ryan Faulkner
+ */
+public final class BruteForceDiscords {
+	/** The number of candidates a thread takes at once. */
+	private static final int CHUNK = 1 << 6;
+
+	private final double[] series;
+	private final int windowSize;
+	/* The window statistics, null for raw distances */
+	private final double[] means;
+	private final double[] invSigmas;
+	/* The squared nearest neighbour distances of the last search, NaN for the positions which are not candidates */
+	private double[] nearest2;
+
+	/**
+	 * Constructor.
+	 * @param series		The time series.
+	 * @param windowSize	The sliding window size.
+	 * @param means			The window means, null for raw distances.
+	 * @param invSigmas		The inverse window standard deviations, 0 for the windows which are not Z-normalised.
+	 */
+	public BruteForceDiscords(double[] series, int windowSize, double[] means, double[] invSigmas) {
+		this.series = series;
+		this.windowSize = windowSize;
+		this.means = means;
+		this.invSigmas = invSigmas;
+	}
+
+	/**
+	 * Finds the top discords.
+	 * @param discordsNum	The number of discords to report.
+	 * @param candidates	The positions which may be discords, null for all; all the positions
+	 * 						are neighbours.
+	 * @param threads		The number of threads the candidates are spread over.
+	 * @param stats			The counters the ones of the threads are added to.
+	 * @param exec			The monitor to report progress to and check for cancellation.
+	 * @return the discords, best first, at most discordsNum of them.
+	 * @throws Exception if the search failed or was cancelled.
+	 */
+	public DiscordRecords discords(int discordsNum, BitSet candidates, int threads, SearchStatistics stats,
+			ExecutionMonitor exec) throws Exception {
+		int positions = Math.max(0, series.length - windowSize + 1);
+		double[] nearest2 = this.nearest2 = new double[positions];
+		SearchStatistics[] counters = new SearchStatistics[Math.max(1, threads)];
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger done = new AtomicInteger();
+		ArrayList<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+		for (int t = 0; t < counters.length; t++) {
+			SearchStatistics counter = counters[t] = new SearchStatistics(stats.engine, windowSize);
+			workers.add(() -> {
+				double[] candidate = new double[windowSize];
+				int from;
+				while ((from = next.getAndAdd(CHUNK)) < positions) {
+					exec.checkCanceled();
+					for (int i = from; i < Math.min(from + CHUNK, positions); i++)
+						nearest2[i] = (candidates == null || candidates.get(i))
+								? nearest2(i, candidate, positions, counter) : Double.NaN;
+					exec.setProgress((double) done.addAndGet(Math.min(CHUNK, positions - from)) / positions,
+							"Searched " + done.get() + " of " + positions + " subsequences");
+				}
+				return null;
+			});
+		}
+		if (workers.size() == 1)
+			workers.get(0).call();
+		else {
+			ForkJoinPool pool = new ForkJoinPool(workers.size());
+			try {
+				ArrayList<ForkJoinTask<Void>> futures = new ArrayList<ForkJoinTask<Void>>();
+				for (Callable<Void> worker : workers)
+					futures.add(pool.submit(worker));
+				for (ForkJoinTask<Void> f : futures)
+					HotSAXProcessor.await(f);
+			} finally {
+				pool.shutdownNow();
+			}
+		}
+		for (SearchStatistics counter : counters)
+			stats.add(counter);
+		if (candidates == null)
+			stats.candidates += positions;
+		else
+			stats.candidates += candidates.cardinality();
+		return select(nearest2, discordsNum);
+	}
+
+	/**
+	 * Tells if discords are picked as the last search picks them, up to ties. Each one must be
+	 * a candidate as far from its nearest neighbour as the search found, and as far as any
+	 * candidate not excluded by the discords before it; fewer discords than asked for must
+	 * leave no candidate. Discords tied with others may then differ from the search's own.
+	 * @param discords		The discords, best first.
+	 * @param discordsNum	The number of discords asked for.
+	 * @return true if they agree with the search.
+	 */
+	public boolean agrees(DiscordRecords discords, int discordsNum) {
+		BitSet registry = new BitSet(nearest2.length);
+		for (DiscordRecord discord : discords) {
+			int pos = discord.getPosition();
+			if (pos < 0 || pos >= nearest2.length || !close(nearest2[pos], discord.getNNDistance())
+					|| !close(farthest(registry), discord.getNNDistance()))
+				return false;
+			registry.set(Math.max(0, pos - windowSize), pos + windowSize);
+		}
+		return discords.getSize() == discordsNum || farthest(registry) == 0.0D;
+	}
+
+	/**
+	 * Finds the largest squared nearest neighbour distance of the candidates which are not
+	 * excluded, leaving out the ones which are not discords.
+	 * @param registry	The excluded positions.
+	 * @return the squared distance, 0 if no candidate is left.
+	 */
+	private double farthest(BitSet registry) {
+		double farthest = 0.0D;
+		for (int i = registry.nextClearBit(0); i < nearest2.length; i = registry.nextClearBit(i + 1))
+			if (nearest2[i] < Double.POSITIVE_INFINITY && nearest2[i] > farthest)
+				farthest = nearest2[i];
+		return farthest;
+	}
+
+	/**
+	 * Tells if a distance is the square root of a squared one, up to rounding.
+	 * @param distance2	The squared distance.
+	 * @param distance	The distance.
+	 * @return true if they match.
+	 */
+	private static boolean close(double distance2, double distance) {
+		double d = Math.sqrt(distance2);
+		return Math.abs(distance - d) <= 1.0E-9D * Math.max(1.0D, d);
+	}
+
+	/**
+	 * Computes the nearest neighbour distance of a subsequence.
+	 * @param position	The position of the subsequence.
+	 * @param candidate	The buffer the subsequence is copied to.
+	 * @param positions	The number of subsequences.
+	 * @param stats		The counters of the thread.
+	 * @return the squared distance, infinite if every subsequence is a trivial match.
+	 */
+	private double nearest2(int position, double[] candidate, int positions, SearchStatistics stats) {
+		for (int k = 0; k < windowSize; k++)
+			candidate[k] = (means == null) ? series[position + k]
+					: (series[position + k] - means[position]) * invSigmas[position];
+		double best = Double.POSITIVE_INFINITY;
+		for (int j = 0; j < positions; j++) {
+			if (j >= position - windowSize && j < position + windowSize)
+				continue;
+			best = Math.min(best, distance2(candidate, j, best, stats));
+		}
+		return best;
+	}
+
+	/**
+	 * Calculates the squared Euclidean distance between a subsequence and the one at a
+	 * position, abandoning the sum as soon as it reaches a cut-off.
+	 * @param candidate	The subsequence, Z-normalised if need be.
+	 * @param from		The position of the other subsequence.
+	 * @param cutoff2	The squared cut-off.
+	 * @param stats		The counters of the thread.
+	 * @return the squared distance, or a partial sum of at least the cut-off if it was abandoned.
+	 */
+	private double distance2(double[] candidate, int from, double cutoff2, SearchStatistics stats) {
+		double mean = (means == null) ? 0.0D : means[from];
+		double invSigma = (means == null) ? 1.0D : invSigmas[from];
+		double sum = 0.0D;
+		stats.distances++;
+		for (int k = 0; k < windowSize; k++) {
+			double tmp = candidate[k] - (series[from + k] - mean) * invSigma;
+			sum += tmp * tmp;
+			if (sum >= cutoff2) {
+				stats.abandonedDistances++;
+				return sum;
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Picks the discords best first, ties by position, excluding a window either side of each
+	 * one found. Subsequences with no neighbour or an identical one are not discords.
+	 * @param nearest2		The squared nearest neighbour distances, NaN for the positions which are not candidates.
+	 * @param discordsNum	The number of discords to report.
+	 * @return the discords.
+	 */
+	private DiscordRecords select(double[] nearest2, int discordsNum) {
+		ArrayList<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < nearest2.length; i++)
+			if (nearest2[i] > 0.0D && nearest2[i] < Double.POSITIVE_INFINITY)
+				order.add(i);
+		order.sort((a, b) -> (nearest2[a] != nearest2[b]) ? Double.compare(nearest2[b], nearest2[a]) : Integer.compare(a, b));
+		DiscordRecords discords = new DiscordRecords();
+		BitSet registry = new BitSet(nearest2.length);
+		for (int pos : order) {
+			if (discords.getSize() == discordsNum)
+				break;
+			if (registry.get(pos))
+				continue;
+			DiscordRecord discord = new DiscordRecord(pos, Math.sqrt(nearest2[pos]), "");
+			discord.setLength(windowSize);
+			discord.setInfo("position " + pos + ", NN distance " + discord.getNNDistance());
+			discords.add(discord);
+			registry.set(Math.max(0, pos - windowSize), pos + windowSize);
+		}
+		return discords;
+	}
+}
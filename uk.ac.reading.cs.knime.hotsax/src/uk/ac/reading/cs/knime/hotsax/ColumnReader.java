@@ -0,0 +1,174 @@
+package uk.ac.reading.cs.knime.hotsax;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * Reads numeric table columns straight into primitive arrays.
+ * Cells implementing DoubleValue are read without any string conversion; other cells are
+ * parsed from their string representation, as the readers did before.
+ *
+ * @author Ryan Faulkner
+ */
+public final class ColumnReader {
+	/** The number of rows between two progress reports and cancellation checks. */
+	private static final int REPORT_INTERVAL = 1 << 16;
+
+	/**
+	 * Constructor.
+	 */
+	private ColumnReader() {}
+
+	/**
+	 * Reads a numeric column into a pre-sized array.
+	 * @param table			The input table.
+	 * @param column		The column index.
+	 * @param fillMissing	If true missing cells take the last value seen before them (or the first value
+	 * 						seen after them at the start of the column), otherwise they are read as NaN.
+	 * @param exec			The monitor to report progress to and check for cancellation.
+	 * @return the column values.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 */
+	public static double[] readDoubleColumn(BufferedDataTable table, int column, boolean fillMissing, ExecutionMonitor exec)
+			throws CanceledExecutionException {
+		if (column < 0)
+			throw new IllegalArgumentException("The time series column is not present in the input table.");
+		long rows = table.size();
+		if (rows > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many rows for an in-memory time series: " + rows);
+
+		double[] res = new double[(int) rows];
+		int firstValue = -1;
+		int i = 0;
+		CloseableRowIterator it = table.iterator();
+		try {
+			while (it.hasNext()) {
+				DataCell cell = it.next().getCell(column);
+				if (cell.isMissing()) {
+					res[i] = (fillMissing && firstValue >= 0) ? res[i - 1] : Double.NaN;
+				} else {
+					res[i] = getDouble(cell);
+					if (firstValue < 0)
+						firstValue = i;
+				}
+				i++;
+				if ((i % REPORT_INTERVAL) == 0) {
+					exec.checkCanceled();
+					exec.setProgress((double) i / rows, "Read " + i + " of " + rows + " rows");
+				}
+			}
+		} finally {
+			it.close();
+		}
+		// back-fill the missing cells at the start of the column
+		if (fillMissing && firstValue > 0)
+			for (int j = 0; j < firstValue; j++)
+				res[j] = res[firstValue];
+		return res;
+	}
+
+	/**
+	 * Reads a numeric column split by the values of a key column, in one pass over the table.
+	 * Each group's values are filled into a primitive array of their own, missing cells taking
+	 * the last value of the group as in {@link #readDoubleColumn}.
+	 * @param table		The input table.
+	 * @param column	The column index.
+	 * @param group		The key column index.
+	 * @param exec		The monitor to report progress to and check for cancellation.
+	 * @return the series of the groups in the order their keys first appear, without the groups
+	 * which hold no value.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 */
+	public static LinkedHashMap<DataCell, double[]> readGroupedDoubleColumn(BufferedDataTable table, int column, int group,
+			ExecutionMonitor exec) throws CanceledExecutionException {
+		if (column < 0 || group < 0)
+			throw new IllegalArgumentException("The time series or the group column is not present in the input table.");
+		long rows = table.size();
+		LinkedHashMap<DataCell, GroupSeries> groups = new LinkedHashMap<DataCell, GroupSeries>();
+		long i = 0;
+		CloseableRowIterator it = table.iterator();
+		try {
+			while (it.hasNext()) {
+				DataRow row = it.next();
+				GroupSeries series = groups.get(row.getCell(group));
+				if (series == null) {
+					series = new GroupSeries();
+					groups.put(row.getCell(group), series);
+				}
+				series.add(row.getCell(column));
+				i++;
+				if ((i % REPORT_INTERVAL) == 0) {
+					exec.checkCanceled();
+					exec.setProgress((double) i / rows, "Read " + i + " of " + rows + " rows");
+				}
+			}
+		} finally {
+			it.close();
+		}
+		LinkedHashMap<DataCell, double[]> res = new LinkedHashMap<DataCell, double[]>();
+		for (Map.Entry<DataCell, GroupSeries> e : groups.entrySet())
+			if (e.getValue().firstValue >= 0)
+				res.put(e.getKey(), e.getValue().toArray());
+		return res;
+	}
+
+	/**
+	 * The values of a group read so far, in an array grown as they come.
+	 */
+	private static final class GroupSeries {
+		double[] values = new double[16];
+		int size;
+		int firstValue = -1;
+
+		/**
+		 * Adds a cell, missing cells take the last value of the group.
+		 * @param cell The cell.
+		 */
+		void add(DataCell cell) {
+			if (size == values.length) {
+				if (size == Integer.MAX_VALUE - 8)
+					throw new IllegalArgumentException("Too many rows for an in-memory time series group.");
+				values = Arrays.copyOf(values, (int) Math.min(2L * size, Integer.MAX_VALUE - 8));
+			}
+			if (cell.isMissing()) {
+				values[size] = (firstValue >= 0) ? values[size - 1] : Double.NaN;
+			} else {
+				values[size] = getDouble(cell);
+				if (firstValue < 0)
+					firstValue = size;
+			}
+			size++;
+		}
+
+		/**
+		 * Get the values, the missing cells at the start back-filled.
+		 * @return the values.
+		 */
+		double[] toArray() {
+			double[] res = Arrays.copyOf(values, size);
+			for (int j = 0; j < firstValue; j++)
+				res[j] = res[firstValue];
+			return res;
+		}
+	}
+
+	/**
+	 * Reads the value of a cell which is not missing.
+	 * @param cell	The cell.
+	 * @return the cell value.
+	 */
+	public static double getDouble(DataCell cell) {
+		if (cell instanceof DoubleValue)
+			return ((DoubleValue) cell).getDoubleValue();
+		return Double.parseDouble(cell.toString());
+	}
+}
@@ -0,0 +1,419 @@
+package uk.ac.reading.cs.knime.hotsax;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * Disk aware discord discovery, after Yankov, Keogh and Rebbapragada's DRAG. For a range r
+ * every subsequence whose nearest neighbour is at least r away is found in two scans of the
+ * series on disk, in blocks:
+ * 1) Candidate selection keeps the subsequences with no neighbour within r among the
+ *    candidates scanned before them, and drops the candidates a later subsequence is within r of.
+ * 2) Refinement scans the whole series again, computing the nearest neighbour distance of every
+ *    candidate and dropping the ones which turn out to have a neighbour within r.
+ * Only the candidates and one block are held in the heap, both sized to a memory budget. The
+ * top discords are picked from the candidates best first, a window either side of each one
+ * excluded, as HOTSAX does; they are exact as long as k of them are at least r away. Otherwise
+ * r is lowered and the scans repeated, and it is raised when the candidates overflow the budget.
+ *
+ * @author Ryan Faulkner
+ */
+public final class DRAG {
+	/** The number of subsequences the range is estimated from. */
+	private static final int SAMPLE = 1 << 10;
+	/** The relative width of a range interval which is not split any further. */
+	private static final double RANGE_PRECISION = 1e-6;
+	/** The fraction of the range a search without enough discords lowers it to at most. */
+	private static final double RANGE_FLOOR = 1e-12;
+
+	private final DiskSeries series;
+	private final int windowSize;
+	private final boolean znorm;
+	private final double nThreshold;
+	/* The number of subsequences */
+	private final long windows;
+	/* The number of candidates the budget holds */
+	private final int capacity;
+	/* The number of subsequences of a block */
+	private final int blockWindows;
+
+	/* The candidates, their values Z-normalised if need be, candidate c at c * windowSize */
+	private double[] candidates;
+	private long[] positions;
+	/* The squared nearest neighbour distances found so far */
+	private double[] nearest2;
+	private int count;
+	/* Whether a scan dropped a subsequence, otherwise the candidates are all of them */
+	private boolean dropped;
+
+	/**
+	 * A discord found.
+	 */
+	public static final class Discord {
+		private final long position;
+		private final double distance;
+
+		/**
+		 * Constructor.
+		 * @param position	The position of the subsequence.
+		 * @param distance	The distance to its nearest neighbour.
+		 */
+		Discord(long position, double distance) {
+			this.position = position;
+			this.distance = distance;
+		}
+
+		/**
+		 * Get the position.
+		 * @return the position of the subsequence.
+		 */
+		public long getPosition() {
+			return position;
+		}
+
+		/**
+		 * Get the nearest neighbour distance.
+		 * @return the distance.
+		 */
+		public double getNNDistance() {
+			return distance;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * @param series		The time series.
+	 * @param windowSize	The sliding window size.
+	 * @param znorm			If true the subsequences are Z-normalised before they are compared.
+	 * @param nThreshold	The normalisation threshold value.
+	 * @param budget		The number of bytes the candidates and a block may take.
+	 * @throws SAXException if the window size doesn't fit the series or the budget is too small.
+	 */
+	public DRAG(DiskSeries series, int windowSize, boolean znorm, double nThreshold, long budget) throws SAXException {
+		if (windowSize < 1 || windowSize > series.size())
+			throw new SAXException("The window size must be between 1 and the series length.");
+		this.series = series;
+		this.windowSize = windowSize;
+		this.znorm = znorm;
+		this.nThreshold = nThreshold;
+		this.windows = series.size() - windowSize + 1;
+		// three quarters of the budget for the candidates, a quarter for a block and its statistics
+		long candidateBytes = 8L * windowSize + 16L;
+		this.capacity = (int) Math.min((budget / 4 * 3) / candidateBytes, Integer.MAX_VALUE / windowSize);
+		long blockBytes = budget / 4 - 8L * windowSize;
+		this.blockWindows = (int) Math.max(1L, Math.min(Math.min(blockBytes / 24, windows), Integer.MAX_VALUE - windowSize));
+		if (capacity < 1 || blockBytes < 24)
+			throw new SAXException("The memory budget doesn't hold a single candidate of the window size.");
+	}
+
+	/**
+	 * Finds the top discords.
+	 * @param k		The number of discords.
+	 * @param range	The range the search starts from, 0 to estimate it from a sample.
+	 * @param exec	The monitor to report progress to and check for cancellation.
+	 * @return the discords best first, fewer than k if there are no more.
+	 * @throws SAXException if the budget doesn't hold the candidates of any range which finds them.
+	 * @throws IOException if the series can't be read.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 */
+	public List<Discord> discords(int k, double range, ExecutionMonitor exec)
+			throws SAXException, IOException, CanceledExecutionException {
+		if (k < 1)
+			return new ArrayList<Discord>();
+		if (capacity < k)
+			throw new SAXException("The memory budget holds fewer candidates than the discords asked for.");
+		double r = (range > 0.0D) ? range : estimateRange(k);
+		double floor = r * RANGE_FLOOR;
+		// the largest range known to overflow the budget and the smallest known to find too few
+		double low = 0.0D;
+		double high = Double.POSITIVE_INFINITY;
+		candidates = new double[capacity * windowSize];
+		positions = new long[capacity];
+		nearest2 = new double[capacity];
+		for (int pass = 1; ; pass++) {
+			count = 0;
+			dropped = false;
+			String step = "Pass " + pass + ", range " + r;
+			if (!select(r * r, exec, step)) {
+				low = r;
+				// with no range known to find too few yet, the range is doubled
+				if (high == Double.POSITIVE_INFINITY) {
+					r = (r > 0.0D) ? 2.0D * r : 1.0D;
+					continue;
+				}
+				if (high - low <= high * RANGE_PRECISION)
+					throw new SAXException("The memory budget is too small for the candidates of the discords, raise it.");
+				r = (low + high) / 2.0D;
+				continue;
+			}
+			refine(r * r, exec, step);
+			List<Discord> discords = pick(k);
+			if (discords.size() == k || !dropped || r <= floor)
+				return discords;
+			high = r;
+			if (low > 0.0D && high - low <= high * RANGE_PRECISION)
+				throw new SAXException("The memory budget is too small for the candidates of the discords, raise it.");
+			r = (low > 0.0D) ? (low + high) / 2.0D : r / 2.0D;
+		}
+	}
+
+	/**
+	 * Estimates the range from a sample of subsequences spread over the series: the k-th
+	 * largest of their nearest neighbour distances among the sample. These bound the true ones
+	 * from above, so the search lowers the range from there if it finds too few discords.
+	 * @param k The number of discords.
+	 * @return the range.
+	 * @throws IOException if the series can't be read.
+	 */
+	private double estimateRange(int k) throws IOException {
+		int size = (int) Math.min(windows, Math.min(SAMPLE, capacity));
+		long[] sample = new long[size];
+		double[] values = new double[size * windowSize];
+		double[] window = new double[windowSize];
+		for (int j = 0; j < size; j++) {
+			sample[j] = (size == 1) ? 0 : j * (windows - 1) / (size - 1);
+			series.read(sample[j], window, 0, windowSize);
+			normalise(window);
+			System.arraycopy(window, 0, values, j * windowSize, windowSize);
+		}
+		double[] bounds = new double[size];
+		Arrays.fill(bounds, Double.POSITIVE_INFINITY);
+		for (int a = 0; a < size; a++)
+			for (int b = a + 1; b < size; b++) {
+				boolean aTrivial = sample[b] < sample[a] + windowSize;
+				boolean bTrivial = sample[a] >= sample[b] - windowSize;
+				if (aTrivial && bTrivial)
+					continue;
+				double d2 = 0.0D;
+				for (int i = 0; i < windowSize; i++) {
+					double t = values[a * windowSize + i] - values[b * windowSize + i];
+					d2 += t * t;
+				}
+				if (!aTrivial)
+					bounds[a] = Math.min(bounds[a], d2);
+				if (!bTrivial)
+					bounds[b] = Math.min(bounds[b], d2);
+			}
+		Arrays.sort(bounds);
+		int found = 0;
+		for (int j = size - 1; j >= 0; j--)
+			if (bounds[j] > 0.0D && bounds[j] < Double.POSITIVE_INFINITY && ++found == k)
+				return Math.sqrt(bounds[j]);
+		for (int j = size - 1; j >= 0; j--)
+			if (bounds[j] > 0.0D && bounds[j] < Double.POSITIVE_INFINITY)
+				return Math.sqrt(bounds[j]);
+		return 1.0D;
+	}
+
+	/**
+	 * Z-normalises a subsequence in place, unless it is flat or its standard deviation is below
+	 * the normalisation threshold, as HOTSAX does. Nothing happens without Z-normalisation.
+	 * @param window The subsequence.
+	 */
+	private void normalise(double[] window) {
+		if (!znorm)
+			return;
+		double sum = 0.0D;
+		boolean flat = true;
+		for (double v : window) {
+			sum += v;
+			flat &= v == window[0];
+		}
+		double mean = sum / windowSize;
+		double squares = 0.0D;
+		for (double v : window)
+			squares += (v - mean) * (v - mean);
+		double sd = (windowSize > 1) ? Math.sqrt(squares / (windowSize - 1)) : 0.0D;
+		double invSigma = (!flat && !(sd < nThreshold) && sd > 0.0D) ? 1.0D / sd : 0.0D;
+		for (int i = 0; i < windowSize; i++)
+			window[i] = (window[i] - mean) * invSigma;
+	}
+
+	/**
+	 * The first scan, selects the candidates.
+	 * @param range2	The squared range.
+	 * @param exec		The monitor to report progress to and check for cancellation.
+	 * @param step		The description of the pass.
+	 * @return false if the candidates overflowed the budget.
+	 * @throws IOException if the series can't be read.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 */
+	private boolean select(double range2, ExecutionMonitor exec, String step) throws IOException, CanceledExecutionException {
+		return scan(false, range2, exec, step + ", selecting candidates");
+	}
+
+	/**
+	 * The second scan, finds the nearest neighbours of the candidates.
+	 * @param range2	The squared range.
+	 * @param exec		The monitor to report progress to and check for cancellation.
+	 * @param step		The description of the pass.
+	 * @throws IOException if the series can't be read.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 */
+	private void refine(double range2, ExecutionMonitor exec, String step) throws IOException, CanceledExecutionException {
+		Arrays.fill(nearest2, 0, count, Double.POSITIVE_INFINITY);
+		scan(true, range2, exec, step + ", refining " + count + " candidates");
+	}
+
+	/**
+	 * Scans the series block by block. A neighbour is a trivial match of a subsequence at p
+	 * from p - windowSize up to p + windowSize, not included, as in HOTSAX.
+	 * @param refining	If true the candidates are refined, otherwise selected.
+	 * @param range2	The squared range.
+	 * @param exec		The monitor to report progress to and check for cancellation.
+	 * @param step		The description of the scan.
+	 * @return false if the candidates overflowed the budget.
+	 * @throws IOException if the series can't be read.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 */
+	private boolean scan(boolean refining, double range2, ExecutionMonitor exec, String step)
+			throws IOException, CanceledExecutionException {
+		int m = windowSize;
+		double[] block = new double[blockWindows + m - 1];
+		double[] means = new double[blockWindows];
+		double[] invSigmas = new double[blockWindows];
+		for (long start = 0; start < windows; start += blockWindows) {
+			exec.checkCanceled();
+			exec.setProgress((double) start / windows, step);
+			int length = (int) Math.min(blockWindows, windows - start);
+			series.read(start, block, 0, length + m - 1);
+			if (znorm) {
+				if (length < means.length) {
+					means = new double[length];
+					invSigmas = new double[length];
+				}
+				HotSAXProcessor.windowStatistics(block, m, nThreshold, means, invSigmas);
+			}
+			for (int i = 0; i < length; i++) {
+				long s = start + i;
+				double mean = znorm ? means[i] : 0.0D;
+				double invSigma = znorm ? invSigmas[i] : 1.0D;
+				if (refining) {
+					for (int c = 0; c < count; ) {
+						if (s >= positions[c] - m && s < positions[c] + m) {
+							c++;
+							continue;
+						}
+						double d2 = distance2(block, i, mean, invSigma, c, nearest2[c]);
+						if (d2 < range2) {
+							remove(c);
+						} else {
+							if (d2 < nearest2[c])
+								nearest2[c] = d2;
+							c++;
+						}
+					}
+				} else {
+					boolean candidate = true;
+					for (int c = 0; c < count; ) {
+						// the candidates were scanned before, s is a neighbour of c from c + m on
+						long gap = s - positions[c];
+						if (gap < m) {
+							c++;
+							continue;
+						}
+						if (distance2(block, i, mean, invSigma, c, range2) < range2) {
+							remove(c);
+							// c is a neighbour of s from s - m - 1 down
+							if (gap > m)
+								candidate = false;
+						} else
+							c++;
+					}
+					if (candidate) {
+						if (count == capacity)
+							return false;
+						add(s, block, i, mean, invSigma);
+					} else
+						dropped = true;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Calculates the squared distance of a subsequence of a block to a candidate, abandoned
+	 * once it reaches a limit.
+	 * @param block		The block.
+	 * @param i			The index of the subsequence in the block.
+	 * @param mean		The mean of the subsequence, 0 if it is not Z-normalised.
+	 * @param invSigma	The inverse standard deviation of the subsequence, 1 if it is not Z-normalised.
+	 * @param c			The candidate index.
+	 * @param limit		The distance the computation is abandoned at.
+	 * @return the squared distance, or a partial sum which is not less than the limit.
+	 */
+	private double distance2(double[] block, int i, double mean, double invSigma, int c, double limit) {
+		int offset = c * windowSize;
+		double sum = 0.0D;
+		for (int k = 0; k < windowSize; k++) {
+			double t = (block[i + k] - mean) * invSigma - candidates[offset + k];
+			sum += t * t;
+			if (sum >= limit)
+				return sum;
+		}
+		return sum;
+	}
+
+	/**
+	 * Adds a candidate.
+	 * @param s			The position of the subsequence.
+	 * @param block		The block.
+	 * @param i			The index of the subsequence in the block.
+	 * @param mean		The mean of the subsequence, 0 if it is not Z-normalised.
+	 * @param invSigma	The inverse standard deviation of the subsequence, 1 if it is not Z-normalised.
+	 */
+	private void add(long s, double[] block, int i, double mean, double invSigma) {
+		int offset = count * windowSize;
+		for (int k = 0; k < windowSize; k++)
+			candidates[offset + k] = (block[i + k] - mean) * invSigma;
+		positions[count++] = s;
+	}
+
+	/**
+	 * Removes a candidate, the last one takes its place.
+	 * @param c The candidate index.
+	 */
+	private void remove(int c) {
+		dropped = true;
+		int last = --count;
+		if (c == last)
+			return;
+		System.arraycopy(candidates, last * windowSize, candidates, c * windowSize, windowSize);
+		positions[c] = positions[last];
+		nearest2[c] = nearest2[last];
+	}
+
+	/**
+	 * Picks the discords among the refined candidates, best first, excluding a window either
+	 * side of each one found.
+	 * @param k The number of discords.
+	 * @return the discords, at most k of them.
+	 */
+	private List<Discord> pick(int k) {
+		Integer[] order = new Integer[count];
+		for (int c = 0; c < count; c++)
+			order[c] = c;
+		Arrays.sort(order, (a, b) -> (nearest2[a] != nearest2[b]) ? Double.compare(nearest2[b], nearest2[a])
+				: Long.compare(positions[a], positions[b]));
+		List<Discord> discords = new ArrayList<Discord>();
+		for (int c : order) {
+			if (discords.size() == k)
+				break;
+			if (nearest2[c] == Double.POSITIVE_INFINITY)
+				continue;
+			long p = positions[c];
+			boolean excluded = false;
+			for (Discord d : discords)
+				excluded |= p >= d.position - windowSize && p < d.position + windowSize;
+			if (!excluded)
+				discords.add(new Discord(p, Math.sqrt(nearest2[c])));
+		}
+		return discords;
+	}
+}
@@ -26,6 +26,12 @@ public class DiscordRecord implements Comparable<DiscordRecord> {
   /** The info string - auxiliary variable. */
   private String info;
 
+  /** Whether the NN distance is known to be the discord's, not only the best found in budget. */
+  private boolean exact = true;
+
+  /** The bound of the NN distance the discord of its rank could have. */
+  private double bound;
+
   /**
    * Constructor.
    */
@@ -114,6 +120,42 @@ public class DiscordRecord implements Comparable<DiscordRecord> {
     return this.nnDistance;
   }
 
+  /**
+   * Set whether the discord is exact.
+   * 
+   * @param exact true if no unsearched candidate could be farther from its nearest neighbour.
+   */
+  public void setExact(boolean exact) {
+    this.exact = exact;
+  }
+
+  /**
+   * Tells if the discord is exact.
+   * 
+   * @return true if no unsearched candidate could be farther from its nearest neighbour.
+   */
+  public boolean isExact() {
+    return this.exact;
+  }
+
+  /**
+   * Set the bound of the NN distance.
+   * 
+   * @param bound the bound, the distance itself if the discord is exact.
+   */
+  public void setBound(double bound) {
+    this.bound = bound;
+  }
+
+  /**
+   * Get the bound of the NN distance the discord of its rank could have.
+   * 
+   * @return the bound.
+   */
+  public double getBound() {
+    return this.bound;
+  }
+
   /**
    * Sets an auxiliary info string.
    * 
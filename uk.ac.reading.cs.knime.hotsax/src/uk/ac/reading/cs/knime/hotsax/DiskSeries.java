@@ -0,0 +1,194 @@
+package uk.ac.reading.cs.knime.hotsax;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * A time series copied to a temporary file and read back through memory mapped chunks, so
+ * series far larger than the heap can be scanned. The heap only holds the write buffer and
+ * the chunk handles; the operating system pages the values in and out.
+ *
+ * Reads are not thread-safe.
+ *
+ * @author Ryan Faulkner
+ */
+public final class DiskSeries implements Closeable {
+	/** The number of values of a mapped chunk. */
+	private static final int CHUNK = 1 << 24;
+	/** The number of rows between two progress reports and cancellation checks. */
+	private static final int REPORT_INTERVAL = 1 << 16;
+	/** The number of bytes written at once. */
+	private static final int WRITE_BUFFER = 1 << 16;
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final long size;
+	private final DoubleBuffer[] chunks;
+
+	/**
+	 * Constructor, copies a numeric column to disk. Missing cells take the last value seen
+	 * before them, or the first value seen after them at the start of the column, as the
+	 * in-memory readers do.
+	 * @param table		The input table.
+	 * @param column	The column index.
+	 * @param exec		The monitor to report progress to and check for cancellation.
+	 * @throws IOException if the file can't be written.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 * @throws SAXException if the column is not present or holds no value.
+	 */
+	public DiskSeries(BufferedDataTable table, int column, ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException, SAXException {
+		if (column < 0)
+			throw new SAXException("The time series column is not present in the input table.");
+		this.file = File.createTempFile("series", ".bin");
+		this.raf = new RandomAccessFile(file, "rw");
+		this.channel = raf.getChannel();
+		try {
+			this.size = write(table, column, exec);
+		} catch (IOException | CanceledExecutionException | SAXException | RuntimeException e) {
+			close();
+			throw e;
+		}
+		this.chunks = new DoubleBuffer[(int) ((size + CHUNK - 1) / CHUNK)];
+	}
+
+	/**
+	 * Writes the values of a column to the file.
+	 * @param table		The input table.
+	 * @param column	The column index.
+	 * @param exec		The monitor to report progress to and check for cancellation.
+	 * @return the number of values written.
+	 * @throws IOException if the file can't be written.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 * @throws SAXException if the column holds no value.
+	 */
+	private long write(BufferedDataTable table, int column, ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException, SAXException {
+		ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER).order(ByteOrder.nativeOrder());
+		long rows = table.size();
+		long count = 0;
+		// the missing cells at the start of the column, written once the first value arrives
+		long leading = 0;
+		double last = Double.NaN;
+		CloseableRowIterator it = table.iterator();
+		try {
+			while (it.hasNext()) {
+				DataCell cell = it.next().getCell(column);
+				if (cell.isMissing() && count == 0) {
+					leading++;
+				} else {
+					if (!cell.isMissing())
+						last = ColumnReader.getDouble(cell);
+					for (; leading >= 0; leading--, count++) {
+						if (!buffer.hasRemaining())
+							flush(buffer);
+						buffer.putDouble(last);
+					}
+					leading = 0;
+				}
+				if (((count + leading) % REPORT_INTERVAL) == 0) {
+					exec.checkCanceled();
+					exec.setProgress((double) (count + leading) / rows, "Copied " + (count + leading) + " of " + rows + " rows to disk");
+				}
+			}
+		} finally {
+			it.close();
+		}
+		if (count == 0)
+			throw new SAXException("The time series column holds no value.");
+		flush(buffer);
+		return count;
+	}
+
+	/**
+	 * Writes the buffered values to the file and empties the buffer.
+	 * @param buffer The buffer.
+	 * @throws IOException if the file can't be written.
+	 */
+	private void flush(ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Get the number of values.
+	 * @return the size.
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Reads a run of values.
+	 * @param from		The position of the first value.
+	 * @param dst		The array to read into.
+	 * @param offset	The index of dst the first value goes to.
+	 * @param length	The number of values.
+	 * @throws IOException if the file can't be mapped.
+	 */
+	public void read(long from, double[] dst, int offset, int length) throws IOException {
+		if (from < 0 || from + length > size)
+			throw new IndexOutOfBoundsException("Values " + from + " to " + (from + length) + " of " + size);
+		while (length > 0) {
+			int c = (int) (from / CHUNK);
+			int at = (int) (from % CHUNK);
+			int n = Math.min(length, CHUNK - at);
+			DoubleBuffer chunk = chunk(c);
+			chunk.position(at);
+			chunk.get(dst, offset, n);
+			from += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	/**
+	 * Get a chunk, mapping it the first time.
+	 * @param c The chunk index.
+	 * @return the chunk.
+	 * @throws IOException if the file can't be mapped.
+	 */
+	private DoubleBuffer chunk(int c) throws IOException {
+		if (chunks[c] == null) {
+			long start = (long) c * CHUNK;
+			long bytes = Math.min(CHUNK, size - start) * Double.BYTES;
+			chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, start * Double.BYTES, bytes)
+					.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+		}
+		return chunks[c];
+	}
+
+	/**
+	 * Closes the file and deletes it. A file still mapped can't be deleted on some systems, it
+	 * is then deleted on exit.
+	 */
+	@Override
+	public void close() {
+		try {
+			channel.close();
+			raf.close();
+		} catch (IOException e) {
+			// the file is deleted all the same
+		}
+		if (chunks != null)
+			Arrays.fill(chunks, null);
+		if (!file.delete())
+			file.deleteOnExit();
+	}
+}
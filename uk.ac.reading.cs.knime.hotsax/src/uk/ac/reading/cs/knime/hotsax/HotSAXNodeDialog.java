@@ -1,13 +1,18 @@
 package uk.ac.reading.cs.knime.hotsax;
 
+import org.knime.core.data.DataValue;
 import org.knime.core.data.DoubleValue;
 import org.knime.core.data.date.DateAndTimeValue;
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
 import org.knime.core.node.defaultnodesettings.DialogComponentColumnNameSelection;
 import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
-//import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
-//import org.knime.core.node.defaultnodesettings.SettingsModelDouble;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelDouble;
+import org.knime.core.node.defaultnodesettings.SettingsModelDoubleBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 
 /**
@@ -37,31 +42,65 @@ public class HotSAXNodeDialog extends DefaultNodeSettingsPane {
 		addDialogComponent(new DialogComponentColumnNameSelection(new SettingsModelString(HotSAXNodeModel.TS_DATA, ""),
 				"Select a column", 0, true, DoubleValue.class));
 
+		createNewGroup("Groups");
+		addDialogComponent(new DialogComponentColumnNameSelection(new SettingsModelString(HotSAXNodeModel.GROUP, null),
+				"Group by column", 0, false, true, DataValue.class));
+
 		createNewGroup("SAX Discretisation");
 		// SAX_WINDOW_SIZE
 		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(HotSAXNodeModel.WINDOW, 30),
 				"SAX Sliding Window Size:", 1));
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelIntegerBounded(HotSAXNodeModel.MAX_WINDOW, 0, 0, Integer.MAX_VALUE),
+				"Maximum Window Size (0 for one size):", 1));
+
+		// SAX_PAA_SIZE
+		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(HotSAXNodeModel.PAA_SIZE, 4),
+				"SAX PAA Word Size:", 1));
+
+		// SAX_ALPHABET_SIZE
+		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(HotSAXNodeModel.ALPHABET_SIZE, 3),
+				"SAX Alphabet Size:", 1));
 
-//		// SAX_PAA_SIZE
-//		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(HotSAXNodeModel.PAA_SIZE, 4),
-//				"SAX PAA Word Size:", 1));
-//
-//		// SAX_ALPHABET_SIZE
-//		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(HotSAXNodeModel.ALPHABET_SIZE, 3),
-//				"SAX Alphabet Size:", 1));
-//
-//		// SAX_NR_STRATEGY
-//		addDialogComponent(
-//				new DialogComponentStringSelection(new SettingsModelString(HotSAXNodeModel.NUMEROSITY, "EXACT"),
-//						"Numerosity Reduction Strategy:", "NONE", "EXACT", "MINDIST"));
-//
-//		// SAX_NORM_THRESHOLD
-//		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(HotSAXNodeModel.THRESH, 0.01),
-//				"SAX Normalisation Threshold:", 0.01));
+		// SAX_NR_STRATEGY
+		addDialogComponent(
+				new DialogComponentStringSelection(new SettingsModelString(HotSAXNodeModel.NUMEROSITY, "NONE"),
+						"Numerosity Reduction Strategy:", "NONE", "EXACT", "MINDIST"));
+
+		// SAX_NORM_THRESHOLD
+		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(HotSAXNodeModel.THRESH, 0.01),
+				"SAX Normalisation Threshold:", 0.01));
 		
 		createNewGroup("HOTSAX Discords");
+		addDialogComponent(new DialogComponentStringSelection(
+				new SettingsModelString(HotSAXNodeModel.ENGINE, HotSAXNodeModel.HOTSAX_ENGINE),
+				"Engine:", HotSAXNodeModel.HOTSAX_ENGINE, HotSAXNodeModel.DRAG_ENGINE, HotSAXNodeModel.BRUTE_FORCE_ENGINE));
+		addDialogComponent(new DialogComponentBoolean(new SettingsModelBoolean(HotSAXNodeModel.ZNORM, true),
+				"Z-Normalise Subsequences"));
+		addDialogComponent(new DialogComponentStringSelection(
+				new SettingsModelString(HotSAXNodeModel.SEARCH, HotSAXNodeModel.MINDIST_SEARCH),
+				"Neighbour Search Order:", HotSAXNodeModel.RANDOM_SEARCH, HotSAXNodeModel.MINDIST_SEARCH));
 		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(HotSAXNodeModel.DISCORDS, 1),
 				"No. of Discords:", 1));
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelIntegerBounded(HotSAXNodeModel.THREADS, HotSAXNodeModel.DEFAULT_THREADS, 1, 256),
+				"Threads:", 1));
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelIntegerBounded(HotSAXNodeModel.TIME_BUDGET, 0, 0, Integer.MAX_VALUE),
+				"Time Budget (s, 0 for none):", 10));
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelIntegerBounded(HotSAXNodeModel.EVAL_BUDGET, 0, 0, Integer.MAX_VALUE),
+				"Distance Budget (millions, 0 for none):", 10));
+		addDialogComponent(new DialogComponentBoolean(new SettingsModelBoolean(HotSAXNodeModel.VERIFY, false),
+				"Verify Against Brute Force"));
+
+		createNewGroup("Disk Search");
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelIntegerBounded(HotSAXNodeModel.BUDGET, 256, 1, Integer.MAX_VALUE),
+				"DRAG Memory Budget (MB):", 16));
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelDoubleBounded(HotSAXNodeModel.RANGE, 0.0D, 0.0D, Double.MAX_VALUE),
+				"DRAG Range (0 to estimate):", 0.1));
 
 
 	}
@@ -6,7 +6,9 @@ import java.io.IOException;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
-//import org.knime.core.node.defaultnodesettings.SettingsModelDouble;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelDouble;
+import org.knime.core.node.defaultnodesettings.SettingsModelDoubleBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
 import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
@@ -16,6 +18,7 @@ import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.port.PortType;
 
 /**
  * This is the model implementation of HotSAXProcessor.
@@ -38,30 +41,72 @@ public class HotSAXNodeModel extends NodeModel {
        (package visibility to be usable from the dialog). */
 	static final String TS_DATE = "ts.dat.name";
 	static final String TS_DATA = "ts.col.name";
+	static final String GROUP = "hotsax.group.name";
 	static final String WINDOW = "sax.window.name";
-//	static final String PAA_SIZE = "sax.paa_size.name";
-//	static final String ALPHABET_SIZE = "sax.alphabet_size.name";
-//	static final String NUMEROSITY = "sax.numerosity.name";
-//	static final String THRESH = "sax.thresh.name";
+	static final String MAX_WINDOW = "hotsax.max_window.name";
+	static final String PAA_SIZE = "sax.paa_size.name";
+	static final String ALPHABET_SIZE = "sax.alphabet_size.name";
+	static final String NUMEROSITY = "sax.numerosity.name";
+	static final String THRESH = "sax.thresh.name";
 	static final String DISCORDS = "hotsax.discords.name";
+	static final String THREADS = "hotsax.threads.name";
+	static final String ZNORM = "hotsax.znorm.name";
+	static final String SEARCH = "hotsax.search.name";
+	static final String ENGINE = "hotsax.engine.name";
+	static final String BUDGET = "hotsax.budget.name";
+	static final String RANGE = "hotsax.range.name";
+	static final String TIME_BUDGET = "hotsax.time_budget.name";
+	static final String EVAL_BUDGET = "hotsax.eval_budget.name";
+	static final String VERIFY = "hotsax.verify.name";
+
+	/** Neighbours are visited in random order. */
+	static final String RANDOM_SEARCH = "Random";
+	/** Neighbours are visited in increasing MINDIST of their SAX words. */
+	static final String MINDIST_SEARCH = "MINDIST";
+	/** The series is searched in memory. */
+	static final String HOTSAX_ENGINE = "HOTSAX";
+	/** The series is searched on disk, in blocks. */
+	static final String DRAG_ENGINE = "DRAG";
+	/** Every subsequence is compared to every other one. */
+	static final String BRUTE_FORCE_ENGINE = "Brute Force";
+
+	/** The default number of threads, one per processor, within the bounds of the setting. */
+	static final int DEFAULT_THREADS = Math.min(256, Runtime.getRuntime().availableProcessors());
+
+	/** The file the data of the view is saved to with the node internals. */
+	private static final String INTERNALS = "hotsax.bin";
 
     // example value: the models count variable filled from the dialog 
     // and used in the models execution method. The default components of the
     // dialog work with "SettingsModels".
 	private final SettingsModelString dateCol = new SettingsModelString(TS_DATE, null);
 	private final SettingsModelString colname = new SettingsModelString(TS_DATA, null);
+	private final SettingsModelString groupCol = new SettingsModelString(GROUP, null);
 	private final SettingsModelIntegerBounded window_sz = new SettingsModelIntegerBounded(WINDOW, 30, 0, Integer.MAX_VALUE);
-//	private final SettingsModelInteger paa_sz = new SettingsModelInteger(PAA_SIZE, 4);
-//	private final SettingsModelInteger alpha_sz = new SettingsModelInteger(ALPHABET_SIZE, 3);
-//	private final SettingsModelString numerosity = new SettingsModelString(NUMEROSITY, "NONE");
-//	private final SettingsModelDouble threshold = new SettingsModelDouble(THRESH, 0.01);
+	private final SettingsModelIntegerBounded max_window_sz = new SettingsModelIntegerBounded(MAX_WINDOW, 0, 0, Integer.MAX_VALUE);
+	private final SettingsModelInteger paa_sz = new SettingsModelInteger(PAA_SIZE, 4);
+	private final SettingsModelInteger alpha_sz = new SettingsModelInteger(ALPHABET_SIZE, 3);
+	private final SettingsModelString numerosity = new SettingsModelString(NUMEROSITY, "NONE");
+	private final SettingsModelDouble threshold = new SettingsModelDouble(THRESH, 0.01);
 	private final SettingsModelInteger discords = new SettingsModelInteger(DISCORDS, 1);
+	private final SettingsModelIntegerBounded threads = new SettingsModelIntegerBounded(THREADS, DEFAULT_THREADS, 1, 256);
+	private final SettingsModelBoolean znorm = new SettingsModelBoolean(ZNORM, true);
+	private final SettingsModelString search = new SettingsModelString(SEARCH, MINDIST_SEARCH);
+	private final SettingsModelString engine = new SettingsModelString(ENGINE, HOTSAX_ENGINE);
+	private final SettingsModelIntegerBounded budget = new SettingsModelIntegerBounded(BUDGET, 256, 1, Integer.MAX_VALUE);
+	private final SettingsModelDoubleBounded range = new SettingsModelDoubleBounded(RANGE, 0.0D, 0.0D, Double.MAX_VALUE);
+	private final SettingsModelIntegerBounded time_budget = new SettingsModelIntegerBounded(TIME_BUDGET, 0, 0, Integer.MAX_VALUE);
+	private final SettingsModelIntegerBounded eval_budget = new SettingsModelIntegerBounded(EVAL_BUDGET, 0, 0, Integer.MAX_VALUE);
+	private final SettingsModelBoolean verify = new SettingsModelBoolean(VERIFY, false);
 
     /**
      * Constructor for the node model.
      */
     protected HotSAXNodeModel() {
-        super(2, 1);
+    	// Input ports:	Time series data, optional SAX words of a SAX node
+    	// Output ports:	Discord records, search statistics
+        super(new PortType[]{BufferedDataTable.TYPE, BufferedDataTable.TYPE_OPTIONAL},
+        		new PortType[]{BufferedDataTable.TYPE, BufferedDataTable.TYPE});
     }
 
     /**
@@ -74,14 +119,31 @@ public class HotSAXNodeModel extends NodeModel {
     	params = new SAXParameters();
     	params.DATECOL = dateCol.getStringValue();
 		params.COLNAME = colname.getStringValue();
+		params.GROUPCOL = groupCol.getStringValue();
 		params.SAX_WINDOW_SIZE = window_sz.getIntValue();
-//		params.SAX_PAA_SIZE = paa_sz.getIntValue();
-//		params.SAX_ALPHABET_SIZE = alpha_sz.getIntValue();
-//		params.SAX_NR_STRATEGY = NumerosityReductionStrategy.fromString(numerosity.getStringValue());
-//		params.SAX_NORM_THRESHOLD = threshold.getDoubleValue();
+		params.HOTSAX_MAX_WINDOW_SIZE = max_window_sz.getIntValue();
+		params.SAX_PAA_SIZE = paa_sz.getIntValue();
+		params.SAX_ALPHABET_SIZE = alpha_sz.getIntValue();
+		params.SAX_NR_STRATEGY = NumerosityReductionStrategy.fromString(numerosity.getStringValue());
+		params.SAX_NORM_THRESHOLD = threshold.getDoubleValue();
 		params.DISCORDS = discords.getIntValue();
+		params.HOTSAX_THREADS = threads.getIntValue();
+		params.HOTSAX_ZNORM = znorm.getBooleanValue();
+		params.HOTSAX_SEARCH = search.getStringValue();
+		params.HOTSAX_ENGINE = engine.getStringValue();
+		params.DRAG_BUDGET = budget.getIntValue();
+		params.DRAG_RANGE = range.getDoubleValue();
+		params.HOTSAX_TIME_BUDGET = time_budget.getIntValue();
+		params.HOTSAX_EVAL_BUDGET = eval_budget.getIntValue();
+		params.HOTSAX_VERIFY = verify.getBooleanValue();
 		
-		return new BufferedDataTable[]{hsp.series2Discords(inData, params, exec)};
+		BufferedDataTable discordTable = hsp.series2Discords(inData, params, exec);
+		if (hsp.mismatches.get() > 0)
+			setWarningMessage("The HOTSAX discords of " + hsp.mismatches.get()
+					+ " window size(s) differ from the brute force ones, see the log.");
+		else if (hsp.approximate)
+			setWarningMessage("The budget was spent before the search finished, the discords are approximate.");
+		return new BufferedDataTable[]{discordTable, hsp.statistics2Table(exec)};
     }
 
     /**
@@ -91,6 +153,7 @@ public class HotSAXNodeModel extends NodeModel {
     protected void reset() {
         // Models build during execute are cleared here.
         // Also data handled in load/saveInternals will be erased here.
+    	hsp = null;
     }
 
     /**
@@ -105,7 +168,7 @@ public class HotSAXNodeModel extends NodeModel {
         // the spec of its output data table(s) (if you can, otherwise an array
         // with null elements), or throw an exception with a useful user message
 
-        return new DataTableSpec[]{null};
+        return new DataTableSpec[]{null, SAXTable.createStatisticsSpec()};
     }
 
     /**
@@ -115,12 +178,23 @@ public class HotSAXNodeModel extends NodeModel {
     protected void saveSettingsTo(final NodeSettingsWO settings) {
     	this.dateCol.saveSettingsTo(settings);
     	this.colname.saveSettingsTo(settings);
+    	this.groupCol.saveSettingsTo(settings);
 		this.window_sz.saveSettingsTo(settings);
-//		this.paa_sz.saveSettingsTo(settings);
-//		this.alpha_sz.saveSettingsTo(settings);
-//		this.numerosity.saveSettingsTo(settings);
-//		this.threshold.saveSettingsTo(settings);
+		this.max_window_sz.saveSettingsTo(settings);
+		this.paa_sz.saveSettingsTo(settings);
+		this.alpha_sz.saveSettingsTo(settings);
+		this.numerosity.saveSettingsTo(settings);
+		this.threshold.saveSettingsTo(settings);
     	this.discords.saveSettingsTo(settings);
+    	this.threads.saveSettingsTo(settings);
+    	this.znorm.saveSettingsTo(settings);
+    	this.search.saveSettingsTo(settings);
+    	this.engine.saveSettingsTo(settings);
+    	this.budget.saveSettingsTo(settings);
+    	this.range.saveSettingsTo(settings);
+    	this.time_budget.saveSettingsTo(settings);
+    	this.eval_budget.saveSettingsTo(settings);
+    	this.verify.saveSettingsTo(settings);
 	}
 
     /**
@@ -131,12 +205,43 @@ public class HotSAXNodeModel extends NodeModel {
             throws InvalidSettingsException {
     	this.dateCol.loadSettingsFrom(settings);
     	this.colname.loadSettingsFrom(settings);
+    	if (settings.containsKey(GROUP))
+    		this.groupCol.loadSettingsFrom(settings);
 		this.window_sz.loadSettingsFrom(settings);
-//		this.paa_sz.loadSettingsFrom(settings);
-//		this.alpha_sz.loadSettingsFrom(settings);
-//		this.numerosity.loadSettingsFrom(settings);
-//		this.threshold.loadSettingsFrom(settings);
+		if (settings.containsKey(MAX_WINDOW))
+			this.max_window_sz.loadSettingsFrom(settings);
+		if (settings.containsKey(PAA_SIZE))
+			this.paa_sz.loadSettingsFrom(settings);
+		if (settings.containsKey(ALPHABET_SIZE))
+			this.alpha_sz.loadSettingsFrom(settings);
+		if (settings.containsKey(NUMEROSITY))
+			this.numerosity.loadSettingsFrom(settings);
+		if (settings.containsKey(THRESH))
+			this.threshold.loadSettingsFrom(settings);
     	this.discords.loadSettingsFrom(settings);
+    	if (settings.containsKey(THREADS))
+    		this.threads.loadSettingsFrom(settings);
+    	// nodes saved before the option compared raw subsequences
+    	if (settings.containsKey(ZNORM))
+    		this.znorm.loadSettingsFrom(settings);
+    	else
+    		this.znorm.setBooleanValue(false);
+    	if (settings.containsKey(SEARCH))
+    		this.search.loadSettingsFrom(settings);
+    	else
+    		this.search.setStringValue(RANDOM_SEARCH);
+    	if (settings.containsKey(ENGINE))
+    		this.engine.loadSettingsFrom(settings);
+    	if (settings.containsKey(BUDGET))
+    		this.budget.loadSettingsFrom(settings);
+    	if (settings.containsKey(RANGE))
+    		this.range.loadSettingsFrom(settings);
+    	if (settings.containsKey(TIME_BUDGET))
+    		this.time_budget.loadSettingsFrom(settings);
+    	if (settings.containsKey(EVAL_BUDGET))
+    		this.eval_budget.loadSettingsFrom(settings);
+    	if (settings.containsKey(VERIFY))
+    		this.verify.loadSettingsFrom(settings);
     }
 
     /**
@@ -148,12 +253,45 @@ public class HotSAXNodeModel extends NodeModel {
         // Check if the settings could be applied to our model
     	this.dateCol.validateSettings(settings);
     	this.colname.validateSettings(settings);
+    	if (settings.containsKey(GROUP))
+    		this.groupCol.validateSettings(settings);
 		this.window_sz.validateSettings(settings);
-//		this.paa_sz.validateSettings(settings);
-//		this.alpha_sz.validateSettings(settings);
-//		this.numerosity.validateSettings(settings);
-//		this.threshold.validateSettings(settings);
+		if (settings.containsKey(MAX_WINDOW))
+			this.max_window_sz.validateSettings(settings);
+		if (settings.containsKey(PAA_SIZE))
+			this.paa_sz.validateSettings(settings);
+		if (settings.containsKey(ALPHABET_SIZE))
+			this.alpha_sz.validateSettings(settings);
+		if (settings.containsKey(NUMEROSITY))
+			this.numerosity.validateSettings(settings);
+		if (settings.containsKey(THRESH))
+			this.threshold.validateSettings(settings);
     	this.discords.validateSettings(settings);
+    	if (settings.containsKey(THREADS))
+    		this.threads.validateSettings(settings);
+    	if (settings.containsKey(ZNORM))
+    		this.znorm.validateSettings(settings);
+    	if (settings.containsKey(SEARCH)) {
+    		SettingsModelString order = search.createCloneWithValidatedValue(settings);
+    		if (!RANDOM_SEARCH.equals(order.getStringValue()) && !MINDIST_SEARCH.equals(order.getStringValue()))
+    			throw new InvalidSettingsException("Invalid neighbour search order");
+    	}
+    	if (settings.containsKey(ENGINE)) {
+    		SettingsModelString e = engine.createCloneWithValidatedValue(settings);
+    		if (!HOTSAX_ENGINE.equals(e.getStringValue()) && !DRAG_ENGINE.equals(e.getStringValue())
+    				&& !BRUTE_FORCE_ENGINE.equals(e.getStringValue()))
+    			throw new InvalidSettingsException("Invalid discord search engine");
+    	}
+    	if (settings.containsKey(BUDGET))
+    		this.budget.validateSettings(settings);
+    	if (settings.containsKey(RANGE))
+    		this.range.validateSettings(settings);
+    	if (settings.containsKey(TIME_BUDGET))
+    		this.time_budget.validateSettings(settings);
+    	if (settings.containsKey(EVAL_BUDGET))
+    		this.eval_budget.validateSettings(settings);
+    	if (settings.containsKey(VERIFY))
+    		this.verify.validateSettings(settings);
     }
     
     /**
@@ -163,13 +301,9 @@ public class HotSAXNodeModel extends NodeModel {
     protected void loadInternals(final File internDir,
             final ExecutionMonitor exec) throws IOException,
             CanceledExecutionException {
-        // TODO load internal data. 
-        // Everything handed to output ports is loaded automatically (data
-        // returned by the execute method, models loaded in loadModelContent,
-        // and user settings set through loadSettingsFrom - is all taken care 
-        // of). Load here only the other internals that need to be restored
-        // (e.g. data used by the views).
-
+    	File file = new File(internDir, INTERNALS);
+    	if (file.exists())
+    		hsp = HotSAXProcessor.load(file);
     }
     
     /**
@@ -179,11 +313,8 @@ public class HotSAXNodeModel extends NodeModel {
     protected void saveInternals(final File internDir,
             final ExecutionMonitor exec) throws IOException,
             CanceledExecutionException {
-        // TODO save internal models. 
-        // Everything written to output ports is saved automatically (data
-        // returned by the execute method, models saved in the saveModelContent,
-        // and user settings saved through saveSettingsTo - is all taken care 
-        // of). Save here only the other internals that need to be preserved
-        // (e.g. data used by the views).
+    	// a search on disk or by group keeps nothing for the view
+    	if (hsp != null && hsp.ts != null)
+    		hsp.save(new File(internDir, INTERNALS));
     }
-}
\ No newline at end of file
+}
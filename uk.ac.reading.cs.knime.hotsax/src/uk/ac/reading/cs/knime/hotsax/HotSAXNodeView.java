@@ -3,6 +3,9 @@ package uk.ac.reading.cs.knime.hotsax;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+
+import javax.swing.JLabel;
+
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
@@ -29,6 +32,12 @@ public class HotSAXNodeView extends NodeView<HotSAXNodeModel> {
     protected HotSAXNodeView(final HotSAXNodeModel nodeModel) {
         super(nodeModel);
         
+        // a search on disk or by group keeps no series to plot
+        if(nodeModel.hsp == null || nodeModel.hsp.ts == null) {
+        	setComponent(new JLabel("No data to display, the discords were searched on disk or by group."));
+        	return;
+        }
+        
         if(nodeModel.hsp.ts_d[0].length()<=12)
 			df = new SimpleDateFormat("HH:mm:ss.SSS");
 		else
@@ -1,22 +1,35 @@
 package uk.ac.reading.cs.knime.hotsax;
 
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Random;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpecCreator;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
-import org.knime.core.data.RowKey;
-import org.knime.core.data.def.DefaultRow;
-import org.knime.core.data.def.DoubleCell;
-import org.knime.core.data.def.IntCell;
-import org.knime.core.data.def.StringCell;
+import org.knime.core.data.append.AppendedColumnRow;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.NodeLogger;
 
 /**
  * Implements HOTSAX discord discovery algorithm.
@@ -30,9 +43,28 @@ public class HotSAXProcessor {
 	/*Collection of Discord records*/
 	DiscordRecords dr;
 
+	/* The search counters of the current execution by engine and window size, added up over the
+	   groups; the groups search the window sizes in increasing order, so they are kept in it */
+	private final LinkedHashMap<String, SearchStatistics> statistics = new LinkedHashMap<String, SearchStatistics>();
+	/* The number of window sizes whose discords differ from the brute force ones */
+	final AtomicInteger mismatches = new AtomicInteger();
+
+	/* The budget of the current execution, null for none */
+	private Budget budget;
+	/* Whether the budget ran out before a search finished */
+	volatile boolean approximate;
+
+	/** The magic number of the internals file, "HSAX". */
+	private static final int MAGIC = 0x48534158;
+
+	/** The number of windows after which the running window statistics are recomputed. */
+	private static final int STATISTICS_REFRESH = 1 << 12;
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(HotSAXProcessor.class);
+
 	private static TSProcessor tp = new TSProcessor();
-	//private static SAXProcessor sp = new SAXProcessor();
-	//private static NormalAlphabet na = new NormalAlphabet();
+	private static SAXProcessor sp = new SAXProcessor();
+	private static NormalAlphabet na = new NormalAlphabet();
 
 	
 	/**
@@ -44,6 +76,16 @@ public class HotSAXProcessor {
 	 * produced by SAX with specified numerosity reduction. Thus, if the 
 	 * strategy is EXACT or MINDIST, discords do not match those produced by 
 	 * BruteForce or NONE.
+	 * With a maximum window size above the sliding window size, the discords of
+	 * every window size in between are searched, each size trying the nearest
+	 * neighbours found for the one before first. Without Z-normalisation their
+	 * distances also bound the new ones from below, which raises the threshold
+	 * candidates are abandoned on from the start.
+	 * With a time or distance evaluation budget, shared by all the window sizes and groups, the
+	 * candidates left once it runs out are not searched: the discords are the best found so far,
+	 * each flagged exact or not and bounded by the farthest the unsearched ones could be.
+	 * The Brute Force engine compares every subsequence to every other one instead, and in
+	 * verification mode HOTSAX is checked against it.
 	 * @param series				The time series.
 	 * @param discordsNumToReport	The number of discords to report.
 	 * @param windowSize			SAX sliding window size.
@@ -55,242 +97,1297 @@ public class HotSAXProcessor {
 	 * @throws Exception if error occurs.
 	 */
 	public BufferedDataTable series2Discords(BufferedDataTable[] inData, SAXParameters params, ExecutionContext exec) throws Exception {
+		if (HotSAXNodeModel.DRAG_ENGINE.equals(params.HOTSAX_ENGINE))
+			return series2DiskDiscords(inData, params, exec);
+		prepare(params);
+		if (params.GROUPCOL != null && inData[0].getDataTableSpec().findColumnIndex(params.GROUPCOL) >= 0)
+			return series2GroupDiscords(inData, params, exec);
+
 		// Define results collection object 
-		DataTableSpec outSpec = SAXTable.createDataTableSpec();
+		DataTableSpec outSpec = createDiscordSpec(params);
 		BufferedDataContainer container = exec.createDataContainer(outSpec);
 		
 		// get the SAX transform done
 		ts_d = TSProcessor.readDateColumn(inData, params.DATECOL);
-		ts = TSProcessor.readColumn(inData, params.COLNAME);
-		SAXRecords sax = SAXProcessor.readSAXColumn(inData, "SAX String");//sp.ts2saxViaWindow(HotSAXNodeModel.ts, params.SAX_WINDOW_SIZE,	params.SAX_PAA_SIZE, na.getCuts(params.SAX_ALPHABET_SIZE), params.SAX_NR_STRATEGY, params.SAX_NORM_THRESHOLD);
-
-		// fill the array for the outer loop
-		ArrayList<MagicArrayEntry> magicArray = new ArrayList<MagicArrayEntry>(sax.getRecords().size());
-		for (SAXRecord sr : sax.getRecords())
-			magicArray.add(new MagicArrayEntry(String.valueOf(sr.getPayload()), sr.getIndexes().size()));
-		System.err.println("Magic array filled");
-
-		DiscordRecords discords = getDiscordsWithMagic(ts, sax, params.SAX_WINDOW_SIZE, magicArray, params.DISCORDS);
+		ts = TSProcessor.readColumn(inData, params.COLNAME, exec.createSubProgress(0.1));
+		ExecutionMonitor searchExec = exec.createSubProgress(0.9);
+		DiscordRecords discords = searchWindowSizes(ts, inData, params, params.HOTSAX_THREADS, searchExec);
 		dr = discords;
-		System.err.println(discords.getSize() + " discords found");
+		LOGGER.debug(discords.getSize() + " discords found");
 
 		//Add records to outport table
-		RowKey key = null;
-		DataCell[] cells = null;
-		DataRow row = null;
 		int row_count = 0;
-		for (DiscordRecord idx : discords) {
-			key = new RowKey("Row"+row_count);
-			cells = new DataCell[5];
-			cells[0] = new StringCell(idx.getPayload());
-			cells[1] = new IntCell(idx.getPosition());
-			cells[2] = new IntCell(idx.getLength());
-			cells[3] = new DoubleCell(idx.getNNDistance());
-			cells[4] = new IntCell(idx.getRuleId());
-			row = new DefaultRow(key,cells);
-			container.addRowToTable(row);
-			row_count++;
+		for (DiscordRecord idx : discords)
+			container.addRowToTable(createDiscordRow(row_count++, idx, params));
+		container.close();
+		return container.getTable();
+	}
+
+	/**
+	 * Searches the discords of a series held in memory, as the node does without the tables.
+	 * @param series	The time series.
+	 * @param params	The parameters.
+	 * @param exec		The monitor to report progress to.
+	 * @return the discords of all the window sizes.
+	 * @throws Exception if error occurs.
+	 */
+	DiscordRecords series2Discords(double[] series, SAXParameters params, ExecutionMonitor exec) throws Exception {
+		prepare(params);
+		return searchWindowSizes(series, new BufferedDataTable[1], params, params.HOTSAX_THREADS, exec);
+	}
+
+	/**
+	 * Sets up the budget and clears what the last execution left.
+	 * @param params The parameters.
+	 */
+	private void prepare(SAXParameters params) {
+		budget = hasBudget(params) ? new Budget(params.HOTSAX_TIME_BUDGET, params.HOTSAX_EVAL_BUDGET * 1000000L) : null;
+		approximate = false;
+		mismatches.set(0);
+		synchronized (statistics) {
+			statistics.clear();
+		}
+	}
+
+	/**
+	 * Get the search counters of the last execution.
+	 * @return the counters, by window size and then by engine.
+	 */
+	Collection<SearchStatistics> getStatistics() {
+		synchronized (statistics) {
+			return new ArrayList<SearchStatistics>(statistics.values());
+		}
+	}
+
+	/**
+	 * Creates the table of the search counters of the last execution, a row per engine and
+	 * window size searched. The DRAG engine has none.
+	 * @param exec The execution context.
+	 * @return the table.
+	 */
+	public BufferedDataTable statistics2Table(ExecutionContext exec) {
+		BufferedDataContainer container = exec.createDataContainer(SAXTable.createStatisticsSpec());
+		synchronized (statistics) {
+			int row_count = 0;
+			for (SearchStatistics stats : statistics.values())
+				container.addRowToTable(SAXTable.createRow(row_count++, stats));
 		}
 		container.close();
 		return container.getTable();
 	}
 
-	private DiscordRecords getDiscordsWithMagic(double[] series, SAXRecords sax, int windowSize,
-			ArrayList<MagicArrayEntry> magicArray, int discordCollectionSize) throws Exception {
-		// sort the candidates
-		Collections.sort(magicArray);
+	/**
+	 * Adds the counters of a search to the ones of its engine and window size.
+	 * @param stats The counters.
+	 */
+	private void addStatistics(SearchStatistics stats) {
+		String key = stats.engine + "/" + stats.windowSize;
+		synchronized (statistics) {
+			SearchStatistics total = statistics.get(key);
+			if (total == null)
+				statistics.put(key, total = new SearchStatistics(stats.engine, stats.windowSize));
+			total.add(stats);
+		}
+	}
 
-		// resulting discords collection
+	/**
+	 * Tells if the search has a time or distance evaluation budget.
+	 * @param params The parameters.
+	 * @return true if it has one.
+	 */
+	private static boolean hasBudget(SAXParameters params) {
+		return params.HOTSAX_TIME_BUDGET > 0 || params.HOTSAX_EVAL_BUDGET > 0;
+	}
+
+	/**
+	 * Creates the spec of the discord rows, with the exact flags and bounds under a budget.
+	 * @param params The parameters.
+	 * @return the spec.
+	 */
+	private static DataTableSpec createDiscordSpec(SAXParameters params) {
+		DataTableSpec spec = SAXTable.createDataTableSpec();
+		return hasBudget(params) ? new DataTableSpec(spec, SAXTable.createBoundSpec()) : spec;
+	}
+
+	/**
+	 * Creates the output row of a discord, with its exact flag and bound under a budget.
+	 * @param row		The row number.
+	 * @param discord	The discord.
+	 * @param params	The parameters.
+	 * @return the row.
+	 */
+	private static DataRow createDiscordRow(int row, DiscordRecord discord, SAXParameters params) {
+		DataRow discordRow = SAXTable.createRow(row, discord);
+		return hasBudget(params) ? new AppendedColumnRow(discordRow, SAXTable.createBoundCells(discord)) : discordRow;
+	}
+
+	/**
+	 * Saves what the view draws, the series, its timestamps and the discords, so it opens
+	 * without searching them again.
+	 * @param file The file.
+	 * @throws IOException if the file can't be written.
+	 */
+	void save(File file) throws IOException {
+		try (DataOutputStream out = InternalsFile.create(file, MAGIC)) {
+			InternalsFile.writeDoubles(out, ts);
+			InternalsFile.writeStrings(out, ts_d);
+			out.writeInt(dr.getSize());
+			for (DiscordRecord discord : dr) {
+				out.writeInt(discord.getPosition());
+				out.writeInt(discord.getLength());
+				out.writeDouble(discord.getNNDistance());
+				out.writeInt(discord.getRuleId());
+				InternalsFile.writeString(out, discord.getPayload());
+				InternalsFile.writeString(out, discord.getInfo());
+			}
+		}
+	}
+
+	/**
+	 * Loads what the view draws, as it was saved.
+	 * @param file The file.
+	 * @return the processor.
+	 * @throws IOException if the file can't be read.
+	 */
+	static HotSAXProcessor load(File file) throws IOException {
+		ByteBuffer in = InternalsFile.map(file, MAGIC);
+		HotSAXProcessor hsp = new HotSAXProcessor();
+		hsp.ts = InternalsFile.readDoubles(in);
+		hsp.ts_d = InternalsFile.readStrings(in);
+		hsp.dr = new DiscordRecords();
+		for (int i = in.getInt(); i > 0; i--) {
+			DiscordRecord discord = new DiscordRecord(in.getInt(), 0.0D);
+			discord.setLength(in.getInt());
+			discord.setNNDistance(in.getDouble());
+			discord.setRuleId(in.getInt());
+			discord.setPayload(InternalsFile.readString(in));
+			discord.setInfo(InternalsFile.readString(in));
+			hsp.dr.add(discord);
+		}
+		return hsp;
+	}
+
+	/**
+	 * Searches the discords of the window sizes, from the sliding window size up to the maximum
+	 * one, each size starting from what the one before found.
+	 * @param series	The time series.
+	 * @param inData	The input tables, for the SAX words input.
+	 * @param params	The parameters.
+	 * @param threads	The number of threads the candidates are spread over.
+	 * @param exec		The monitor to report progress to.
+	 * @return the discords of all the window sizes.
+	 * @throws Exception if error occurs.
+	 */
+	private DiscordRecords searchWindowSizes(double[] series, BufferedDataTable[] inData, SAXParameters params,
+			int threads, ExecutionMonitor exec) throws Exception {
+		boolean saxInput = inData.length > 1 && inData[1] != null;
+		int minWindow = params.SAX_WINDOW_SIZE;
+		int maxWindow = Math.max(minWindow, Math.min(params.HOTSAX_MAX_WINDOW_SIZE, series.length));
+		if (saxInput && maxWindow > minWindow)
+			throw new SAXException("The SAX words input fits a single window size.");
+		if (saxInput && HotSAXNodeModel.BRUTE_FORCE_ENGINE.equals(params.HOTSAX_ENGINE))
+			throw new SAXException("The brute force engine searches the series, it doesn't take SAX words.");
 		DiscordRecords discords = new DiscordRecords();
-		
-		// visit registry
-		HashSet<Integer> visitRegistry = new HashSet<Integer>(windowSize * discordCollectionSize);
+		TopDiscords previous = null;
+		for (int windowSize = minWindow; windowSize <= maxWindow; windowSize++) {
+			exec.checkCanceled();
+			ExecutionMonitor windowExec = exec.createSubProgress(1.0D / (maxWindow - minWindow + 1));
+			TopDiscords top = new TopDiscords(params.DISCORDS, windowSize, series.length - windowSize + 1);
+			for (DiscordRecord discord : series2Discords(series, inData, params, windowSize, top, previous, threads, windowExec))
+				discords.add(discord);
+			previous = top;
+		}
+		return discords;
+	}
+
+	/**
+	 * Finds the discords of every group of rows sharing a key. The series of all the groups are
+	 * read in one pass over the table, then the groups are searched in parallel, one thread
+	 * each, and their discords tagged with the key. The view has nothing to plot.
+	 * @param inData	The input tables.
+	 * @param params	The parameters.
+	 * @param exec		The execution context.
+	 * @return the discords table, with the group key last.
+	 * @throws Exception if error occurs.
+	 */
+	private BufferedDataTable series2GroupDiscords(BufferedDataTable[] inData, SAXParameters params, ExecutionContext exec)
+			throws Exception {
+		if (inData.length > 1 && inData[1] != null)
+			throw new SAXException("The SAX words input fits a single series, it can't be grouped.");
+		ts = null;
+		ts_d = null;
+		dr = null;
+		DataTableSpec inSpec = inData[0].getDataTableSpec();
+		int groupIdx = inSpec.findColumnIndex(params.GROUPCOL);
+		LinkedHashMap<DataCell, double[]> groups = ColumnReader.readGroupedDoubleColumn(inData[0],
+				inSpec.findColumnIndex(params.COLNAME), groupIdx, exec.createSubProgress(0.1));
+		ArrayList<Map.Entry<DataCell, double[]>> entries = new ArrayList<Map.Entry<DataCell, double[]>>(groups.entrySet());
+		DiscordRecords[] found = new DiscordRecords[entries.size()];
+		ExecutionMonitor searchExec = exec.createSubProgress(0.9);
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger done = new AtomicInteger();
+		Callable<Void> worker = () -> {
+			int g;
+			while ((g = next.getAndIncrement()) < entries.size()) {
+				searchExec.checkCanceled();
+				double[] series = entries.get(g).getValue();
+				// a group shorter than a window has no discords; the search of a group reports no
+				// progress of its own but is cancelled with the node
+				found[g] = (series.length < params.SAX_WINDOW_SIZE) ? new DiscordRecords()
+						: searchWindowSizes(series, inData, params, 1, searchExec.createSubProgress(0));
+				searchExec.setProgress((double) done.incrementAndGet() / entries.size(),
+						"Searched " + done.get() + " of " + entries.size() + " groups");
+			}
+			return null;
+		};
+		int threads = Math.max(1, Math.min(params.HOTSAX_THREADS, entries.size()));
+		if (threads == 1)
+			worker.call();
+		else {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				ArrayList<ForkJoinTask<Void>> futures = new ArrayList<ForkJoinTask<Void>>();
+				for (int t = 0; t < threads; t++)
+					futures.add(pool.submit(worker));
+				for (ForkJoinTask<Void> f : futures)
+					await(f);
+			} finally {
+				pool.shutdownNow();
+			}
+		}
+
+		// the key column after the discord columns, renamed if its name is taken
+		DataTableSpec discordSpec = createDiscordSpec(params);
+		DataColumnSpecCreator keySpec = new DataColumnSpecCreator(inSpec.getColumnSpec(groupIdx));
+		if (discordSpec.containsName(params.GROUPCOL))
+			keySpec.setName(params.GROUPCOL + " (Group)");
+		BufferedDataContainer container = exec.createDataContainer(
+				new DataTableSpec(discordSpec, new DataTableSpec(keySpec.createSpec())));
+		int row_count = 0;
+		for (int g = 0; g < entries.size(); g++)
+			for (DiscordRecord discord : found[g])
+				container.addRowToTable(new AppendedColumnRow(createDiscordRow(row_count++, discord, params), entries.get(g).getKey()));
+		LOGGER.debug(row_count + " discords found in " + entries.size() + " groups");
+		container.close();
+		return container.getTable();
+	}
+
+	/**
+	 * Finds the discords with DRAG on a disk copy of the series, so the heap holds neither the
+	 * series nor its timestamps; the view has nothing to plot.
+	 * @param inData	The input tables.
+	 * @param params	The parameters.
+	 * @param exec		The execution context.
+	 * @return the discords table, with long positions.
+	 * @throws Exception if error occurs.
+	 */
+	private BufferedDataTable series2DiskDiscords(BufferedDataTable[] inData, SAXParameters params, ExecutionContext exec)
+			throws Exception {
+		if (inData.length > 1 && inData[1] != null)
+			throw new SAXException("The DRAG engine searches the series, it doesn't take SAX words.");
+		if (params.HOTSAX_MAX_WINDOW_SIZE > params.SAX_WINDOW_SIZE)
+			throw new SAXException("The DRAG engine searches a single window size.");
+		if (params.GROUPCOL != null && inData[0].getDataTableSpec().findColumnIndex(params.GROUPCOL) >= 0)
+			throw new SAXException("The DRAG engine searches a single series, it can't be grouped.");
+		ts = null;
+		ts_d = null;
+		dr = null;
+		prepare(params);
+		int column = inData[0].getDataTableSpec().findColumnIndex(params.COLNAME);
+		BufferedDataContainer container = exec.createDataContainer(SAXTable.createDataTableSpec(true));
+		try (DiskSeries series = new DiskSeries(inData[0], column, exec.createSubProgress(0.1))) {
+			DRAG drag = new DRAG(series, params.SAX_WINDOW_SIZE, params.HOTSAX_ZNORM, params.SAX_NORM_THRESHOLD,
+					params.DRAG_BUDGET * (1L << 20));
+			int row_count = 0;
+			for (DRAG.Discord discord : drag.discords(params.DISCORDS, params.DRAG_RANGE, exec.createSubProgress(0.9)))
+				container.addRowToTable(SAXTable.createRow(row_count++, discord, params.SAX_WINDOW_SIZE));
+			LOGGER.debug(row_count + " discords found");
+		}
+		container.close();
+		return container.getTable();
+	}
+
+	/**
+	 * Searches the discords of one window size, with HOTSAX or by brute force. In verification
+	 * mode the HOTSAX discords are compared to the brute force ones among the same candidates.
+	 * @param series	The time series.
+	 * @param inData	The input tables.
+	 * @param params	The parameters.
+	 * @param windowSize	The sliding window size.
+	 * @param top		The top discords of the window size, empty.
+	 * @param previous	The top discords of the window size one less, null if it wasn't searched.
+	 * @param threads	The number of threads the candidates are spread over.
+	 * @param exec		The monitor to report progress to.
+	 * @return the discords.
+	 * @throws Exception if error occurs.
+	 */
+	private DiscordRecords series2Discords(double[] series, BufferedDataTable[] inData, SAXParameters params, int windowSize,
+			TopDiscords top, TopDiscords previous, int threads, ExecutionMonitor exec) throws Exception {
+		// Z-normalised distances compare the shapes the SAX words describe, not the levels
+		double[] means = null;
+		double[] invSigmas = null;
+		if (params.HOTSAX_ZNORM) {
+			means = new double[series.length - windowSize + 1];
+			invSigmas = new double[means.length];
+			windowStatistics(series, windowSize, params.SAX_NORM_THRESHOLD, means, invSigmas);
+		}
+		if (HotSAXNodeModel.BRUTE_FORCE_ENGINE.equals(params.HOTSAX_ENGINE))
+			return bruteForceDiscords(new BruteForceDiscords(series, windowSize, means, invSigmas), windowSize,
+					params.DISCORDS, null, threads, exec);
+
+		// fill the array for the outer loop
+		ArrayList<MagicArrayEntry> magicArray;
+		if (inData.length > 1 && inData[1] != null)
+			// words of an upstream SAX node
+			magicArray = SAXProcessor.toMagicArray(SAXProcessor.readSAXColumn(inData, "SAX String"));
+		else if (SAXWordCodec.fits(params.SAX_PAA_SIZE, params.SAX_ALPHABET_SIZE))
+			magicArray = SAXProcessor.toMagicArray(sp.ts2compactSaxViaWindow(series, windowSize,
+					params.SAX_PAA_SIZE, params.SAX_ALPHABET_SIZE, params.SAX_NR_STRATEGY, params.SAX_NORM_THRESHOLD));
+		else
+			magicArray = SAXProcessor.toMagicArray(sp.ts2saxViaWindow(series, windowSize, params.SAX_PAA_SIZE,
+					na.getCuts(params.SAX_ALPHABET_SIZE), params.SAX_NR_STRATEGY, params.SAX_NORM_THRESHOLD));
+
+		// the order random neighbours are visited in, shuffled once and shared by all candidates
+		int[] visitOrder = shuffledPositions(series.length - windowSize + 1, params.SEED);
+
+		// MINDIST only bounds the distances of Z-normalised windows
+		WordBuckets buckets = null;
+		if (HotSAXNodeModel.MINDIST_SEARCH.equals(params.HOTSAX_SEARCH) && params.HOTSAX_ZNORM
+				&& SAXWordCodec.fits(params.SAX_PAA_SIZE, params.SAX_ALPHABET_SIZE))
+			buckets = new WordBuckets(series, windowSize, params.SAX_PAA_SIZE, params.SAX_ALPHABET_SIZE,
+					params.SAX_NORM_THRESHOLD, invSigmas, visitOrder);
 
-		// we conduct the search until the number of discords is less than desired
-		while (discords.getSize() < discordCollectionSize) {
-			System.err.println("Currently known discords: " + discords.getSize() + " out of " + discordCollectionSize);
+		// the nearest neighbours found for the window size one less are tried first
+		int[] hints = (previous == null) ? null : previous.neighbours;
+		SearchSpace space = new SearchSpace(series, windowSize, means, invSigmas, visitOrder, buckets, hints, budget);
+		if (previous != null && !params.HOTSAX_ZNORM)
+			top.reuse(previous, candidatePositions(magicArray, space.series.length));
+		if (!params.HOTSAX_VERIFY)
+			return getDiscordsWithMagic(space, magicArray, top, threads, exec);
 
-			DiscordRecord bestDiscord = findBestDiscordWithMagic(series, windowSize, sax, magicArray, visitRegistry);
+		DiscordRecords discords = getDiscordsWithMagic(space, magicArray, top, threads, exec.createSubProgress(0.5));
+		if (budget != null && budget.isExhausted())
+			LOGGER.debug("Window size " + windowSize + " not verified, the budget was spent");
+		else {
+			BruteForceDiscords bruteForce = new BruteForceDiscords(series, windowSize, means, invSigmas);
+			DiscordRecords exact = bruteForceDiscords(bruteForce, windowSize, params.DISCORDS,
+					candidatePositions(magicArray, series.length), threads, exec.createSubProgress(0.5));
+			verify(discords, exact, bruteForce, params.DISCORDS, windowSize);
+		}
+		return discords;
+	}
+
+	/**
+	 * Finds the discords of one window size by brute force.
+	 * @param bruteForce	The brute force search of the window size.
+	 * @param windowSize	The sliding window size.
+	 * @param discordsNum	The number of discords to report.
+	 * @param candidates	The positions which may be discords, null for all.
+	 * @param threads		The number of threads the candidates are spread over.
+	 * @param exec			The monitor to report progress to.
+	 * @return the discords.
+	 * @throws Exception if error occurs.
+	 */
+	private DiscordRecords bruteForceDiscords(BruteForceDiscords bruteForce, int windowSize, int discordsNum,
+			BitSet candidates, int threads, ExecutionMonitor exec) throws Exception {
+		SearchStatistics stats = new SearchStatistics(HotSAXNodeModel.BRUTE_FORCE_ENGINE, windowSize);
+		long start = System.nanoTime();
+		DiscordRecords discords = bruteForce.discords(discordsNum, candidates, threads, stats, exec);
+		stats.discords = discords.getSize();
+		stats.nanos = System.nanoTime() - start;
+		addStatistics(stats);
+		LOGGER.debug("Search end, " + stats);
+		return discords;
+	}
+
+	/**
+	 * Checks the discords HOTSAX found against the brute force search. Both engines break ties
+	 * by position, but distances computed in another order may round apart, so each discord is
+	 * checked against the exact distances rather than rank by rank: it must be as far from its
+	 * nearest neighbour as the brute force search found, and as far as any candidate the
+	 * discords before it leave.
+	 * @param found			The HOTSAX discords.
+	 * @param exact			The brute force discords.
+	 * @param bruteForce	The brute force search which found them.
+	 * @param discordsNum	The number of discords asked for.
+	 * @param windowSize	The sliding window size.
+	 */
+	private void verify(DiscordRecords found, DiscordRecords exact, BruteForceDiscords bruteForce, int discordsNum,
+			int windowSize) {
+		if (bruteForce.agrees(found, discordsNum))
+			return;
+		mismatches.incrementAndGet();
+		StringBuilder message = new StringBuilder("Window size " + windowSize + ", HOTSAX found");
+		for (DiscordRecord discord : found)
+			message.append(" ").append(discord.getPosition()).append(":").append(discord.getNNDistance());
+		message.append(", the brute force search");
+		for (DiscordRecord discord : exact)
+			message.append(" ").append(discord.getPosition()).append(":").append(discord.getNNDistance());
+		LOGGER.warn(message);
+	}
+
+	/**
+	 * Get the positions of the magic array entries.
+	 * @param magicArray	The magic array.
+	 * @param size			An upper bound of the positions.
+	 * @return the positions.
+	 */
+	private static BitSet candidatePositions(ArrayList<MagicArrayEntry> magicArray, int size) {
+		BitSet positions = new BitSet(size);
+		for (MagicArrayEntry entry : magicArray)
+			for (int pos : entry.getPositions())
+				positions.set(pos);
+		return positions;
+	}
+
+	private DiscordRecords getDiscordsWithMagic(SearchSpace space, ArrayList<MagicArrayEntry> magicArray,
+			TopDiscords top, int threads, ExecutionMonitor exec) throws Exception {
+		int windowSize = space.windowSize;
+
+		// resulting discords collection
+		DiscordRecords discords = new DiscordRecords();
+		if (top.discordsNum < 1)
+			return discords;
+
+		// sort the candidates
+		Collections.sort(magicArray);
 
-			// if the discord is null we getting out of the search
-			if (bestDiscord.getNNDistance() == 0.0D || bestDiscord.getPosition() == -1) {
-				System.err.println("Search end: " + discords.getSize() + " discords found, Last seen:" + bestDiscord);
-				break;
+		// the candidate positions in the order of the magic array, with the entries they come from
+		int candidateCount = 0;
+		for (MagicArrayEntry entry : magicArray)
+			candidateCount += entry.getPositions().length;
+		int[] candidates = new int[candidateCount];
+		int[] candidateWords = new int[candidateCount];
+		for (int e = 0, c = 0; e < magicArray.size(); e++)
+			for (int pos : magicArray.get(e).getPositions()) {
+				candidates[c] = pos;
+				candidateWords[c++] = e;
 			}
 
+		// all the discords are searched in one sweep over the candidates
+		SearchStatistics stats = new SearchStatistics(HotSAXNodeModel.HOTSAX_ENGINE, windowSize);
+		stats.candidates = candidateCount;
+		long start = System.nanoTime();
+		double unsearchedBound2 = findTopDiscordsWithMagic(space, magicArray, candidates, candidateWords, top, threads,
+				stats, exec);
+		if (unsearchedBound2 > 0.0D) {
+			approximate = true;
+			LOGGER.debug("Budget spent, the unsearched candidates are within " + Math.sqrt(unsearchedBound2));
+		}
+
+		for (DiscordRecord bestDiscord : top.select(unsearchedBound2)) {
 			bestDiscord.setInfo("position " + bestDiscord.getPosition() + ", NN distance " + bestDiscord.getNNDistance() + bestDiscord.getInfo());
-			System.err.println(bestDiscord.getInfo());
 
 			bestDiscord.setLength(windowSize);
 			
 			// collect the result
 			discords.add(bestDiscord);
-
-			// and maintain data structures
-			int markStart = bestDiscord.getPosition() - windowSize;
-			int markEnd = bestDiscord.getPosition() + windowSize;
-			for (int i = markStart; i < markEnd; i++)
-				visitRegistry.add(i);
 		}
+		stats.discords = discords.getSize();
+		stats.nanos = System.nanoTime() - start;
+		addStatistics(stats);
+		LOGGER.debug("Search end, " + stats);
 		return discords;
 	}
 
 	/**
-	 * This method reports the best found discord. Note, that this discord is
-	 * approximately the best. Due to the fuzzy-logic search with randomisation
+	 * Builds a random permutation of the subsequence positions.
+	 * @param size	The number of positions.
+	 * @param seed	The seed of the shuffle.
+	 * @return the positions in random order.
+	 */
+	static int[] shuffledPositions(int size, long seed) {
+		int[] positions = new int[Math.max(0, size)];
+		for (int i = 0; i < positions.length; i++)
+			positions[i] = i;
+		Random rnd = new Random(seed);
+		for (int i = positions.length - 1; i > 0; i--) {
+			int index = rnd.nextInt(i + 1);
+			int a = positions[index];
+			positions[index] = positions[i];
+			positions[i] = a;
+		}
+		return positions;
+	}
+
+	/**
+	 * Computes the mean and inverse standard deviation of every window with running sums. The
+	 * sums are shifted by the first value of a run, which is refreshed regularly, so the variance
+	 * doesn't cancel out. Windows which are flat, or whose standard deviation is below the
+	 * normalisation threshold, get an inverse of 0, so they Z-normalise to zeros.
+	 * @param series		The time series.
+	 * @param windowSize	The sliding window size.
+	 * @param nThreshold	The normalisation threshold value.
+	 * @param means			The array to write the window means to.
+	 * @param invSigmas		The array to write the inverse standard deviations to.
+	 */
+	static void windowStatistics(double[] series, int windowSize, double nThreshold, double[] means, double[] invSigmas) {
+		int m = windowSize;
+		double shift = 0, sum = 0, squares = 0;
+		// the number of values in the window differing from the one before them
+		int changes = 0;
+		for (int k = 1; k < m; k++)
+			if (series[k] != series[k - 1])
+				changes++;
+		for (int i = 0; i < means.length; i++) {
+			if (i > 0) {
+				if (series[i] != series[i - 1])
+					changes--;
+				if (series[i + m - 1] != series[i + m - 2])
+					changes++;
+			}
+			if (i % STATISTICS_REFRESH == 0) {
+				shift = series[i];
+				sum = 0;
+				squares = 0;
+				for (int k = i; k < i + m; k++) {
+					double v = series[k] - shift;
+					sum += v;
+					squares += v * v;
+				}
+			} else {
+				double in = series[i + m - 1] - shift;
+				double out = series[i - 1] - shift;
+				sum += in - out;
+				squares += in * in - out * out;
+			}
+			// the sample standard deviation, as TSProcessor.stDev and the SAX words use
+			double variance = (m > 1) ? (squares - sum * sum / m) / (m - 1) : 0.0D;
+			double sd = (variance > 0.0D) ? Math.sqrt(variance) : 0.0D;
+			means[i] = sum / m + shift;
+			invSigmas[i] = (changes > 0 && !(sd < nThreshold) && sd > 0.0D) ? 1.0D / sd : 0.0D;
+		}
+	}
+
+	/**
+	 * This method searches the discords of all the candidates in one sweep. Note, that these
+	 * discords are approximately the best. Due to the fuzzy-logic search with randomisation
 	 * and aggressive labelling of the magic array locations.
+	 * 
+	 * The candidates are spread over the threads. All searches abandon a candidate as soon as
+	 * it has a neighbour closer than the threshold of the top discords, which is shared
+	 * lock-free. A candidate whose distance ties the threshold is never abandoned, so the
+	 * discords are the same whatever the threads.
 	 *
-	 * @param series 			The series we are looking for discord in.
-	 * @param windowSize 		The sliding window size.
-	 * @param sax 				The SAX data structure for the reference.
+	 * @param space 			The series we are looking for discord in.
+	 * @param allWords 			The magic heuristics array.
+	 * @param candidates		The candidate positions, in the magic array order.
+	 * @param candidateWords	The magic array entry of each candidate.
+	 * @param top				The top discords, which collects the searched candidates.
+	 * @param threads			The number of threads.
+	 * @param stats				The counters the ones of the threads are added to.
+	 * @param exec				The monitor to report progress to.
+	 * @return the largest squared nearest neighbour distance bound of the candidates the budget
+	 * left unsearched, 0 if all were.
+	 * @throws Exception If error occurs.
+	 */
+	private static double findTopDiscordsWithMagic(SearchSpace space, ArrayList<MagicArrayEntry> allWords,
+			int[] candidates, int[] candidateWords, TopDiscords top, int threads, SearchStatistics stats,
+			ExecutionMonitor exec) throws Exception {
+		Search[] searches = new Search[Math.max(1, threads)];
+		for (int w = 0; w < searches.length; w++)
+			searches[w] = new Search(space, top);
+
+		AtomicInteger next = new AtomicInteger();
+		if (searches.length == 1)
+			run(searches[0], allWords, candidates, candidateWords, next, exec);
+		else {
+			ForkJoinPool pool = new ForkJoinPool(searches.length);
+			try {
+				ArrayList<ForkJoinTask<Void>> futures = new ArrayList<ForkJoinTask<Void>>();
+				for (Search search : searches)
+					futures.add(pool.submit(() -> {
+						run(search, allWords, candidates, candidateWords, next, exec);
+						return null;
+					}));
+				for (ForkJoinTask<Void> f : futures)
+					await(f);
+			} finally {
+				pool.shutdownNow();
+			}
+		}
+		double unsearchedBound2 = 0.0D;
+		for (Search search : searches) {
+			unsearchedBound2 = Math.max(unsearchedBound2, search.unsearchedBound2);
+			stats.add(search.stats);
+		}
+		return unsearchedBound2;
+	}
+
+	/**
+	 * The loop of a search thread, taking the next candidate until all are searched.
+	 * @param search			The search.
 	 * @param allWords 			The magic heuristics array.
-	 * @param discordRegistry	The global visit array.
-	 * @return The best discord instance.
+	 * @param candidates		The candidate positions, in the magic array order.
+	 * @param candidateWords	The magic array entry of each candidate.
+	 * @param next				The next candidate to search.
+	 * @param exec				The monitor to report progress to.
 	 * @throws Exception If error occurs.
 	 */
-	private static DiscordRecord findBestDiscordWithMagic(double[] series, int windowSize, SAXRecords sax,
-			ArrayList<MagicArrayEntry> allWords, HashSet<Integer> discordRegistry) throws Exception {
-		// prepare the visits array, note that there can't be more points to
-		// visit that in a SAX index
-		int[] visitArray = new int[series.length];
+	private static void run(Search search, ArrayList<MagicArrayEntry> allWords, int[] candidates, int[] candidateWords,
+			AtomicInteger next, ExecutionMonitor exec) throws Exception {
+		int c;
+		while ((c = next.getAndIncrement()) < candidates.length) {
+			exec.checkCanceled();
+			search.candidate(candidates[c], allWords.get(candidateWords[c]));
+			exec.setProgress((double) (c + 1) / candidates.length);
+		}
+	}
+
+	/**
+	 * Waits for a search thread to finish.
+	 * @param future The thread's future.
+	 * @throws SAXException if the search failed or was interrupted.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 */
+	static void await(ForkJoinTask<Void> future) throws SAXException, CanceledExecutionException {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SAXException("The discord search was interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CanceledExecutionException)
+				throw (CanceledExecutionException) e.getCause();
+			throw new SAXException("The discord search failed.", e.getCause());
+		}
+	}
 
-		// init tracking variables
-		int bestSoFarPosition = -1;
-		double bestSoFarDistance = 0.0D;
-		String bestSoFarWord = "";
+	/**
+	 * The series and the structures the search threads share, none of which they change.
+	 */
+	private static final class SearchSpace {
+		final double[] series;
+		final int windowSize;
+		/* The window statistics, null for raw distances */
+		final double[] means;
+		final double[] invSigmas;
+		/* The order random neighbours are visited in */
+		final int[] visitOrder;
+		/* The MINDIST buckets, null to visit the neighbours in random order */
+		final WordBuckets buckets;
+		/* The neighbour to try first for each position, -1 for none, null for no window size before */
+		final int[] hints;
+		/* The budget of the search, null for none */
+		final Budget budget;
 
-		System.err.println("Iterating over " + allWords.size() + " entries");
+		/**
+		 * Constructor.
+		 * @param series		The series we are looking for discord in.
+		 * @param windowSize	The sliding window size.
+		 * @param means			The window means, null to compare the raw subsequences.
+		 * @param invSigmas		The inverse window standard deviations, 0 for flat windows.
+		 * @param visitOrder	The order random neighbours are visited in.
+		 * @param buckets		The MINDIST buckets, null to visit the neighbours in random order.
+		 * @param hints			The neighbour to try first for each position, null for none.
+		 * @param budget		The budget of the search, null for none.
+		 */
+		SearchSpace(double[] series, int windowSize, double[] means, double[] invSigmas, int[] visitOrder,
+				WordBuckets buckets, int[] hints, Budget budget) {
+			this.series = series;
+			this.windowSize = windowSize;
+			this.means = means;
+			this.invSigmas = invSigmas;
+			this.visitOrder = visitOrder;
+			this.buckets = buckets;
+			this.hints = hints;
+			this.budget = budget;
+		}
+	}
 
-		for (MagicArrayEntry currentEntry : allWords) {
-			// look into each entry
-			String currentWord = currentEntry.getStr();
-			Set<Integer> occurrences = sax.getByWord(currentWord).getIndexes();
+	/**
+	 * The time and the distance evaluations a search may take, shared by its threads and by the
+	 * window sizes and groups of an execution. Once it is exhausted the candidates left are not
+	 * searched, and the discords are the best found so far.
+	 */
+	static final class Budget {
+		/** The number of distance evaluations a thread does between two charges. */
+		static final int CHARGE_INTERVAL = 1 << 10;
+
+		/* The time the budget runs out at, in System.nanoTime, if timed */
+		private final boolean timed;
+		private final long deadline;
+		/* The distance evaluations left */
+		private final AtomicLong evaluations;
+		private volatile boolean exhausted;
+
+		/**
+		 * Constructor.
+		 * @param seconds		The time budget in seconds, 0 for none.
+		 * @param evaluations	The number of distance evaluations, 0 for no limit.
+		 */
+		Budget(long seconds, long evaluations) {
+			this.timed = seconds > 0;
+			this.deadline = System.nanoTime() + seconds * 1000000000L;
+			this.evaluations = new AtomicLong((evaluations > 0) ? evaluations : Long.MAX_VALUE);
+		}
+
+		/**
+		 * Charges distance evaluations and checks the clock.
+		 * @param count The number of distance evaluations done.
+		 * @return true if the budget is exhausted.
+		 */
+		boolean charge(long count) {
+			if (evaluations.addAndGet(-count) < 0 || (timed && System.nanoTime() - deadline >= 0))
+				exhausted = true;
+			return exhausted;
+		}
+
+		/**
+		 * Tells if the budget is exhausted.
+		 * @return true if it is.
+		 */
+		boolean isExhausted() {
+			return exhausted;
+		}
+	}
+
+	/**
+	 * The discords found so far, which all the search threads share. The candidates whose nearest
+	 * neighbour was searched are kept best first, unless they are closer to it than the threshold.
+	 *
+	 * The threshold is the k-th distance of a set of those candidates at least two windows apart.
+	 * Each discord excludes a window either side of it, so it rules out at most one of the set,
+	 * and whatever is searched later, k discords will be reported before any candidate closer to
+	 * its neighbour than the threshold. The candidates are abandoned on it as on the best so far
+	 * distance when a single discord is asked for, and the set can only grow as candidates come,
+	 * so it only rises.
+	 *
+	 * Every distance computed in full also bounds the nearest neighbour distance of the neighbour,
+	 * so a candidate bounded below the threshold is not searched. The neighbour of the bound is
+	 * kept, it is tried first when the next window size is searched.
+	 */
+	private static final class TopDiscords {
+		final int discordsNum;
+		final int windowSize;
+		/* The threshold squared distance, as the bits of a non-negative double which order as longs do */
+		final AtomicLong threshold = new AtomicLong(Double.doubleToLongBits(0.0D));
+		/* The squared nearest neighbour distance bounds, rounded up to floats which are written atomically */
+		final float[] upperBounds;
+		/* The neighbour each bound is the distance to, -1 for none */
+		final int[] neighbours;
+		/* The searched candidates, by decreasing distance and then by position, as the brute force search picks them */
+		private final ArrayList<Searched> searched = new ArrayList<Searched>();
+
+		/**
+		 * Constructor.
+		 * @param discordsNum	The number of discords to report.
+		 * @param windowSize	The sliding window size.
+		 * @param positions		The number of subsequences.
+		 */
+		TopDiscords(int discordsNum, int windowSize, int positions) {
+			this.discordsNum = discordsNum;
+			this.windowSize = windowSize;
+			this.upperBounds = new float[Math.max(0, positions)];
+			Arrays.fill(upperBounds, Float.POSITIVE_INFINITY);
+			this.neighbours = new int[upperBounds.length];
+			Arrays.fill(neighbours, -1);
+		}
 
-			// iterate over these candidate positions first
-			for (int currentPos : occurrences) {
-				// make sure it is not a previously found discord passed through the parameters array note, that the
-				// discordRegistry contains the whole span of previously found discord, not just it's position...
-				if (discordRegistry.contains(currentPos))
+		/**
+		 * Get the threshold squared distance.
+		 * @return the squared distance.
+		 */
+		double threshold2() {
+			return Double.longBitsToDouble(threshold.get());
+		}
+
+		/**
+		 * Tells if a position is known to be closer to its nearest neighbour than the threshold.
+		 * @param position The position.
+		 * @return true if it can't be a discord.
+		 */
+		boolean isBelowThreshold(int position) {
+			return upperBounds[position] < threshold2();
+		}
+
+		/**
+		 * Lowers the nearest neighbour distance bound of a position. Concurrent updates may lose
+		 * the lower one, which only leaves a looser bound. The trivial matches of a position are
+		 * the windows starting up to a window before it and less than a window after it, so a
+		 * neighbour a window after a candidate does not bound the candidate's distance.
+		 * @param position	The position.
+		 * @param neighbour	The position of another subsequence.
+		 * @param distance2	The squared distance to it.
+		 */
+		void bound(int position, int neighbour, double distance2) {
+			if (neighbour >= position - windowSize && neighbour < position + windowSize)
+				return;
+			float bound = Math.nextUp((float) distance2);
+			if (bound < upperBounds[position]) {
+				upperBounds[position] = bound;
+				neighbours[position] = neighbour;
+			}
+		}
+
+		/**
+		 * Raises the threshold from the discords of the window size one less. Without
+		 * Z-normalisation a subsequence is at least as far from any other one as it is without
+		 * its last point, so the nearest neighbour distances found for it bound the new ones from
+		 * below. The threshold is set as it would be if they were the new distances of the
+		 * candidates which still are.
+		 * @param previous		The top discords of the window size one less, raw distances.
+		 * @param candidates	The positions of the candidates.
+		 */
+		synchronized void reuse(TopDiscords previous, BitSet candidates) {
+			raiseThreshold(previous.searched, candidates);
+		}
+
+		/**
+		 * Adds a searched candidate and raises the threshold.
+		 * @param position	The candidate position.
+		 * @param distance2	The squared nearest neighbour distance.
+		 * @param word		The candidate's word.
+		 */
+		synchronized void offer(int position, double distance2, String word) {
+			if (distance2 < threshold2())
+				return;
+			int at = searched.size();
+			while (at > 0 && searched.get(at - 1).isBelow(distance2, position))
+				at--;
+			searched.add(at, new Searched(position, distance2, word));
+			raiseThreshold(searched, null);
+
+			double threshold2 = threshold2();
+			while (!searched.isEmpty() && searched.get(searched.size() - 1).distance2 < threshold2)
+				searched.remove(searched.size() - 1);
+		}
+
+		/**
+		 * Raises the threshold to the k-th distance of candidates taken best first, at least two
+		 * windows apart, if there are k of them.
+		 * @param list			The candidates, best first.
+		 * @param candidates	The positions which may be taken, null for all.
+		 */
+		private void raiseThreshold(ArrayList<Searched> list, BitSet candidates) {
+			int[] taken = new int[discordsNum];
+			int count = 0;
+			for (int i = 0; i < list.size() && count < discordsNum; i++) {
+				int pos = list.get(i).position;
+				if (pos >= upperBounds.length || (candidates != null && !candidates.get(pos)))
 					continue;
+				boolean apart = true;
+				for (int t = 0; t < count && apart; t++)
+					apart = Math.abs(pos - taken[t]) >= 2 * windowSize;
+				if (!apart)
+					continue;
+				taken[count++] = pos;
+				if (count == discordsNum)
+					raiseThreshold(list.get(i).distance2);
+			}
+		}
 
-				System.err.println("Conducting search for " + currentWord + " at " + currentPos);
+		/**
+		 * Raises the threshold, unless it is greater.
+		 * @param distance2 The squared distance.
+		 */
+		private void raiseThreshold(double distance2) {
+			long bits = Double.doubleToLongBits(distance2);
+			long current;
+			while (bits > (current = threshold.get()))
+				if (threshold.compareAndSet(current, bits))
+					return;
+		}
 
-				int markStart = currentPos - windowSize;
-				int markEnd = currentPos + windowSize;
+		/**
+		 * Picks the discords among the searched candidates, best first, as many times over as
+		 * the best discord would be searched, excluding a window either side of each one found.
+		 * A discord at least as far from its neighbour as the candidates the budget left
+		 * unsearched could be is exact, the others are bounded by that distance.
+		 * @param unsearchedBound2	The largest squared distance bound of the unsearched candidates,
+		 * 							0 if all were searched.
+		 * @return the discords, at most k of them.
+		 */
+		synchronized ArrayList<DiscordRecord> select(double unsearchedBound2) {
+			ArrayList<DiscordRecord> discords = new ArrayList<DiscordRecord>();
+			BitSet registry = new BitSet(upperBounds.length);
+			for (Searched s : searched) {
+				if (discords.size() == discordsNum || s.distance2 == 0.0D)
+					break;
+				if (registry.get(s.position))
+					continue;
+				DiscordRecord discord = new DiscordRecord(s.position, Math.sqrt(s.distance2), s.word);
+				discord.setExact(s.distance2 >= unsearchedBound2);
+				discord.setBound(Math.sqrt(Math.max(s.distance2, unsearchedBound2)));
+				discords.add(discord);
+				registry.set(Math.max(0, s.position - windowSize), s.position + windowSize);
+			}
+			return discords;
+		}
+	}
+
+	/**
+	 * A candidate whose nearest neighbour was searched in full.
+	 */
+	private static final class Searched {
+		final int position;
+		final double distance2;
+		final String word;
+
+		/**
+		 * Constructor.
+		 * @param position	The candidate position.
+		 * @param distance2	The squared nearest neighbour distance.
+		 * @param word		The candidate's word.
+		 */
+		Searched(int position, double distance2, String word) {
+			this.position = position;
+			this.distance2 = distance2;
+			this.word = word;
+		}
+
+		/**
+		 * Tells if this candidate comes after another one, best first and then by position.
+		 * @param distance2	The other candidate's squared distance.
+		 * @param position	The other candidate's position.
+		 * @return true if it comes after.
+		 */
+		boolean isBelow(double distance2, int position) {
+			return this.distance2 < distance2 || (this.distance2 == distance2 && this.position > position);
+		}
+	}
+
+	/**
+	 * The nearest neighbour search of the candidates of one thread.
+	 */
+	private static final class Search {
+		final double[] series;
+		final int windowSize;
+		/* The window statistics, null for raw distances */
+		final double[] means;
+		final double[] invSigmas;
+		final int[] visitOrder;
+		/* The MINDIST buckets, null to visit the neighbours in random order */
+		final WordBuckets buckets;
+		/* The neighbour to try first for each position, null for none */
+		final int[] hints;
+		/* The discords found by all threads */
+		final TopDiscords top;
+		/* The occurrences of the current word already visited, cleared after each candidate */
+		final BitSet alreadyVisited;
+		/* The current candidate and the order its points are compared in */
+		final double[] currentCandidateSeq;
+		final int[] pointOrder;
+		final long[] keys;
+		/* The buckets in MINDIST order from the bucket they were sorted for */
+		final long[] bucketOrder;
+		int bucketOrderFor = -1;
+		/* The position of the current candidate's nearest neighbour so far */
+		int nearestNeighborPos;
+		/* The budget of the search, null for none */
+		final Budget budget;
+		/* The distance evaluations done, charged to the budget every CHARGE_INTERVAL */
+		long evaluations;
+		/* Whether the budget ran out during the current candidate's search */
+		boolean outOfBudget;
+		/* The largest squared nearest neighbour distance bound of the candidates left unsearched */
+		double unsearchedBound2;
+		/* The counters of this thread */
+		final SearchStatistics stats;
+
+		/**
+		 * Constructor.
+		 * @param space		The series we are looking for discord in.
+		 * @param top		The discords found by all threads.
+		 */
+		Search(SearchSpace space, TopDiscords top) {
+			this.series = space.series;
+			this.windowSize = space.windowSize;
+			this.means = space.means;
+			this.invSigmas = space.invSigmas;
+			this.visitOrder = space.visitOrder;
+			this.buckets = space.buckets;
+			this.hints = space.hints;
+			this.budget = space.budget;
+			this.top = top;
+			this.bucketOrder = (buckets == null) ? null : new long[buckets.size()];
+			this.alreadyVisited = new BitSet(series.length);
+			this.currentCandidateSeq = new double[windowSize];
+			this.pointOrder = new int[windowSize];
+			this.keys = new long[windowSize];
+			this.stats = new SearchStatistics(HotSAXNodeModel.HOTSAX_ENGINE, windowSize);
+		}
+
+		/**
+		 * Searches the nearest neighbour of a candidate, abandoning it as soon as a neighbour
+		 * closer than the threshold of the top discords is found.
+		 * @param currentPos	The candidate position.
+		 * @param currentEntry	The magic array entry of the candidate.
+		 * @throws Exception If error occurs.
+		 */
+		void candidate(int currentPos, MagicArrayEntry currentEntry) throws Exception {
+			String currentWord = currentEntry.getStr();
+			int[] occurrences = currentEntry.getPositions();
+
+			// a neighbour found for another candidate may be closer than the threshold already
+			if (top.isBelowThreshold(currentPos)) {
+				stats.pruned++;
+				return;
+			}
+			if (budget != null && budget.isExhausted()) {
+				unsearched(currentPos, occurrences);
+				return;
+			}
+			outOfBudget = false;
+
+			// all the candidates we are not going to try, the trivial matches overlapping the
+			// current subsequence are told by their distance to it
+			int markStart = currentPos - windowSize;
+			int markEnd = currentPos + windowSize;
+
+			// fix the current subsequence trace
+			load(currentPos);
 
-				// all the candidates we are not going to try
-				HashSet<Integer> alreadyVisited = new HashSet<Integer>(occurrences.size() + (markEnd - markStart));
+			// Begin the search, on squared distances...
+			double nearestNeighborDist = Double.MAX_VALUE;
+			nearestNeighborPos = -1;
+			boolean doRandomSearch = true;
 
-				for (int i = markStart; i < markEnd; i++)
-					alreadyVisited.add(i);
+			// the neighbour found for the window size one less is likely to be near still
+			int hint = (hints == null) ? -1 : hints[currentPos];
+			if (hint >= 0 && hint < visitOrder.length && (hint < markStart || hint >= markEnd)) {
+				alreadyVisited.set(hint);
+				stats.hintVisits++;
+				nearestNeighborDist = distance2(hint, nearestNeighborDist);
+				nearestNeighborPos = hint;
+				top.bound(hint, currentPos, nearestNeighborDist);
+				doRandomSearch = !(nearestNeighborDist < top.threshold2()) && !charge();
+			} else
+				hint = -1;
 
-				// fix the current subsequence trace
-				double[] currentCandidateSeq = tp.subseriesByCopy(series, currentPos, currentPos + windowSize);
+			// the number of occurrences visited, which are the ones marked
+			int visited = 0;
+			while (doRandomSearch && visited < occurrences.length) {
+				int nextOccurrence = occurrences[visited++];
+				// just in case there is an overlap
+				if (nextOccurrence >= markStart && nextOccurrence < markEnd)
+					continue;
+				alreadyVisited.set(nextOccurrence);
+				stats.occurrenceVisits++;
+
+				// get the subsequence and the distance, unless it is farther than the nearest neighbour
+				double dist = distance2(nextOccurrence, nearestNeighborDist);
 
-				// Begin the search...
-				double nearestNeighborDist = Double.MAX_VALUE;
-				boolean doRandomSearch = true;
+				// keep track of best so far distance
+				if (dist < nearestNeighborDist) {
+					nearestNeighborDist = dist;
+					nearestNeighborPos = nextOccurrence;
+					top.bound(nextOccurrence, currentPos, dist);
+				}
+				if (dist < top.threshold2()) {
+					doRandomSearch = false;
+					break;
+				}
+				if (charge()) {
+					doRandomSearch = false;
+					break;
+				}
+			}
 
-				for (Integer nextOccurrence : occurrences) {
-					// just in case there is an overlap
-					if (alreadyVisited.contains(nextOccurrence))
+			// check if we must continue with the nearest buckets
+			if (doRandomSearch && buckets != null) {
+				nearestNeighborDist = searchBuckets(currentPos, nearestNeighborDist);
+			}
+			// or with random neighbors
+			else if (doRandomSearch) {
+				// while there are unvisited locations
+				for (int randomPos : visitOrder) {
+					if ((randomPos >= markStart && randomPos < markEnd) || alreadyVisited.get(randomPos))
 						continue;
-					else
-						alreadyVisited.add(nextOccurrence);
 
-					// get the subsequence and the distance
-					double dist = distance(currentCandidateSeq, series, nextOccurrence, nextOccurrence + windowSize);
+					stats.randomVisits++;
+					double dist = distance2(randomPos, nearestNeighborDist);
 
-					// keep track of best so far distance
+					// keep track
 					if (dist < nearestNeighborDist) {
 						nearestNeighborDist = dist;
-						System.err.println("** current NN at " + nextOccurrence + ", distance: " + nearestNeighborDist
-								+ ", Pos" + currentPos);
+						nearestNeighborPos = randomPos;
+						top.bound(randomPos, currentPos, dist);
 					}
-					if (dist < bestSoFarDistance) {
-						doRandomSearch = false;
-						System.err.println("** abandoning the occurrences loop, distance " + dist
-								+ " is less than the best so far " + bestSoFarDistance);
+
+					// early abandoning of the search:
+					// the current word is not discord, we have seen better
+					if (dist < top.threshold2()) {
+						nearestNeighborDist = dist;
 						break;
 					}
-				}
+					if (charge())
+						break;
+				} // while inner loop
+			} // end of random search loop
+
+			// only the visited occurrences were marked, clearing them is cheaper than clearing the set
+			for (int k = 0; k < visited; k++)
+				alreadyVisited.clear(occurrences[k]);
+			if (hint >= 0)
+				alreadyVisited.clear(hint);
+			if (nearestNeighborPos >= 0)
+				top.bound(currentPos, nearestNeighborPos, nearestNeighborDist);
+
+			// a search cut short by the budget only bounds the candidate's distance
+			if (outOfBudget) {
+				unsearched(currentPos, occurrences);
+				return;
+			}
+
+			// an abandoned candidate is closer to its neighbour than the threshold, which only rises
+			if (nearestNeighborDist >= top.threshold2() && nearestNeighborDist < Double.MAX_VALUE)
+				top.offer(currentPos, nearestNeighborDist, currentWord);
+			else
+				stats.abandoned++;
+		}
 
-				// check if we must continue with random neighbors
-				if (doRandomSearch) {
-					System.err.println("Starting random search");
-					// init the visit array
-					int visitCounter = 0;
-					int cIndex = 0;
-					for (int i = 0; i < series.length - windowSize; i++)
-						if (!(alreadyVisited.contains(i))) {
-							visitArray[cIndex] = i;
-							cIndex++;
-						}
-					cIndex--;
-
-					// shuffle the visit array
-					Random rnd = new Random();
-					for (int i = cIndex; i > 0; i--) {
-						int index = rnd.nextInt(i + 1);
-						int a = visitArray[index];
-						visitArray[index] = visitArray[i];
-						visitArray[i] = a;
+		/**
+		 * Searches the neighbours of a candidate bucket by bucket, in increasing MINDIST from the
+		 * candidate's word. The search stops at the first bucket whose bound is not below the
+		 * nearest neighbour distance, or is abandoned as soon as a neighbour closer than the
+		 * threshold is found. The neighbours already visited must be marked.
+		 * @param currentPos			The candidate position.
+		 * @param nearestNeighborDist	The squared nearest neighbour distance among the occurrences.
+		 * @return the squared nearest neighbour distance, or the one it was abandoned on.
+		 */
+		double searchBuckets(int currentPos, double nearestNeighborDist) {
+			int own = buckets.getBucket(currentPos);
+			int count = bucketOrder.length;
+			// candidates of a word come one after another, so the order is mostly reused
+			if (own != bucketOrderFor) {
+				// the bound as float bits, which order as ints do, above the bucket
+				for (int b = 0; b < count; b++)
+					bucketOrder[b] = ((long) Float.floatToIntBits((float) buckets.lowerBound2(own, b)) << 32) | b;
+				Arrays.sort(bucketOrder);
+				bucketOrderFor = own;
+			}
+
+			int markStart = currentPos - windowSize;
+			int markEnd = currentPos + windowSize;
+			for (int k = 0; k < count; k++) {
+				// farther buckets can't hold a nearer neighbour, the float bound is rounded to nearest
+				double bound = Float.intBitsToFloat((int) (bucketOrder[k] >>> 32)) * (1.0D - 1.0E-6D);
+				if (bound >= nearestNeighborDist)
+					break;
+				int b = (int) bucketOrder[k];
+				for (int i = buckets.start(b); i < buckets.end(b); i++) {
+					int pos = buckets.getPosition(i);
+					if ((pos >= markStart && pos < markEnd) || alreadyVisited.get(pos))
+						continue;
+
+					stats.bucketVisits++;
+					double dist = distance2(pos, nearestNeighborDist);
+					if (dist < nearestNeighborDist) {
+						nearestNeighborDist = dist;
+						nearestNeighborPos = pos;
+						top.bound(pos, currentPos, dist);
 					}
 
-					// while there are unvisited locations
-					while (cIndex >= 0) {
-						int randomPos = visitArray[cIndex];
-						cIndex--;
-
-						double dist = distance(currentCandidateSeq, series, randomPos, randomPos + windowSize);
-
-						// keep track
-						if (dist < nearestNeighborDist) {
-							System.err.println("** current NN at " + +randomPos + ", distance: " + dist);
-							nearestNeighborDist = dist;
-						}
-
-						// early abandoning of the search:
-						// the current word is not discord, we have seen better
-						if (dist < bestSoFarDistance) {
-							nearestNeighborDist = dist;
-							System.err.println(" ** abandoning random visits loop, seen distance " + nearestNeighborDist
-									+ " at iteration " + visitCounter);
-							break;
-						}
-						visitCounter = visitCounter + 1;
-					} // while inner loop
-				} // end of random search loop
-
-				if (nearestNeighborDist > bestSoFarDistance && nearestNeighborDist < Double.MAX_VALUE) {
-					System.err.println("discord updated: pos " + currentPos + ", dist " + bestSoFarDistance);
-					bestSoFarDistance = nearestNeighborDist;
-					bestSoFarPosition = currentPos;
-					bestSoFarWord = currentWord;
+					// the current word is not discord, we have seen better
+					if (dist < top.threshold2())
+						return dist;
+					// out of budget, dist may be a partial sum abandoned above the nearest neighbour
+					if (charge())
+						return Math.min(dist, nearestNeighborDist);
 				}
-				System.err.println("Best distance: " + bestSoFarDistance + " for a string " + bestSoFarWord + " at "
-						+ bestSoFarPosition);
-			} // outer loop inner part
-		} // outer loop
-		return new DiscordRecord(bestSoFarPosition, bestSoFarDistance, bestSoFarWord);
-	}
+			}
+			return nearestNeighborDist;
+		}
 
-	/**
-	 * Calculates the Euclidean distance between two points. Don't use this
-	 * unless you need that.
-	 * 
-	 * @param subseries	The first point.
-	 * @param series 	The second point.
-	 * @param from 		the initial index of the range to be copied, inclusive
-	 * @param to 		the final index of the range to be copied, exclusive. (This index may lie outside the array.)
-	 * @return The Euclidean distance.
-	 */
-	private static double distance(double[] subseries, double[] series, int from, int to) throws Exception {
-		Double sum = 0D;
-		for (int i = from; i < to; i++) {
-			double tmp = subseries[i - from] - series[i];
-			sum = sum + tmp * tmp;
+		/**
+		 * Counts a distance evaluation, charging the budget every CHARGE_INTERVAL of them.
+		 * @return true if the budget ran out, the current search is then cut short.
+		 */
+		boolean charge() {
+			if (budget == null)
+				return false;
+			if ((++evaluations & (Budget.CHARGE_INTERVAL - 1)) == 0)
+				outOfBudget = budget.charge(Budget.CHARGE_INTERVAL);
+			else
+				outOfBudget = budget.isExhausted();
+			return outOfBudget;
+		}
+
+		/**
+		 * Records a candidate the budget left unsearched. Unless its nearest neighbour is known
+		 * to be closer than the threshold, it could be a discord as far as its bound. A candidate
+		 * with no bound yet is given one by a single distance, to the neighbour found for the
+		 * window size one less or else to an occurrence of its word, which are likely to be near,
+		 * or else to any subsequence which is not a trivial match.
+		 * @param position		The candidate position.
+		 * @param occurrences	The positions of the candidate's word.
+		 */
+		void unsearched(int position, int[] occurrences) {
+			if (top.upperBounds[position] == Float.POSITIVE_INFINITY) {
+				int markStart = position - windowSize;
+				int markEnd = position + windowSize;
+				int neighbour = (hints == null) ? -1 : hints[position];
+				if (neighbour >= visitOrder.length || (neighbour >= markStart && neighbour < markEnd))
+					neighbour = -1;
+				for (int k = 0; neighbour < 0 && k < occurrences.length; k++)
+					if (occurrences[k] < markStart || occurrences[k] >= markEnd)
+						neighbour = occurrences[k];
+				for (int k = 0; neighbour < 0 && k < visitOrder.length; k++)
+					if (visitOrder[k] < markStart || visitOrder[k] >= markEnd)
+						neighbour = visitOrder[k];
+				// a subsequence with no neighbour but its trivial matches is no discord
+				if (neighbour < 0)
+					return;
+				load(position);
+				top.bound(position, neighbour, distance2(neighbour, Double.POSITIVE_INFINITY));
+			}
+			double bound2 = top.upperBounds[position];
+			if (!(bound2 < top.threshold2()))
+				unsearchedBound2 = Math.max(unsearchedBound2, bound2);
+		}
+
+		/**
+		 * Makes a subsequence the current candidate, Z-normalised if need be, and orders its points.
+		 * @param position The position of the subsequence.
+		 */
+		void load(int position) {
+			if (means == null)
+				System.arraycopy(series, position, currentCandidateSeq, 0, windowSize);
+			else
+				for (int k = 0; k < windowSize; k++)
+					currentCandidateSeq[k] = (series[position + k] - means[position]) * invSigmas[position];
+			orderByMagnitude();
+		}
+
+		/**
+		 * Sorts the points of the current candidate by their distance to its mean, farthest first.
+		 * Those points tend to add the most to the distance to a neighbour, so comparing them first
+		 * abandons the neighbours sooner.
+		 */
+		void orderByMagnitude() {
+			double mean = TSProcessor.mean(currentCandidateSeq);
+			// the magnitude as float bits, which order as ints do, above the point index
+			for (int k = 0; k < windowSize; k++)
+				keys[k] = ((long) Float.floatToIntBits((float) Math.abs(currentCandidateSeq[k] - mean)) << 32) | k;
+			Arrays.sort(keys);
+			for (int k = 0; k < windowSize; k++)
+				pointOrder[k] = (int) keys[windowSize - 1 - k];
+		}
+
+		/**
+		 * Calculates the squared Euclidean distance between the current candidate and the
+		 * subsequence at a position, abandoning the sum as soon as it reaches a cut-off. The
+		 * subsequence is Z-normalised on the fly if the candidate is. The points are compared
+		 * in the candidate's order, so the ones likely to differ most are summed first.
+		 * @param from 		The position of the subsequence.
+		 * @param cutoff2	The squared cut-off.
+		 * @return The squared Euclidean distance, or a partial sum of at least the cut-off if it was abandoned.
+		 */
+		double distance2(int from, double cutoff2) {
+			double mean = (means == null) ? 0.0D : means[from];
+			double invSigma = (means == null) ? 1.0D : invSigmas[from];
+			double sum = 0.0D;
+			stats.distances++;
+			for (int k : pointOrder) {
+				double tmp = currentCandidateSeq[k] - (series[from + k] - mean) * invSigma;
+				sum += tmp * tmp;
+				if (sum >= cutoff2) {
+					stats.abandonedDistances++;
+					return sum;
+				}
+			}
+			return sum;
 		}
-		return Math.sqrt(sum);
 	}
 }
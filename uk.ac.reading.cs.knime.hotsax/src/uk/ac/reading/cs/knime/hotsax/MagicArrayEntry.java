@@ -4,12 +4,23 @@ public class MagicArrayEntry implements Comparable<MagicArrayEntry> {
 
   protected String word;
   protected int freq;
+  protected int[] positions;
 
   public MagicArrayEntry(String payload, int frequency) {
     this.word = payload;
     this.freq = frequency;
   }
 
+  /**
+   * Constructor for an entry holding the positions of its word, its frequency is their number.
+   * @param payload the word.
+   * @param positions the positions of the word in the series, in ascending order.
+   */
+  public MagicArrayEntry(String payload, int[] positions) {
+    this(payload, positions.length);
+    this.positions = positions;
+  }
+
   @Override
   public int compareTo(MagicArrayEntry arg0) {
     if (arg0 == null) {
@@ -28,6 +39,10 @@ public class MagicArrayEntry implements Comparable<MagicArrayEntry> {
     return this.word;
   }
 
+  public int[] getPositions() {
+    return this.positions;
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
@@ -0,0 +1,501 @@
+package uk.ac.reading.cs.knime.hotsax;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * The matrix profile of a time series: the distance of every subsequence to its nearest
+ * neighbour, and the position of that neighbour. Subsequences closer than a window to each other
+ * are trivial matches and never neighbours, as in the HOTSAX search.
+ *
+ * Distances are computed along the diagonals of the distance matrix, each dot product updated
+ * in O(1) from the previous one on its diagonal, so the exact profile takes O(n^2) time (STOMP).
+ * The diagonals are independent and spread over threads. SCRIMP++ seeds the profile with a
+ * PreSCRIMP pass and then visits the diagonals in random order, so when it is stopped at a time
+ * budget the profile is a converging approximation.
+ *
+ * @author Ryan Faulkner
+ */
+public final class MatrixProfile {
+	/** The number of O(1) updates after which a dot product or window statistic is recomputed. */
+	private static final int REFRESH = 1 << 12;
+
+	private final double[] series;
+	private final int windowSize;
+	private final int size;
+	private final boolean znorm;
+	private final double[] means;
+	/* The inverse standard deviations of the windows, 0 for the windows which are not normalised */
+	private final double[] invSigmas;
+	private final double[] sumSquares;
+	/* The squared nearest neighbour distances */
+	private final double[] profile;
+	private final int[] index;
+
+	/**
+	 * Constructor.
+	 * @param series		The time series.
+	 * @param windowSize	The subsequence length.
+	 * @param znorm			If true the subsequences are Z-normalised before they are compared, as
+	 * 						HOTSAX does, the ones deviating less than the threshold to zeros.
+	 * @param nThreshold	The normalisation threshold value.
+	 * @throws SAXException if the window size doesn't fit the series.
+	 */
+	public MatrixProfile(double[] series, int windowSize, boolean znorm, double nThreshold) throws SAXException {
+		if (windowSize < 1 || windowSize > series.length)
+			throw new SAXException("The window size must be between 1 and the series length.");
+		// distances don't change when the series is shifted, centring it keeps the dot products small
+		double mean = TSProcessor.mean(series);
+		this.series = new double[series.length];
+		for (int i = 0; i < series.length; i++)
+			this.series[i] = series[i] - mean;
+		this.windowSize = windowSize;
+		this.size = series.length - windowSize + 1;
+		this.znorm = znorm;
+		this.means = new double[size];
+		this.invSigmas = new double[size];
+		this.sumSquares = new double[size];
+		this.profile = new double[size];
+		this.index = new int[size];
+		Arrays.fill(profile, Double.POSITIVE_INFINITY);
+		Arrays.fill(index, -1);
+		if (znorm)
+			HotSAXProcessor.windowStatistics(this.series, windowSize, nThreshold, means, invSigmas);
+		else
+			computeSumSquares();
+	}
+
+	/**
+	 * Computes the exact matrix profile (STOMP).
+	 * @param threads	The number of threads.
+	 * @param exec		The monitor to report progress to.
+	 * @throws SAXException if the computation failed.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 */
+	public void stomp(int threads, ExecutionMonitor exec) throws SAXException, CanceledExecutionException {
+		int[] diagonals = new int[Math.max(0, size - windowSize)];
+		for (int d = 0; d < diagonals.length; d++)
+			diagonals[d] = windowSize + d;
+		Worker[] workers = createWorkers(threads);
+		execute(workers, diagonals.length, (w, t) -> w.diagonal(diagonals[t]), Long.MAX_VALUE, exec);
+		merge(workers);
+	}
+
+	/**
+	 * Computes the matrix profile with SCRIMP++, at most until a time budget is spent.
+	 * @param threads	The number of threads.
+	 * @param budget	The time budget in milliseconds, 0 for none.
+	 * @param seed		The seed of the random order of the diagonals.
+	 * @param exec		The monitor to report progress to.
+	 * @return true if all diagonals were visited, the profile is then exact.
+	 * @throws SAXException if the computation failed.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 */
+	public boolean scrimp(int threads, long budget, long seed, ExecutionMonitor exec)
+			throws SAXException, CanceledExecutionException {
+		long deadline = (budget > 0) ? System.currentTimeMillis() + budget : Long.MAX_VALUE;
+		Worker[] workers = createWorkers(threads);
+
+		// PreSCRIMP, the neighbours of sampled subsequences are followed along their diagonal
+		int step = Math.max(1, windowSize / 4);
+		int samples = (size + step - 1) / step;
+		execute(workers, samples, (w, t) -> w.preScrimp(t * step, step), deadline, exec);
+
+		int[] diagonals = new int[Math.max(0, size - windowSize)];
+		for (int d = 0; d < diagonals.length; d++)
+			diagonals[d] = windowSize + d;
+		Random random = new Random(seed);
+		for (int d = diagonals.length - 1; d > 0; d--) {
+			int r = random.nextInt(d + 1);
+			int tmp = diagonals[r];
+			diagonals[r] = diagonals[d];
+			diagonals[d] = tmp;
+		}
+		boolean complete = execute(workers, diagonals.length, (w, t) -> w.diagonal(diagonals[t]), deadline, exec);
+		merge(workers);
+		return complete;
+	}
+
+	/**
+	 * Get the number of subsequences.
+	 * @return the length of the profile.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the distance of a subsequence to its nearest neighbour.
+	 * @param i The subsequence position.
+	 * @return the distance, infinite if the subsequence has no neighbour.
+	 */
+	public double getDistance(int i) {
+		return Math.sqrt(profile[i]);
+	}
+
+	/**
+	 * Get the nearest neighbour of a subsequence.
+	 * @param i The subsequence position.
+	 * @return the neighbour position, -1 if the subsequence has no neighbour.
+	 */
+	public int getNeighbour(int i) {
+		return index[i];
+	}
+
+	/**
+	 * Finds the top discords, the subsequences farthest from their nearest neighbour. A window
+	 * around each discord is excluded from the following ones, as by the HOTSAX search.
+	 * @param k The number of discords.
+	 * @return the discords, the neighbour position as rule id.
+	 * @throws SAXException if a distance can't be computed.
+	 */
+	public DiscordRecords getDiscords(int k) throws SAXException {
+		DiscordRecords discords = new DiscordRecords();
+		boolean[] excluded = new boolean[size];
+		while (discords.getSize() < k) {
+			int best = -1;
+			for (int i = 0; i < size; i++)
+				if (!excluded[i] && index[i] >= 0 && (best < 0 || profile[i] > profile[best]))
+					best = i;
+			if (best < 0 || profile[best] == 0.0D)
+				break;
+			discords.add(createRecord(best, "Discord"));
+			exclude(excluded, best);
+		}
+		return discords;
+	}
+
+	/**
+	 * Finds the top motifs, the pairs of subsequences closest to each other. A window around
+	 * both subsequences of a motif is excluded from the following ones.
+	 * @param k The number of motifs.
+	 * @return the motifs, the position of the pair's second subsequence as rule id.
+	 * @throws SAXException if a distance can't be computed.
+	 */
+	public DiscordRecords getMotifs(int k) throws SAXException {
+		DiscordRecords motifs = new DiscordRecords();
+		boolean[] excluded = new boolean[size];
+		while (motifs.getSize() < k) {
+			int best = -1;
+			for (int i = 0; i < size; i++)
+				if (!excluded[i] && index[i] >= 0 && !excluded[index[i]] && (best < 0 || profile[i] < profile[best]))
+					best = i;
+			if (best < 0)
+				break;
+			motifs.add(createRecord(best, "Motif"));
+			exclude(excluded, best);
+			exclude(excluded, index[best]);
+		}
+		return motifs;
+	}
+
+	/**
+	 * Creates the record of a subsequence. The distance is computed again directly,
+	 * free of the rounding of the dot product updates.
+	 * @param i			The subsequence position.
+	 * @param payload	The kind of record.
+	 * @return the record.
+	 * @throws SAXException if the distance can't be computed.
+	 */
+	private DiscordRecord createRecord(int i, String payload) throws SAXException {
+		double distance;
+		try {
+			distance = new EuclideanDistance().distance(subsequence(i), subsequence(index[i]));
+		} catch (Exception e) {
+			throw new SAXException("The nearest neighbour distance can't be computed.", e);
+		}
+		DiscordRecord record = new DiscordRecord(i, distance, payload);
+		record.setLength(windowSize);
+		record.setRuleId(index[i]);
+		return record;
+	}
+
+	/**
+	 * Get a subsequence as it is compared.
+	 * @param i The subsequence position.
+	 * @return the subsequence, Z-normalised if the distances are.
+	 */
+	private double[] subsequence(int i) {
+		double[] sub = Arrays.copyOfRange(series, i, i + windowSize);
+		if (znorm)
+			for (int k = 0; k < windowSize; k++)
+				sub[k] = (sub[k] - means[i]) * invSigmas[i];
+		return sub;
+	}
+
+	/**
+	 * Excludes the subsequences overlapping a window around a position.
+	 * @param excluded	The exclusion flags.
+	 * @param pos		The position.
+	 */
+	private void exclude(boolean[] excluded, int pos) {
+		int markEnd = Math.min(size, pos + windowSize);
+		for (int i = Math.max(0, pos - windowSize); i < markEnd; i++)
+			excluded[i] = true;
+	}
+
+	/**
+	 * Computes the sum of squares of every window with running sums, recomputed regularly so
+	 * the rounding errors don't build up.
+	 */
+	private void computeSumSquares() {
+		double squares = 0;
+		for (int i = 0; i < size; i++) {
+			if (i % REFRESH == 0) {
+				squares = 0;
+				for (int k = i; k < i + windowSize; k++)
+					squares += series[k] * series[k];
+			} else {
+				double in = series[i + windowSize - 1];
+				double out = series[i - 1];
+				squares += in * in - out * out;
+			}
+			sumSquares[i] = squares;
+		}
+	}
+
+	/**
+	 * Get the squared distance of two subsequences from their dot product.
+	 * @param i		The first subsequence position.
+	 * @param j		The second subsequence position.
+	 * @param qt	The dot product of the subsequences.
+	 * @return the squared distance.
+	 */
+	private double distance2(int i, int j, double qt) {
+		double d2;
+		if (!znorm)
+			d2 = sumSquares[i] + sumSquares[j] - 2.0D * qt;
+		else if (invSigmas[i] == 0.0D || invSigmas[j] == 0.0D)
+			// a subsequence which is not normalised is zeros, a normalised one is sqrt(w - 1) from zero
+			return (invSigmas[i] == invSigmas[j]) ? 0.0D : windowSize - 1;
+		else
+			d2 = 2.0D * (windowSize - 1) - 2.0D * (qt - windowSize * means[i] * means[j]) * invSigmas[i] * invSigmas[j];
+		return (d2 > 0.0D) ? d2 : 0.0D;
+	}
+
+	/**
+	 * Computes the dot product of two subsequences.
+	 * @param i		The first subsequence position.
+	 * @param j		The second subsequence position.
+	 * @return the dot product.
+	 */
+	private double dot(int i, int j) {
+		double qt = 0.0D;
+		for (int k = 0; k < windowSize; k++)
+			qt += series[i + k] * series[j + k];
+		return qt;
+	}
+
+	/**
+	 * Creates the workers of a computation.
+	 * @param threads The number of threads.
+	 * @return one worker per thread.
+	 */
+	private Worker[] createWorkers(int threads) {
+		Worker[] workers = new Worker[Math.max(1, threads)];
+		for (int w = 0; w < workers.length; w++)
+			workers[w] = new Worker();
+		return workers;
+	}
+
+	/**
+	 * Merges the profiles of the workers into the matrix profile. Ties go to the nearest
+	 * neighbour with the lowest position, so the profile doesn't depend on the threads.
+	 * @param workers The workers.
+	 */
+	private void merge(Worker[] workers) {
+		for (Worker w : workers)
+			for (int i = 0; i < size; i++)
+				if (w.index[i] >= 0 && (w.profile[i] < profile[i] || (w.profile[i] == profile[i] && w.index[i] < index[i]))) {
+					profile[i] = w.profile[i];
+					index[i] = w.index[i];
+				}
+	}
+
+	/**
+	 * Runs tasks on the workers, each worker taking the next task until all are done or the
+	 * deadline has passed.
+	 * @param workers	The workers, one per thread.
+	 * @param tasks		The number of tasks.
+	 * @param task		The task.
+	 * @param deadline	The time after which no more tasks are started.
+	 * @param exec		The monitor to report progress to.
+	 * @return true if all tasks were run.
+	 * @throws SAXException if a task failed.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 */
+	private static boolean execute(Worker[] workers, int tasks, Task task, long deadline, ExecutionMonitor exec)
+			throws SAXException, CanceledExecutionException {
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger done = new AtomicInteger();
+		if (workers.length == 1) {
+			run(workers[0], tasks, task, deadline, next, done, exec);
+			return done.get() == tasks;
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(workers.length);
+		try {
+			ArrayList<ForkJoinTask<Void>> futures = new ArrayList<ForkJoinTask<Void>>();
+			for (Worker w : workers)
+				futures.add(pool.submit(() -> {
+					run(w, tasks, task, deadline, next, done, exec);
+					return null;
+				}));
+			for (ForkJoinTask<Void> f : futures)
+				await(f);
+			return done.get() == tasks;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * The loop of a worker.
+	 * @param worker	The worker.
+	 * @param tasks		The number of tasks.
+	 * @param task		The task.
+	 * @param deadline	The time after which no more tasks are started.
+	 * @param next		The next task to run.
+	 * @param done		The number of tasks run.
+	 * @param exec		The monitor to report progress to.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 */
+	private static void run(Worker worker, int tasks, Task task, long deadline, AtomicInteger next, AtomicInteger done,
+			ExecutionMonitor exec) throws CanceledExecutionException {
+		int t;
+		while ((t = next.getAndIncrement()) < tasks) {
+			if (System.currentTimeMillis() >= deadline)
+				return;
+			exec.checkCanceled();
+			task.run(worker, t);
+			exec.setProgress((double) done.incrementAndGet() / tasks);
+		}
+	}
+
+	/**
+	 * Waits for a worker to finish.
+	 * @param future The worker's future.
+	 * @throws SAXException if the worker failed or was interrupted.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 */
+	private static void await(ForkJoinTask<Void> future) throws SAXException, CanceledExecutionException {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SAXException("The matrix profile computation was interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CanceledExecutionException)
+				throw (CanceledExecutionException) e.getCause();
+			throw new SAXException("The matrix profile computation failed.", e.getCause());
+		}
+	}
+
+	/**
+	 * A task of a worker.
+	 */
+	private interface Task {
+		/**
+		 * Runs the task.
+		 * @param worker	The worker.
+		 * @param t			The task number.
+		 * @throws CanceledExecutionException if the execution was cancelled.
+		 */
+		void run(Worker worker, int t) throws CanceledExecutionException;
+	}
+
+	/**
+	 * Computes distances into a profile of its own, merged once all workers are done.
+	 */
+	private final class Worker {
+		final double[] profile;
+		final int[] index;
+
+		/**
+		 * Constructor.
+		 */
+		Worker() {
+			this.profile = new double[size];
+			this.index = new int[size];
+			Arrays.fill(profile, Double.POSITIVE_INFINITY);
+			Arrays.fill(index, -1);
+		}
+
+		/**
+		 * Computes the distances of a diagonal, the pairs of subsequences k apart.
+		 * @param k The diagonal.
+		 */
+		void diagonal(int k) {
+			double qt = 0.0D;
+			for (int i = 0, j = k; j < size; i++, j++) {
+				if (i % REFRESH == 0)
+					qt = dot(i, j);
+				else
+					qt += series[i + windowSize - 1] * series[j + windowSize - 1] - series[i - 1] * series[j - 1];
+				pair(i, j, distance2(i, j, qt));
+			}
+		}
+
+		/**
+		 * Computes the distance profile of a subsequence, and follows the diagonal of its nearest
+		 * neighbour over the subsequences up to the next sample.
+		 * @param i		The sampled subsequence.
+		 * @param step	The sampling step.
+		 * @throws CanceledExecutionException if the execution was cancelled.
+		 */
+		void preScrimp(int i, int step) throws CanceledExecutionException {
+			// cancellation is checked between the tasks
+			double[] qts = MASS.slidingDotProducts(Arrays.copyOfRange(series, i, i + windowSize), series, null);
+			int best = -1;
+			double bestDistance = Double.POSITIVE_INFINITY;
+			for (int j = 0; j < size; j++) {
+				if (Math.abs(i - j) < windowSize)
+					continue;
+				double d2 = distance2(i, j, qts[j]);
+				pair(i, j, d2);
+				if (d2 < bestDistance) {
+					bestDistance = d2;
+					best = j;
+				}
+			}
+			if (best < 0)
+				return;
+
+			double qt = qts[best];
+			for (int a = i + 1, b = best + 1; a < i + step && a < size && b < size; a++, b++) {
+				qt += series[a + windowSize - 1] * series[b + windowSize - 1] - series[a - 1] * series[b - 1];
+				pair(a, b, distance2(a, b, qt));
+			}
+			qt = qts[best];
+			for (int a = i - 1, b = best - 1; a > i - step && a >= 0 && b >= 0; a--, b--) {
+				qt += series[a] * series[b] - series[a + windowSize] * series[b + windowSize];
+				pair(a, b, distance2(a, b, qt));
+			}
+		}
+
+		/**
+		 * Updates the profile with the distance of a pair of subsequences.
+		 * @param i		The first subsequence position.
+		 * @param j		The second subsequence position.
+		 * @param d2	The squared distance.
+		 */
+		private void pair(int i, int j, double d2) {
+			if (d2 < profile[i] || (d2 == profile[i] && j < index[i])) {
+				profile[i] = d2;
+				index[i] = j;
+			}
+			if (d2 < profile[j] || (d2 == profile[j] && i < index[j])) {
+				profile[j] = d2;
+				index[j] = i;
+			}
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package uk.ac.reading.cs.knime.hotsax;
+
+import org.knime.core.data.DoubleValue;
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentColumnNameSelection;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelDouble;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+
+/**
+ * <code>NodeDialog</code> for the "Matrix Profile" Node. Finds the exact time
+ * series discords and motifs from the matrix profile.
+ *
+ * This node dialog derives from {@link DefaultNodeSettingsPane} which allows
+ * creation of a simple dialog with standard components. If you need a more
+ * complex dialog please derive directly from
+ * {@link org.knime.core.node.NodeDialogPane}.
+ * 
+ * @author Ryan Faulkner
+ */
+public class MatrixProfileNodeDialog extends DefaultNodeSettingsPane {
+	/**
+	 * New pane for configuring the Matrix Profile node dialog.
+	 */
+	@SuppressWarnings("unchecked")
+	protected MatrixProfileNodeDialog() {
+		super();
+		createNewGroup("Time Series");
+		addDialogComponent(new DialogComponentColumnNameSelection(new SettingsModelString(MatrixProfileNodeModel.TS_DATA, ""),
+				"Select a column", 0, true, DoubleValue.class));
+
+		createNewGroup("Matrix Profile");
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelIntegerBounded(MatrixProfileNodeModel.WINDOW, 30, 1, Integer.MAX_VALUE),
+				"Subsequence Length:", 1));
+		addDialogComponent(new DialogComponentBoolean(new SettingsModelBoolean(MatrixProfileNodeModel.ZNORM, true),
+				"Z-Normalise Subsequences"));
+		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(MatrixProfileNodeModel.THRESH, 0.01),
+				"Normalisation Threshold:", 0.01));
+		addDialogComponent(new DialogComponentStringSelection(
+				new SettingsModelString(MatrixProfileNodeModel.ALGORITHM, MatrixProfileNodeModel.STOMP),
+				"Algorithm:", MatrixProfileNodeModel.STOMP, MatrixProfileNodeModel.SCRIMP));
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelIntegerBounded(MatrixProfileNodeModel.BUDGET, 0, 0, Integer.MAX_VALUE),
+				"SCRIMP++ Time Budget (s, 0 for none):", 1));
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelIntegerBounded(MatrixProfileNodeModel.THREADS, MatrixProfileNodeModel.DEFAULT_THREADS, 1, 256),
+				"Threads:", 1));
+
+		createNewGroup("Results");
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelIntegerBounded(MatrixProfileNodeModel.DISCORDS, 1, 0, Integer.MAX_VALUE),
+				"No. of Discords:", 1));
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelIntegerBounded(MatrixProfileNodeModel.MOTIFS, 1, 0, Integer.MAX_VALUE),
+				"No. of Motifs:", 1));
+	}
+}
@@ -0,0 +1,54 @@
+package uk.ac.reading.cs.knime.hotsax;
+
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+
+/**
+ * <code>NodeFactory</code> for the "Matrix Profile" Node.
+ * Finds the exact time series discords and motifs from the matrix profile.
+ *
+ * @author Ryan Faulkner
+ */
+public class MatrixProfileNodeFactory extends NodeFactory<MatrixProfileNodeModel> {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MatrixProfileNodeModel createNodeModel() {
+        return new MatrixProfileNodeModel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNrNodeViews() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeView<MatrixProfileNodeModel> createNodeView(final int viewIndex,
+            final MatrixProfileNodeModel nodeModel) {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasDialog() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeDialogPane createNodeDialogPane() {
+        return new MatrixProfileNodeDialog();
+    }
+}
@@ -0,0 +1,187 @@
+package uk.ac.reading.cs.knime.hotsax;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelDouble;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+
+/**
+ * This is the model implementation of the Matrix Profile node.
+ * Finds the exact time series discords and motifs from the matrix profile.
+ * @author Ryan Faulkner
+ */
+public class MatrixProfileNodeModel extends NodeModel {
+	SAXParameters params;
+
+	/** The exact algorithm. */
+	static final String STOMP = "STOMP";
+	/** The anytime algorithm. */
+	static final String SCRIMP = "SCRIMP++";
+	/** The seed of the SCRIMP++ diagonal order. */
+	static final long SEED = 0L;
+
+	/** the settings key which is used to retrieve and
+		store the settings (from the dialog or from a settings file)
+		(package visibility to be usable from the dialog). */
+	static final String TS_DATA = "ts.col.name";
+	static final String WINDOW = "sax.window.name";
+	static final String DISCORDS = "hotsax.discords.name";
+	static final String MOTIFS = "mp.motifs.name";
+	static final String ALGORITHM = "mp.algorithm.name";
+	static final String BUDGET = "mp.budget.name";
+	static final String THREADS = "mp.threads.name";
+	static final String ZNORM = "mp.znorm.name";
+	static final String THRESH = "sax.thresh.name";
+
+	/** The default number of threads, one per processor, within the bounds of the setting. */
+	static final int DEFAULT_THREADS = Math.min(256, Runtime.getRuntime().availableProcessors());
+
+	private final SettingsModelString colname = new SettingsModelString(TS_DATA, null);
+	private final SettingsModelIntegerBounded window_sz = new SettingsModelIntegerBounded(WINDOW, 30, 1, Integer.MAX_VALUE);
+	private final SettingsModelIntegerBounded discords = new SettingsModelIntegerBounded(DISCORDS, 1, 0, Integer.MAX_VALUE);
+	private final SettingsModelIntegerBounded motifs = new SettingsModelIntegerBounded(MOTIFS, 1, 0, Integer.MAX_VALUE);
+	private final SettingsModelString algorithm = new SettingsModelString(ALGORITHM, STOMP);
+	private final SettingsModelIntegerBounded budget = new SettingsModelIntegerBounded(BUDGET, 0, 0, Integer.MAX_VALUE);
+	private final SettingsModelIntegerBounded threads = new SettingsModelIntegerBounded(THREADS, DEFAULT_THREADS, 1, 256);
+	private final SettingsModelBoolean znorm = new SettingsModelBoolean(ZNORM, true);
+	private final SettingsModelDouble threshold = new SettingsModelDouble(THRESH, 0.01);
+
+	/**
+	 * Constructor for the node model.
+	 */
+	protected MatrixProfileNodeModel() {
+		// Input port:	Time series data
+		// Output port:	Discord and motif records
+		super(1, 1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected BufferedDataTable[] execute(final BufferedDataTable[] inData, final ExecutionContext exec) throws Exception {
+		params = new SAXParameters();
+		params.COLNAME = colname.getStringValue();
+		params.SAX_WINDOW_SIZE = window_sz.getIntValue();
+		params.DISCORDS = discords.getIntValue();
+		params.MOTIFS = motifs.getIntValue();
+		params.MP_ALGORITHM = algorithm.getStringValue();
+		params.MP_BUDGET = budget.getIntValue();
+		params.MP_THREADS = threads.getIntValue();
+		params.MP_ZNORM = znorm.getBooleanValue();
+		params.SAX_NORM_THRESHOLD = threshold.getDoubleValue();
+
+		double[] ts = TSProcessor.readColumn(inData, params.COLNAME, exec.createSubProgress(0.1));
+		MatrixProfile mp = new MatrixProfile(ts, params.SAX_WINDOW_SIZE, params.MP_ZNORM, params.SAX_NORM_THRESHOLD);
+		ExecutionMonitor profileExec = exec.createSubProgress(0.9);
+		if (SCRIMP.equals(params.MP_ALGORITHM)) {
+			if (!mp.scrimp(params.MP_THREADS, params.MP_BUDGET * 1000L, SEED, profileExec))
+				setWarningMessage("The time budget was spent before the matrix profile converged, the results are approximate.");
+		} else
+			mp.stomp(params.MP_THREADS, profileExec);
+
+		BufferedDataContainer container = exec.createDataContainer(SAXTable.createDataTableSpec());
+		int row_count = 0;
+		for (DiscordRecord record : mp.getDiscords(params.DISCORDS))
+			container.addRowToTable(SAXTable.createRow(row_count++, record));
+		for (DiscordRecord record : mp.getMotifs(params.MOTIFS))
+			container.addRowToTable(SAXTable.createRow(row_count++, record));
+		container.close();
+		return new BufferedDataTable[]{container.getTable()};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void reset() {}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected DataTableSpec[] configure(final DataTableSpec[] inSpecs) throws InvalidSettingsException {
+		if (colname.getStringValue() == null || inSpecs[0].findColumnIndex(colname.getStringValue()) < 0)
+			throw new InvalidSettingsException("Select the time series column.");
+		return new DataTableSpec[]{SAXTable.createDataTableSpec()};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		this.colname.saveSettingsTo(settings);
+		this.window_sz.saveSettingsTo(settings);
+		this.discords.saveSettingsTo(settings);
+		this.motifs.saveSettingsTo(settings);
+		this.algorithm.saveSettingsTo(settings);
+		this.budget.saveSettingsTo(settings);
+		this.threads.saveSettingsTo(settings);
+		this.znorm.saveSettingsTo(settings);
+		this.threshold.saveSettingsTo(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		this.colname.loadSettingsFrom(settings);
+		this.window_sz.loadSettingsFrom(settings);
+		this.discords.loadSettingsFrom(settings);
+		this.motifs.loadSettingsFrom(settings);
+		this.algorithm.loadSettingsFrom(settings);
+		this.budget.loadSettingsFrom(settings);
+		this.threads.loadSettingsFrom(settings);
+		this.znorm.loadSettingsFrom(settings);
+		if (settings.containsKey(THRESH))
+			this.threshold.loadSettingsFrom(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		SettingsModelString alg = algorithm.createCloneWithValidatedValue(settings);
+		if (!STOMP.equals(alg.getStringValue()) && !SCRIMP.equals(alg.getStringValue()))
+			throw new InvalidSettingsException("Invalid matrix profile algorithm");
+
+		this.colname.validateSettings(settings);
+		this.window_sz.validateSettings(settings);
+		this.discords.validateSettings(settings);
+		this.motifs.validateSettings(settings);
+		this.algorithm.validateSettings(settings);
+		this.budget.validateSettings(settings);
+		this.threads.validateSettings(settings);
+		this.znorm.validateSettings(settings);
+		if (settings.containsKey(THRESH))
+			this.threshold.validateSettings(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadInternals(final File internDir, final ExecutionMonitor exec) throws IOException, CanceledExecutionException {}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveInternals(final File internDir, final ExecutionMonitor exec) throws IOException, CanceledExecutionException {}
+}
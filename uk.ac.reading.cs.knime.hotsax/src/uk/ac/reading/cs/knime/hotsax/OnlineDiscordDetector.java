@@ -0,0 +1,228 @@
+package uk.ac.reading.cs.knime.hotsax;
+
+/**
+ * Scores the subsequences of a time series as its values arrive. Every value completes a
+ * window, whose score is its distance to the nearest window of the horizon before it, windows
+ * closer than their length being trivial matches. A window far from everything seen recently
+ * is a discord.
+ *
+ * The dot products of the newest window with the windows of the horizon are kept by lag. The
+ * lag of two windows doesn't change as both slide, so each value updates a product with the
+ * value entering and the one leaving, in O(horizon) time rather than O(horizon x window), and
+ * the window leaving the horizon drops out of the ring. The values are shifted by a value of
+ * the series, which is moved to the newest one regularly and the products recomputed, so the
+ * rounding errors don't pile up however long the stream.
+ *
+ * @author Ryan Faulkner
+ */
+public final class OnlineDiscordDetector {
+	/** The number of windows after which the shift and the dot products are recomputed. */
+	private static final int REFRESH = 1 << 12;
+
+	private final int windowSize;
+	private final int horizon;
+	private final boolean znorm;
+	private final double nThreshold;
+	/* The last horizon + windowSize + 1 values, less the shift, value i at i % values.length */
+	private final double[] values;
+	/* The dot product of the newest window with the window lag values before it */
+	private final double[] products;
+	/* The statistics of the last horizon + 1 windows, window i at i % means.length */
+	private final double[] means;
+	/* The sum of the squared deviations from the mean */
+	private final double[] deviations;
+	/* The inverse standard deviation, 0 for windows which are not Z-normalised */
+	private final double[] invSigmas;
+	private double shift;
+	/* The number of values added */
+	private long count;
+
+	/**
+	 * Constructor.
+	 * @param windowSize	The sliding window size.
+	 * @param horizon		The number of windows before the newest one it is compared to.
+	 * @param znorm			If true the windows are Z-normalised before they are compared.
+	 * @param nThreshold	The normalisation threshold value.
+	 * @throws SAXException if the window size or the horizon is not positive.
+	 */
+	public OnlineDiscordDetector(int windowSize, int horizon, boolean znorm, double nThreshold) throws SAXException {
+		if (windowSize < 1 || horizon < 1)
+			throw new SAXException("The window size and the horizon must be positive.");
+		this.windowSize = windowSize;
+		this.horizon = horizon;
+		this.znorm = znorm;
+		this.nThreshold = nThreshold;
+		this.values = new double[horizon + windowSize + 1];
+		this.products = new double[horizon + 1];
+		this.means = new double[horizon + 1];
+		this.deviations = new double[horizon + 1];
+		this.invSigmas = new double[horizon + 1];
+	}
+
+	/**
+	 * Adds the next value of the series.
+	 * @param value The value.
+	 * @return the score of the window the value completes, NaN if the window is not complete or
+	 * has no neighbour in the horizon yet.
+	 */
+	public double add(double value) {
+		if (count == 0)
+			shift = value;
+		values[slot(count)] = value - shift;
+		count++;
+		if (count < windowSize)
+			return Double.NaN;
+
+		// the position of the newest window
+		long s = count - windowSize;
+		windowStatistics(s);
+		int maxLag = (int) Math.min(s, horizon);
+		if (s % REFRESH == 0)
+			refresh(s);
+		else
+			slide(s, maxLag);
+
+		double nearest = Double.MAX_VALUE;
+		int ia = (int) (s % means.length);
+		// the ring index of the window lag before the newest one, counted down
+		int ib = ia;
+		for (int lag = 1; lag <= maxLag; lag++) {
+			if (--ib < 0)
+				ib += means.length;
+			if (lag >= windowSize)
+				nearest = Math.min(nearest, distance2(ia, ib, products[lag]));
+		}
+		return (nearest == Double.MAX_VALUE) ? Double.NaN : Math.sqrt(nearest);
+	}
+
+	/**
+	 * Slides the dot products to the newest window, with the value entering it and the one
+	 * leaving it.
+	 * @param s			The position of the newest window.
+	 * @param maxLag	The largest lag of a window of the horizon.
+	 */
+	private void slide(long s, int maxLag) {
+		double in = value(s + windowSize - 1);
+		double out = value(s - 1);
+		// the ring slots of the values entering and leaving the window lag before, counted down
+		int entering = slot(s + windowSize - 1);
+		int leaving = slot(s - 1);
+		for (int lag = 1; lag <= maxLag; lag++) {
+			if (--entering < 0)
+				entering += values.length;
+			if (--leaving < 0)
+				leaving += values.length;
+			if (lag < windowSize)
+				continue;
+			if (lag == s)
+				// the first window comes into the horizon
+				products[lag] = dotProduct(s, 0);
+			else
+				products[lag] += in * values[entering] - out * values[leaving];
+		}
+	}
+
+	/**
+	 * Get the number of values added.
+	 * @return the count.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Calculates the squared distance between two windows of the horizon from their dot product.
+	 * @param ia		The ring index of the first window.
+	 * @param ib		The ring index of the second window.
+	 * @param product	The dot product of the windows.
+	 * @return the squared distance.
+	 */
+	private double distance2(int ia, int ib, double product) {
+		// the dot product of the deviations from the means doesn't depend on the shift
+		double covariance = product - windowSize * means[ia] * means[ib];
+		double d2;
+		if (znorm)
+			d2 = invSigmas[ia] * invSigmas[ia] * deviations[ia] + invSigmas[ib] * invSigmas[ib] * deviations[ib]
+					- 2.0D * invSigmas[ia] * invSigmas[ib] * covariance;
+		else {
+			double offset = means[ia] - means[ib];
+			d2 = deviations[ia] + deviations[ib] - 2.0D * covariance + windowSize * offset * offset;
+		}
+		return (d2 > 0.0D) ? d2 : 0.0D;
+	}
+
+	/**
+	 * Computes the statistics of a window, as HOTSAX does: the sample standard deviation, and
+	 * windows which are flat or whose standard deviation is below the normalisation threshold
+	 * are not Z-normalised.
+	 * @param s The position of the window.
+	 */
+	private void windowStatistics(long s) {
+		double sum = 0.0D;
+		boolean flat = true;
+		double first = value(s);
+		for (int k = 0; k < windowSize; k++) {
+			double v = value(s + k);
+			sum += v;
+			flat &= v == first;
+		}
+		double mean = sum / windowSize;
+		double squares = 0.0D;
+		for (int k = 0; k < windowSize; k++) {
+			double v = value(s + k) - mean;
+			squares += v * v;
+		}
+		double sd = (windowSize > 1) ? Math.sqrt(squares / (windowSize - 1)) : 0.0D;
+		int i = (int) (s % means.length);
+		means[i] = mean;
+		deviations[i] = squares;
+		invSigmas[i] = (!flat && !(sd < nThreshold) && sd > 0.0D) ? 1.0D / sd : 0.0D;
+	}
+
+	/**
+	 * Moves the shift to the first value of the newest window and recomputes the dot products.
+	 * @param s The position of the newest window.
+	 */
+	private void refresh(long s) {
+		double delta = value(s);
+		for (int i = 0; i < values.length; i++)
+			values[i] -= delta;
+		for (int i = 0; i < means.length; i++)
+			means[i] -= delta;
+		shift += delta;
+		int maxLag = (int) Math.min(s, horizon);
+		for (int lag = windowSize; lag <= maxLag; lag++)
+			products[lag] = dotProduct(s, s - lag);
+	}
+
+	/**
+	 * Computes the dot product of two windows.
+	 * @param a	The position of the first window.
+	 * @param b	The position of the second window.
+	 * @return the dot product.
+	 */
+	private double dotProduct(long a, long b) {
+		double sum = 0.0D;
+		for (int k = 0; k < windowSize; k++)
+			sum += value(a + k) * value(b + k);
+		return sum;
+	}
+
+	/**
+	 * Get a value of the last ones.
+	 * @param position The position of the value in the series.
+	 * @return the value, less the shift.
+	 */
+	private double value(long position) {
+		return values[slot(position)];
+	}
+
+	/**
+	 * Get the slot of a value in the ring.
+	 * @param position The position of the value in the series.
+	 * @return the slot.
+	 */
+	private int slot(long position) {
+		return (int) (position % values.length);
+	}
+}
@@ -0,0 +1,47 @@
+package uk.ac.reading.cs.knime.hotsax;
+
+import org.knime.core.data.DoubleValue;
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentColumnNameSelection;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelDouble;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+
+/**
+ * <code>NodeDialog</code> for the "Online Discords" Node. Scores every point of
+ * a time series by its discordance, as the points arrive.
+ *
+ * This node dialog derives from {@link DefaultNodeSettingsPane} which allows
+ * creation of a simple dialog with standard components. If you need a more
+ * complex dialog please derive directly from
+ * {@link org.knime.core.node.NodeDialogPane}.
+ * 
+ * @author Ryan Faulkner
+ */
+public class OnlineDiscordNodeDialog extends DefaultNodeSettingsPane {
+	/**
+	 * New pane for configuring the Online Discords node dialog.
+	 */
+	@SuppressWarnings("unchecked")
+	protected OnlineDiscordNodeDialog() {
+		super();
+		createNewGroup("Time Series");
+		addDialogComponent(new DialogComponentColumnNameSelection(new SettingsModelString(OnlineDiscordNodeModel.TS_DATA, ""),
+				"Select a column", 0, true, DoubleValue.class));
+
+		createNewGroup("Online Discords");
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelIntegerBounded(OnlineDiscordNodeModel.WINDOW, 30, 1, Integer.MAX_VALUE),
+				"Subsequence Length:", 1));
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelIntegerBounded(OnlineDiscordNodeModel.HORIZON, 1000, 1, Integer.MAX_VALUE),
+				"Horizon (subsequences):", 100));
+		addDialogComponent(new DialogComponentBoolean(new SettingsModelBoolean(OnlineDiscordNodeModel.ZNORM, true),
+				"Z-Normalise Subsequences"));
+		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(OnlineDiscordNodeModel.THRESH, 0.01),
+				"Normalisation Threshold:", 0.01));
+	}
+}
@@ -0,0 +1,54 @@
+package uk.ac.reading.cs.knime.hotsax;
+
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+
+/**
+ * <code>NodeFactory</code> for the "Online Discords" Node.
+ * Scores every point of a time series by its discordance, as the points arrive.
+ *
+ * @author Ryan Faulkner
+ */
+public class OnlineDiscordNodeFactory extends NodeFactory<OnlineDiscordNodeModel> {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OnlineDiscordNodeModel createNodeModel() {
+        return new OnlineDiscordNodeModel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNrNodeViews() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeView<OnlineDiscordNodeModel> createNodeView(final int viewIndex,
+            final OnlineDiscordNodeModel nodeModel) {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasDialog() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeDialogPane createNodeDialogPane() {
+        return new OnlineDiscordNodeDialog();
+    }
+}
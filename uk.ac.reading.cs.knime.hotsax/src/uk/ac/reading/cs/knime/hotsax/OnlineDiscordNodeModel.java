@@ -0,0 +1,319 @@
+package uk.ac.reading.cs.knime.hotsax;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.append.AppendedColumnRow;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelDouble;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.streamable.InputPortRole;
+import org.knime.core.node.streamable.OutputPortRole;
+import org.knime.core.node.streamable.PartitionInfo;
+import org.knime.core.node.streamable.PortInput;
+import org.knime.core.node.streamable.PortOutput;
+import org.knime.core.node.streamable.RowInput;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.node.streamable.StreamableOperator;
+
+/**
+ * This is the model implementation of the Online Discords node.
+ * Scores every point of a time series by the distance of the subsequence it completes to the
+ * nearest one of a sliding horizon before it, as the points arrive.
+ * @author Ryan Faulkner
+ */
+public class OnlineDiscordNodeModel extends NodeModel {
+	SAXParameters params;
+
+	/** The name of the score column. */
+	static final String SCORE = "Discord Score";
+
+	/** the settings key which is used to retrieve and
+		store the settings (from the dialog or from a settings file)
+		(package visibility to be usable from the dialog). */
+	static final String TS_DATA = "ts.col.name";
+	static final String WINDOW = "sax.window.name";
+	static final String HORIZON = "online.horizon.name";
+	static final String ZNORM = "hotsax.znorm.name";
+	static final String THRESH = "sax.thresh.name";
+
+	private final SettingsModelString colname = new SettingsModelString(TS_DATA, null);
+	private final SettingsModelIntegerBounded window_sz = new SettingsModelIntegerBounded(WINDOW, 30, 1, Integer.MAX_VALUE);
+	private final SettingsModelIntegerBounded horizon = new SettingsModelIntegerBounded(HORIZON, 1000, 1, Integer.MAX_VALUE);
+	private final SettingsModelBoolean znorm = new SettingsModelBoolean(ZNORM, true);
+	private final SettingsModelDouble threshold = new SettingsModelDouble(THRESH, 0.01);
+
+	/**
+	 * Constructor for the node model.
+	 */
+	protected OnlineDiscordNodeModel() {
+		// Input port:	Time series data
+		// Output port:	Time series data with the discord scores
+		super(1, 1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected BufferedDataTable[] execute(final BufferedDataTable[] inData, final ExecutionContext exec) throws Exception {
+		params = createParameters();
+		DataTableSpec inSpec = inData[0].getDataTableSpec();
+		BufferedDataContainer container = exec.createDataContainer(createOutputSpec(inSpec));
+		Scorer scorer = new Scorer(params, inSpec);
+		long rows = inData[0].size();
+		long row_count = 0;
+		CloseableRowIterator it = inData[0].iterator();
+		try {
+			while (it.hasNext()) {
+				scorer.add(it.next(), container::addRowToTable);
+				if ((++row_count & 0xFFFF) == 0) {
+					exec.checkCanceled();
+					exec.setProgress((double) row_count / rows, "Scored " + row_count + " of " + rows + " rows");
+				}
+			}
+		} finally {
+			it.close();
+		}
+		scorer.close(container::addRowToTable);
+		container.close();
+		return new BufferedDataTable[]{container.getTable()};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public InputPortRole[] getInputPortRoles() {
+		return new InputPortRole[]{InputPortRole.NONDISTRIBUTED_STREAMABLE};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public OutputPortRole[] getOutputPortRoles() {
+		return new OutputPortRole[]{OutputPortRole.NONDISTRIBUTED};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public StreamableOperator createStreamableOperator(final PartitionInfo partitionInfo, final PortObjectSpec[] inSpecs)
+			throws InvalidSettingsException {
+		final SAXParameters streamParams = createParameters();
+		return new StreamableOperator() {
+			@Override
+			public void runFinal(final PortInput[] inputs, final PortOutput[] outputs, final ExecutionContext exec) throws Exception {
+				RowInput input = (RowInput) inputs[0];
+				RowOutput output = (RowOutput) outputs[0];
+				Scorer scorer = new Scorer(streamParams, input.getDataTableSpec());
+				long row_count = 0;
+				DataRow row;
+				while ((row = input.poll()) != null) {
+					scorer.add(row, output::push);
+					if ((++row_count & 0xFFFF) == 0) {
+						exec.checkCanceled();
+						exec.setMessage("Scored " + row_count + " rows");
+					}
+				}
+				input.close();
+				scorer.close(output::push);
+				output.close();
+			}
+		};
+	}
+
+	/**
+	 * Creates the parameters of a run from the current settings.
+	 * @return the parameters.
+	 */
+	private SAXParameters createParameters() {
+		SAXParameters p = new SAXParameters();
+		p.COLNAME = colname.getStringValue();
+		p.SAX_WINDOW_SIZE = window_sz.getIntValue();
+		p.ONLINE_HORIZON = horizon.getIntValue();
+		p.HOTSAX_ZNORM = znorm.getBooleanValue();
+		p.SAX_NORM_THRESHOLD = threshold.getDoubleValue();
+		return p;
+	}
+
+	/**
+	 * Creates the output spec, the input columns followed by the score.
+	 * @param inSpec The input spec.
+	 * @return the spec.
+	 */
+	private static DataTableSpec createOutputSpec(DataTableSpec inSpec) {
+		return new DataTableSpec(inSpec,
+				new DataTableSpec(new DataColumnSpecCreator(SCORE, DataType.getType(DoubleCell.class)).createSpec()));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void reset() {}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected DataTableSpec[] configure(final DataTableSpec[] inSpecs) throws InvalidSettingsException {
+		if (colname.getStringValue() == null || inSpecs[0].findColumnIndex(colname.getStringValue()) < 0)
+			throw new InvalidSettingsException("Select the time series column.");
+		if (inSpecs[0].containsName(SCORE))
+			throw new InvalidSettingsException("The input already has a column named \"" + SCORE + "\".");
+		return new DataTableSpec[]{createOutputSpec(inSpecs[0])};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		this.colname.saveSettingsTo(settings);
+		this.window_sz.saveSettingsTo(settings);
+		this.horizon.saveSettingsTo(settings);
+		this.znorm.saveSettingsTo(settings);
+		this.threshold.saveSettingsTo(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		this.colname.loadSettingsFrom(settings);
+		this.window_sz.loadSettingsFrom(settings);
+		this.horizon.loadSettingsFrom(settings);
+		this.znorm.loadSettingsFrom(settings);
+		this.threshold.loadSettingsFrom(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		this.colname.validateSettings(settings);
+		this.window_sz.validateSettings(settings);
+		this.horizon.validateSettings(settings);
+		this.znorm.validateSettings(settings);
+		this.threshold.validateSettings(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadInternals(final File internDir, final ExecutionMonitor exec) throws IOException, CanceledExecutionException {}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveInternals(final File internDir, final ExecutionMonitor exec) throws IOException, CanceledExecutionException {}
+
+	/**
+	 * The destination of the scored rows, a table or a stream.
+	 */
+	private interface RowSink {
+		/**
+		 * Takes a scored row.
+		 * @param row The row.
+		 * @throws InterruptedException if a stream is interrupted.
+		 */
+		void push(DataRow row) throws InterruptedException;
+	}
+
+	/**
+	 * Scores the rows of the input one after another. Missing values take the last value seen,
+	 * as in the batch nodes; the rows before the first value are held until it arrives.
+	 */
+	private static final class Scorer {
+		final OnlineDiscordDetector detector;
+		final int colIdx;
+		/* The rows before the first value, null once it arrived */
+		ArrayList<DataRow> leading = new ArrayList<DataRow>();
+		double last;
+
+		/**
+		 * Constructor.
+		 * @param params	The parameters.
+		 * @param inSpec	The input spec.
+		 * @throws SAXException if the window size or the horizon is not positive.
+		 */
+		Scorer(SAXParameters params, DataTableSpec inSpec) throws SAXException {
+			this.colIdx = inSpec.findColumnIndex(params.COLNAME);
+			if (colIdx < 0)
+				throw new SAXException("The time series column is not present in the input table.");
+			this.detector = new OnlineDiscordDetector(params.SAX_WINDOW_SIZE, params.ONLINE_HORIZON, params.HOTSAX_ZNORM,
+					params.SAX_NORM_THRESHOLD);
+		}
+
+		/**
+		 * Scores a row.
+		 * @param row	The row.
+		 * @param out	The destination of the scored rows.
+		 * @throws InterruptedException if a stream is interrupted.
+		 */
+		void add(DataRow row, RowSink out) throws InterruptedException {
+			DataCell cell = row.getCell(colIdx);
+			if (cell.isMissing() && leading != null) {
+				leading.add(row);
+				return;
+			}
+			if (!cell.isMissing())
+				last = ColumnReader.getDouble(cell);
+			if (leading != null) {
+				for (DataRow r : leading)
+					out.push(score(r, detector.add(last)));
+				leading = null;
+			}
+			out.push(score(row, detector.add(last)));
+		}
+
+		/**
+		 * Pushes the rows still held, a column without any value has no scores.
+		 * @param out The destination of the scored rows.
+		 * @throws InterruptedException if a stream is interrupted.
+		 */
+		void close(RowSink out) throws InterruptedException {
+			if (leading != null)
+				for (DataRow r : leading)
+					out.push(score(r, Double.NaN));
+			leading = null;
+		}
+
+		/**
+		 * Appends a score to a row.
+		 * @param row	The row.
+		 * @param score	The score, NaN for none.
+		 * @return the scored row.
+		 */
+		private static DataRow score(DataRow row, double score) {
+			DataCell cell = Double.isNaN(score) ? DataType.getMissingCell() : new DoubleCell(score);
+			return new AppendedColumnRow(row, cell);
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package uk.ac.reading.cs.knime.hotsax;
+
+/**
+ * Sliding-window Z-normalisation and PAA built on prefix sums.
+ * The prefix sums of values and squared values are kept for one block of windows at a time,
+ * so the mean, standard deviation and PAA segment means of a window cost O(paaSize) and no
+ * window is ever copied. The sums are taken relative to the first value of the block, which
+ * keeps the rounding error bounded by the block length rather than the series length.
+ *
+ * @author Ryan Faulkner
+ */
+public final class RollingSAXProcessor {
+	/** Minimal number of windows covered by one block of prefix sums. */
+	private static final int MIN_BLOCK = 8192;
+
+	private final double[] ts;
+	private final int windowSize;
+	private final int paaSize;
+	private final double nThreshold;
+
+	/* Segment geometry, identical for every window */
+	private final double pointsPerSegment;
+	private final double[] breaks;
+	private final int[] segStart;
+	private final int[] segEnd;
+	private final double[] headCut;
+	private final double[] tailCut;
+
+	/* Block-local prefix sums */
+	private final int blockSize;
+	private final double[] sum;
+	private final double[] sum2;
+	/* The number of values of the block differing from the one before them, flat windows have none */
+	private final int[] changes;
+	private int blockStart = -1;
+	private int summed;
+	private double shift;
+	private int available;
+
+	/**
+	 * Constructor.
+	 * @param ts			The time series.
+	 * @param windowSize	The sliding window size.
+	 * @param paaSize		The PAA size.
+	 * @param nThreshold	The normalisation threshold value.
+	 * @throws SAXException if the PAA size is greater than the window size.
+	 */
+	public RollingSAXProcessor(double[] ts, int windowSize, int paaSize, double nThreshold) throws SAXException {
+		if (windowSize < paaSize)
+			throw new SAXException("PAA size can't be greater than the timeseries size.");
+		this.ts = ts;
+		this.windowSize = windowSize;
+		this.paaSize = paaSize;
+		this.nThreshold = nThreshold;
+
+		// same break points as TSProcessor.paa, relative to the window start
+		this.pointsPerSegment = (double) windowSize / (double) paaSize;
+		this.breaks = new double[paaSize + 1];
+		for (int i = 0; i < paaSize + 1; i++)
+			breaks[i] = i * pointsPerSegment;
+		// the last break can round past the window end, which holds no value to weigh
+		breaks[paaSize] = windowSize;
+
+		this.segStart = new int[paaSize];
+		this.segEnd = new int[paaSize];
+		this.headCut = new double[paaSize];
+		this.tailCut = new double[paaSize];
+		for (int i = 0; i < paaSize; i++) {
+			double fractionStart = Math.ceil(breaks[i]) - breaks[i];
+			double fractionEnd = breaks[i + 1] - Math.floor(breaks[i + 1]);
+			segStart[i] = (int) Math.floor(breaks[i]);
+			segEnd[i] = (int) Math.ceil(breaks[i + 1]);
+			// the share of the boundary points which falls outside of the segment
+			headCut[i] = (fractionStart > 0) ? 1.0 - fractionStart : 0.0;
+			tailCut[i] = (fractionEnd > 0) ? 1.0 - fractionEnd : 0.0;
+		}
+
+		this.blockSize = blockSize(windowSize);
+		this.available = ts.length;
+		this.sum = new double[blockSize + windowSize];
+		this.sum2 = new double[blockSize + windowSize];
+		this.changes = new int[blockSize + windowSize];
+	}
+
+	/**
+	 * Get the number of windows covered by one block of prefix sums.
+	 * @param windowSize The sliding window size.
+	 * @return the block size.
+	 */
+	static int blockSize(int windowSize) {
+		return Math.max(8 * windowSize, MIN_BLOCK);
+	}
+
+	/**
+	 * Tells the processor how many values of the series array are valid, for arrays which are
+	 * filled while they are processed. Prefix sums are then extended on demand.
+	 * @param available The number of valid values.
+	 */
+	void setAvailable(int available) {
+		this.available = available;
+	}
+
+	/**
+	 * Drops the cached prefix sums, for series arrays whose content was moved.
+	 */
+	void invalidate() {
+		blockStart = -1;
+	}
+
+	/**
+	 * Get the number of windows in the series.
+	 * @return the number of sliding windows.
+	 */
+	public int size() {
+		return Math.max(0, ts.length - windowSize + 1);
+	}
+
+	/**
+	 * Get the number of windows covered by one block of prefix sums.
+	 * @return the block size.
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Get the PAA segment break points of a window, relative to its start.
+	 * @return the break points.
+	 */
+	public double[] getBreaks() {
+		return breaks;
+	}
+
+	/**
+	 * Computes the PAA of the Z-normalised window starting at the given position.
+	 * Windows whose standard deviation is below the normalisation threshold are
+	 * approximated as is, just as TSProcessor.znorm leaves them.
+	 * @param start	The window start.
+	 * @param paa	The array to write paaSize values to.
+	 * @return the paa array.
+	 */
+	public double[] paa(int start, double[] paa) {
+		int off = seek(start);
+		double s = sum[off + windowSize] - sum[off];
+		double s2 = sum2[off + windowSize] - sum2[off];
+		double len = windowSize;
+		double mean = s / len;
+		// the sums can't tell a flat window exactly, its variance may round below 0
+		double variance = (len * s2 - s * s) / (len * (len - 1));
+		boolean flat = changes[off + windowSize] == changes[off + 1];
+		double sd = (flat || !(variance > 0.0D)) ? 0.0D : Math.sqrt(variance);
+
+		boolean normalise = !(sd < nThreshold);
+		for (int i = 0; i < paaSize; i++) {
+			int from = start + segStart[i];
+			int to = start + segEnd[i];
+			double elementsSum = sum[off + segEnd[i]] - sum[off + segStart[i]];
+			if (headCut[i] > 0)
+				elementsSum -= headCut[i] * (ts[from] - shift);
+			if (tailCut[i] > 0)
+				elementsSum -= tailCut[i] * (ts[to - 1] - shift);
+			double level = elementsSum / pointsPerSegment;
+			paa[i] = normalise ? (level - mean) / sd : level + shift;
+		}
+		return paa;
+	}
+
+	/**
+	 * Converts the window starting at the given position into a SAX word.
+	 * @param start	The window start.
+	 * @param cuts	The Alphabet cuts.
+	 * @param paa	Scratch array of paaSize values.
+	 * @param word	The array to write paaSize symbols to.
+	 * @return the word array.
+	 */
+	public char[] sax(int start, double[] cuts, double[] paa, char[] word) {
+		paa(start, paa);
+		for (int i = 0; i < paaSize; i++)
+			word[i] = TSProcessor.num2char(paa[i], cuts);
+		return word;
+	}
+
+	/**
+	 * Converts the window starting at the given position into a packed SAX word.
+	 * @param start	The window start.
+	 * @param cuts	The Alphabet cuts.
+	 * @param paa	Scratch array of paaSize values.
+	 * @param codec	The word codec.
+	 * @return the packed word.
+	 */
+	public long word(int start, double[] cuts, double[] paa, SAXWordCodec codec) {
+		paa(start, paa);
+		long word = 0L;
+		for (int i = 0; i < paaSize; i++)
+			word = codec.append(word, TSProcessor.num2index(paa[i], cuts));
+		return word;
+	}
+
+	/**
+	 * Makes sure the block of prefix sums covering the window is loaded. Blocks are aligned to
+	 * multiples of the block size, so a window gets the same values whatever the access order.
+	 * @param start	The window start.
+	 * @return the offset of the window in the block.
+	 */
+	private int seek(int start) {
+		if (blockStart < 0 || start < blockStart || start >= blockStart + blockSize) {
+			blockStart = start - start % blockSize;
+			shift = ts[blockStart];
+			summed = 0;
+		}
+		int off = start - blockStart;
+		if (summed < off + windowSize) {
+			// sums are continued from where they stopped, so they come out the same in one go or in steps
+			int len = Math.min(blockSize + windowSize - 1, available - blockStart);
+			double s = sum[summed], s2 = sum2[summed];
+			int c = changes[summed];
+			for (int i = summed; i < len; i++) {
+				double v = ts[blockStart + i] - shift;
+				s += v;
+				s2 += v * v;
+				if (i > 0 && ts[blockStart + i] != ts[blockStart + i - 1])
+					c++;
+				sum[i + 1] = s;
+				sum2[i + 1] = s2;
+				changes[i + 1] = c;
+			}
+			summed = len;
+		}
+		return off;
+	}
+}
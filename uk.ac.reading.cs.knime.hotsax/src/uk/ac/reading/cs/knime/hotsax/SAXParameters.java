@@ -19,6 +19,10 @@ public class SAXParameters {
    * Time Series column id
    */
   public String COLNAME;
+  /**
+   * Column whose values split the rows into series searched apart, null for one series
+   */
+  public String GROUPCOL;
 
   // Discretisation parameters
   //
@@ -26,26 +30,111 @@ public class SAXParameters {
    * SAX Sliding window size
    */
   public int SAX_WINDOW_SIZE = 30;
+  /**
+   * Largest window size HOTSAX searches, up from the sliding window size, 0 for that one only
+   */
+  public int HOTSAX_MAX_WINDOW_SIZE = 0;
+
+  /**
+   * SAX PAA word size
+   */
+  public int SAX_PAA_SIZE = 4;
+
+  /**
+   * SAX Alphabet size
+   */
+  public int SAX_ALPHABET_SIZE = 3;
+
+  /**
+   * SAX Numerosity reduction strategy
+   */
+  public NumerosityReductionStrategy SAX_NR_STRATEGY = NumerosityReductionStrategy.EXACT;
 
-//  /**
-//   * SAX PAA word size
-//   */
-//  public int SAX_PAA_SIZE = 4;
-//
-//  /**
-//   * SAX Alphabet size
-//   */
-//  public int SAX_ALPHABET_SIZE = 3;
-//
-//  /**
-//   * SAX Numerosity reduction strategy
-//   */
-//  public NumerosityReductionStrategy SAX_NR_STRATEGY = NumerosityReductionStrategy.EXACT;
-//
-//  /**
-//   * SAX Normalisation threshold
-//   */
-//  public double SAX_NORM_THRESHOLD = 0.01;
+  /**
+   * SAX Normalisation threshold
+   */
+  public double SAX_NORM_THRESHOLD = 0.01;
 
   public int DISCORDS = 1;
+
+  /**
+   * Seed of the order HOTSAX visits random neighbours in
+   */
+  public long SEED = 0L;
+
+  /**
+   * Number of threads the HOTSAX candidates are spread over
+   */
+  public int HOTSAX_THREADS = 1;
+
+  /**
+   * Z-normalise the subsequences HOTSAX compares
+   */
+  public boolean HOTSAX_ZNORM = false;
+
+  /**
+   * Order HOTSAX visits the neighbours of a candidate in, Random or MINDIST
+   */
+  public String HOTSAX_SEARCH = HotSAXNodeModel.RANDOM_SEARCH;
+
+  /**
+   * Seconds the HOTSAX search may take before the best discords so far are returned, 0 for no limit
+   */
+  public int HOTSAX_TIME_BUDGET = 0;
+
+  /**
+   * Millions of distances the HOTSAX search may compute before the best discords so far are returned, 0 for no limit
+   */
+  public int HOTSAX_EVAL_BUDGET = 0;
+
+  /**
+   * Whether the HOTSAX discords are compared to the brute force ones
+   */
+  public boolean HOTSAX_VERIFY = false;
+
+  /**
+   * Discord search engine, HOTSAX in memory, DRAG on a disk copy of the series or Brute Force
+   */
+  public String HOTSAX_ENGINE = HotSAXNodeModel.HOTSAX_ENGINE;
+
+  /**
+   * Memory budget of the DRAG candidates and blocks in megabytes
+   */
+  public int DRAG_BUDGET = 256;
+
+  /**
+   * Range DRAG starts from, 0 to estimate it
+   */
+  public double DRAG_RANGE = 0.0D;
+
+  // Matrix profile parameters
+  //
+  /**
+   * Number of windows before the newest one the online discord scores compare it to
+   */
+  public int ONLINE_HORIZON = 1000;
+  /**
+   * Number of motifs
+   */
+  public int MOTIFS = 1;
+
+  /**
+   * Matrix profile algorithm, STOMP or SCRIMP++
+   */
+  public String MP_ALGORITHM = MatrixProfileNodeModel.STOMP;
+
+  /**
+   * SCRIMP++ time budget in seconds, 0 for none
+   */
+  public int MP_BUDGET = 0;
+
+  /**
+   * Number of threads
+   */
+  public int MP_THREADS = 1;
+
+  /**
+   * Z-normalise the subsequences before they are compared
+   */
+  public boolean MP_ZNORM = true;
 }
@@ -5,6 +5,14 @@ package uk.ac.reading.cs.knime.hotsax;
 //import org.joda.time.Duration;
 //import org.joda.time.format.PeriodFormatter;
 //import org.joda.time.format.PeriodFormatterBuilder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.IntValue;
+import org.knime.core.data.RowKey;
 import org.knime.core.data.container.CloseableRowIterator;
 import org.knime.core.node.BufferedDataTable;
 
@@ -15,6 +23,9 @@ import org.knime.core.node.BufferedDataTable;
  * 
  */
 public final class SAXProcessor {
+	/** The column of the SAX node output holding word ids instead of strings. */
+	static final String WORD_ID = "Word ID";
+
 //	private final TSProcessor tsProcessor;
 
 	/**
@@ -113,18 +124,198 @@ public final class SAXProcessor {
 //		return formatter.print(duration.toPeriod());
 //	}
 	
+	/**
+	 * Converts the input time series into a compact SAX data structure of packed words via
+	 * sliding window and Z normalisation. The words are indexed by position and by word in
+	 * primitive arrays as they are produced.
+	 * 
+	 * @param ts the input data.
+	 * @param windowSize the sliding window size.
+	 * @param paaSize the PAA size.
+	 * @param alphabetSize the alphabet size.
+	 * @param strategy the NR strategy.
+	 * @param nThreshold the normalisation threshold value.
+	 * 
+	 * @return SAX representation of the time series.
+	 * @throws SAXException if error occurs.
+	 */
+	public CompactSAXRecords ts2compactSaxViaWindow(double[] ts, int windowSize, int paaSize, int alphabetSize,
+			NumerosityReductionStrategy strategy, double nThreshold) throws SAXException {
+		SAXWordCodec codec = new SAXWordCodec(paaSize, alphabetSize);
+		double[] cuts = new NormalAlphabet().getCuts(alphabetSize);
+		RollingSAXProcessor rsp = new RollingSAXProcessor(ts, windowSize, paaSize, nThreshold);
+		CompactSAXRecords saxFrequencyData = new CompactSAXRecords(codec,
+				NumerosityReductionStrategy.NONE.equals(strategy) ? rsp.size() : 1024);
+		double[] paa = new double[paaSize];
+
+		boolean first = true;
+		long previousWord = 0L;
+		for (int i = 0; i < rsp.size(); i++) {
+			long currentWord = rsp.word(i, cuts, paa, codec);
+
+			if (!first && isReduced(strategy, codec, previousWord, currentWord))
+				continue;
+			first = false;
+			previousWord = currentWord;
+			saxFrequencyData.add(currentWord, i);
+		}
+		return saxFrequencyData;
+	}
+
+	/**
+	 * Converts the input time series into a SAX data structure via sliding window and Z
+	 * normalisation, for words too long to be packed.
+	 * 
+	 * @param ts the input data.
+	 * @param windowSize the sliding window size.
+	 * @param paaSize the PAA size.
+	 * @param cuts the Alphabet cuts.
+	 * @param strategy the NR strategy.
+	 * @param nThreshold the normalisation threshold value.
+	 * 
+	 * @return SAX representation of the time series.
+	 * @throws SAXException if error occurs.
+	 */
+	public SAXRecords ts2saxViaWindow(double[] ts, int windowSize, int paaSize, double[] cuts,
+			NumerosityReductionStrategy strategy, double nThreshold) throws SAXException {
+		RollingSAXProcessor rsp = new RollingSAXProcessor(ts, windowSize, paaSize, nThreshold);
+		SAXRecords saxFrequencyData = new SAXRecords();
+		double[] paa = new double[paaSize];
+		char[] currentString = new char[paaSize];
+		char[] previousString = null;
+
+		for (int i = 0; i < rsp.size(); i++) {
+			rsp.sax(i, cuts, paa, currentString);
+			if (previousString != null) {
+				if (NumerosityReductionStrategy.EXACT.equals(strategy) && Arrays.equals(previousString, currentString))
+					continue;
+				else if (NumerosityReductionStrategy.MINDIST.equals(strategy) && checkMinDistIsZero(previousString, currentString))
+					continue;
+			}
+			previousString = currentString.clone();
+			saxFrequencyData.add(currentString, i);
+		}
+		return saxFrequencyData;
+	}
+
+	/**
+	 * Check for trivial mindist case.
+	 * 
+	 * @param a first string.
+	 * @param b second string.
+	 * @return true if mindist between strings is zero.
+	 */
+	public boolean checkMinDistIsZero(char[] a, char[] b) {
+		for (int i = 0; i < a.length; i++)
+			if (Math.abs(a[i] - b[i]) > 1)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Checks whether a packed word is dropped by numerosity reduction.
+	 * @param strategy the NR strategy.
+	 * @param codec the word codec.
+	 * @param previousWord the last word kept.
+	 * @param currentWord the current word.
+	 * @return true if the current word is not kept.
+	 */
+	private static boolean isReduced(NumerosityReductionStrategy strategy, SAXWordCodec codec, long previousWord, long currentWord) {
+		if (NumerosityReductionStrategy.EXACT.equals(strategy))
+			return previousWord == currentWord;
+		else if (NumerosityReductionStrategy.MINDIST.equals(strategy))
+			return codec.checkMinDistIsZero(previousWord, currentWord);
+		return false;
+	}
+
+	/**
+	 * Builds the magic array of the HOTSAX search, one entry per word with its positions.
+	 * @param sax the SAX words.
+	 * @return the entries, unsorted.
+	 */
+	public static ArrayList<MagicArrayEntry> toMagicArray(CompactSAXRecords sax) {
+		ArrayList<MagicArrayEntry> magicArray = new ArrayList<MagicArrayEntry>(sax.getWordCount());
+		for (int id = 0; id < sax.getWordCount(); id++)
+			if (sax.getFrequency(id) > 0)
+				magicArray.add(new MagicArrayEntry(sax.getCodec().toString(sax.getWord(id)), sax.getPositions(id)));
+		return magicArray;
+	}
+
+	/**
+	 * Builds the magic array of the HOTSAX search, one entry per word with its positions.
+	 * @param sax the SAX words.
+	 * @return the entries, unsorted.
+	 */
+	public static ArrayList<MagicArrayEntry> toMagicArray(SAXRecords sax) {
+		ArrayList<MagicArrayEntry> magicArray = new ArrayList<MagicArrayEntry>(sax.getRecords().size());
+		for (SAXRecord sr : sax.getRecords()) {
+			int[] positions = new int[sr.getIndexes().size()];
+			int i = 0;
+			for (int idx : sr.getIndexes())
+				positions[i++] = idx;
+			Arrays.sort(positions);
+			magicArray.add(new MagicArrayEntry(String.valueOf(sr.getPayload()), positions));
+		}
+		return magicArray;
+	}
+
+	/**
+	 * Reads the SAX words of an upstream SAX node from the second input table. The positions
+	 * are taken from the row keys the SAX node writes, as rows dropped by numerosity reduction
+	 * leave the row numbers behind the positions.
+	 * 
+	 * @param inData the input tables.
+	 * @param colname the SAX string column name.
+	 * @return the SAX words.
+	 */
 	public static SAXRecords readSAXColumn(BufferedDataTable[] inData, String colname) {
 		SAXRecords saxFrequencyData = new SAXRecords();
 		// Create iterator
 		CloseableRowIterator tableIterator = inData[1].iterator();
 		// Access rows using iterator
 		int index = inData[1].getDataTableSpec().findColumnIndex(colname);
+		// a SAX node writing word ids has no string column, the ids tell words apart as well
+		boolean wordIds = index < 0;
+		if (wordIds)
+			index = inData[1].getDataTableSpec().findColumnIndex(WORD_ID);
+		// ids are keyed by one shared array per distinct word
+		HashMap<Integer, char[]> idKeys = new HashMap<Integer, char[]>();
 		// Using the index execute the converter
 		int i = 0;
 		while(tableIterator.hasNext()){
-			saxFrequencyData.add(tableIterator.next().getCell(index).toString().toCharArray(), i);
+			DataRow row = tableIterator.next();
+			DataCell cell = row.getCell(index);
+			int pos = position(row.getKey(), i);
+			if (wordIds) {
+				int id = ((IntValue) cell).getIntValue();
+				char[] key = idKeys.get(id);
+				if (key == null) {
+					key = Integer.toString(id).toCharArray();
+					idKeys.put(id, key);
+				}
+				saxFrequencyData.add(key, pos);
+			} else
+				saxFrequencyData.add(cell.toString().toCharArray(), pos);
 			i++;
 		}
+		tableIterator.close();
 		return saxFrequencyData;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Get the series position of a SAX node row.
+	 * @param key the row key, Row followed by the position.
+	 * @param row the row number, taken if the key holds no position.
+	 * @return the position.
+	 */
+	private static int position(RowKey key, int row) {
+		String id = key.getString();
+		if (id.startsWith("Row"))
+			try {
+				return Integer.parseInt(id.substring(3));
+			} catch (NumberFormatException e) {
+				// not written by the SAX node
+			}
+		return row;
+	}
+}
@@ -1,13 +1,19 @@
 package uk.ac.reading.cs.knime.hotsax;
 
+import org.knime.core.data.DataCell;
 import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTable;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.DataType;
 import org.knime.core.data.RowIterator;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.BooleanCell;
+import org.knime.core.data.def.DefaultRow;
 import org.knime.core.data.def.DoubleCell;
 import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.LongCell;
 import org.knime.core.data.def.StringCell;
 import org.knime.core.node.ExecutionContext;
 
@@ -20,14 +26,127 @@ public class SAXTable implements DataTable {
 	}
 
 	public static DataTableSpec createDataTableSpec() {
+		return createDataTableSpec(false);
+	}
+
+	/**
+	 * Creates the spec of the discord rows.
+	 * @param longPositions	If true the positions are long integers, for series past the int range.
+	 * @return the spec.
+	 */
+	public static DataTableSpec createDataTableSpec(boolean longPositions) {
 		DataColumnSpec word = new DataColumnSpecCreator("Word", DataType.getType(StringCell.class)).createSpec();
-		DataColumnSpec pos  = new DataColumnSpecCreator("Position", DataType.getType(IntCell.class)).createSpec();
+		DataColumnSpec pos  = new DataColumnSpecCreator("Position",
+				DataType.getType(longPositions ? LongCell.class : IntCell.class)).createSpec();
 		DataColumnSpec len  = new DataColumnSpecCreator("Length", DataType.getType(IntCell.class)).createSpec();
 		DataColumnSpec dist = new DataColumnSpecCreator("Nearest Neighbour Distance", DataType.getType(DoubleCell.class)).createSpec();
 		DataColumnSpec rid  = new DataColumnSpecCreator("Rule ID", DataType.getType(IntCell.class)).createSpec();
 		return new DataTableSpec(word, pos, len, dist, rid);
 	}
 
+	/**
+	 * Creates the spec of the columns telling how far a discord found in budget can be trusted.
+	 * @return the spec.
+	 */
+	public static DataTableSpec createBoundSpec() {
+		DataColumnSpec exact = new DataColumnSpecCreator("Exact", DataType.getType(BooleanCell.class)).createSpec();
+		DataColumnSpec bound = new DataColumnSpecCreator("NN Distance Bound", DataType.getType(DoubleCell.class)).createSpec();
+		return new DataTableSpec(exact, bound);
+	}
+
+	/**
+	 * Creates the cells telling how far a discord found in budget can be trusted: whether it
+	 * is exact, and the bound of the NN distance of its rank, missing when there is none.
+	 * @param record	The discord.
+	 * @return the cells.
+	 */
+	public static DataCell[] createBoundCells(DiscordRecord record) {
+		DataCell bound = Double.isInfinite(record.getBound()) ? DataType.getMissingCell() : new DoubleCell(record.getBound());
+		return new DataCell[]{BooleanCell.get(record.isExact()), bound};
+	}
+
+	/**
+	 * Creates the output row of a discord.
+	 * @param row		The row number.
+	 * @param record	The discord.
+	 * @return the row.
+	 */
+	public static DataRow createRow(int row, DiscordRecord record) {
+		DataCell[] cells = new DataCell[5];
+		cells[0] = new StringCell(record.getPayload());
+		cells[1] = new IntCell(record.getPosition());
+		cells[2] = new IntCell(record.getLength());
+		cells[3] = new DoubleCell(record.getNNDistance());
+		cells[4] = new IntCell(record.getRuleId());
+		return new DefaultRow(new RowKey("Row"+row), cells);
+	}
+
+	/**
+	 * Creates the output row of a discord found on disk, with a long position and no word.
+	 * @param row		The row number.
+	 * @param discord	The discord.
+	 * @param length	The discord length.
+	 * @return the row.
+	 */
+	public static DataRow createRow(int row, DRAG.Discord discord, int length) {
+		DataCell[] cells = new DataCell[5];
+		cells[0] = new StringCell("");
+		cells[1] = new LongCell(discord.getPosition());
+		cells[2] = new IntCell(length);
+		cells[3] = new DoubleCell(discord.getNNDistance());
+		cells[4] = new IntCell(0);
+		return new DefaultRow(new RowKey("Row"+row), cells);
+	}
+
+	/**
+	 * Creates the spec of the search counters, a row per engine and window size.
+	 * @return the spec.
+	 */
+	public static DataTableSpec createStatisticsSpec() {
+		DataType count = DataType.getType(LongCell.class);
+		DataType ratio = DataType.getType(DoubleCell.class);
+		return new DataTableSpec(
+				new DataColumnSpecCreator("Engine", DataType.getType(StringCell.class)).createSpec(),
+				new DataColumnSpecCreator("Window Size", DataType.getType(IntCell.class)).createSpec(),
+				new DataColumnSpecCreator("Candidates", count).createSpec(),
+				new DataColumnSpecCreator("Candidates Pruned", count).createSpec(),
+				new DataColumnSpecCreator("Candidates Abandoned", count).createSpec(),
+				new DataColumnSpecCreator("Distance Calls", count).createSpec(),
+				new DataColumnSpecCreator("Early Abandon Rate", ratio).createSpec(),
+				new DataColumnSpecCreator("Hint Visits", count).createSpec(),
+				new DataColumnSpecCreator("Occurrence Visits", count).createSpec(),
+				new DataColumnSpecCreator("Bucket Visits", count).createSpec(),
+				new DataColumnSpecCreator("Random Visits", count).createSpec(),
+				new DataColumnSpecCreator("Discords", DataType.getType(IntCell.class)).createSpec(),
+				new DataColumnSpecCreator("Search Time (ms)", ratio).createSpec(),
+				new DataColumnSpecCreator("Time per Discord (ms)", ratio).createSpec());
+	}
+
+	/**
+	 * Creates the output row of the search counters of an engine and window size.
+	 * @param row	The row number.
+	 * @param stats	The counters.
+	 * @return the row.
+	 */
+	public static DataRow createRow(int row, SearchStatistics stats) {
+		DataCell[] cells = new DataCell[14];
+		cells[0] = new StringCell(stats.engine);
+		cells[1] = new IntCell(stats.windowSize);
+		cells[2] = new LongCell(stats.candidates);
+		cells[3] = new LongCell(stats.pruned);
+		cells[4] = new LongCell(stats.abandoned);
+		cells[5] = new LongCell(stats.distances);
+		cells[6] = new DoubleCell(stats.getEarlyAbandonRate());
+		cells[7] = new LongCell(stats.hintVisits);
+		cells[8] = new LongCell(stats.occurrenceVisits);
+		cells[9] = new LongCell(stats.bucketVisits);
+		cells[10] = new LongCell(stats.randomVisits);
+		cells[11] = new IntCell(stats.discords);
+		cells[12] = new DoubleCell(stats.nanos / 1.0E6D);
+		cells[13] = new DoubleCell(stats.getMillisPerDiscord());
+		return new DefaultRow(new RowKey("Row"+row), cells);
+	}
+
 	@Override
 	public DataTableSpec getDataTableSpec() {
 		return this.dataTableSpec;
@@ -0,0 +1,134 @@
+package uk.ac.reading.cs.knime.hotsax;
+
+/**
+ * Packs SAX words into a single long, using as few bits per symbol as the alphabet allows.
+ * The first symbol of the word occupies the most significant bits, so packed words of the
+ * same length sort in the same order as their strings.
+ *
+ * @author Ryan Faulkner
+ */
+public final class SAXWordCodec {
+	private final int paaSize;
+	private final int bits;
+	private final long mask;
+
+	/**
+	 * Constructor.
+	 * @param paaSize		The word length.
+	 * @param alphabetSize	The alphabet size.
+	 * @throws SAXException if the word does not fit into a long.
+	 */
+	public SAXWordCodec(int paaSize, int alphabetSize) throws SAXException {
+		if (!fits(paaSize, alphabetSize))
+			throw new SAXException("A word of " + paaSize + " symbols over " + alphabetSize + " letters can't be packed into a long.");
+		this.paaSize = paaSize;
+		this.bits = bitsPerSymbol(alphabetSize);
+		this.mask = (1L << bits) - 1;
+	}
+
+	/**
+	 * Get the number of bits needed for a symbol.
+	 * @param alphabetSize The alphabet size.
+	 * @return the number of bits.
+	 */
+	public static int bitsPerSymbol(int alphabetSize) {
+		return Math.max(1, 32 - Integer.numberOfLeadingZeros(alphabetSize - 1));
+	}
+
+	/**
+	 * Checks whether words of the given shape can be packed.
+	 * @param paaSize		The word length.
+	 * @param alphabetSize	The alphabet size.
+	 * @return true if a word fits into a long.
+	 */
+	public static boolean fits(int paaSize, int alphabetSize) {
+		return paaSize > 0 && alphabetSize > 1 && alphabetSize <= TSProcessor.ALPHABET.length
+				&& paaSize * bitsPerSymbol(alphabetSize) <= Long.SIZE;
+	}
+
+	/**
+	 * Get the word length.
+	 * @return the word length.
+	 */
+	public int getPaaSize() {
+		return paaSize;
+	}
+
+	/**
+	 * Packs a word of symbol indexes.
+	 * @param symbols The symbol indexes, 0 stands for 'a'.
+	 * @return the packed word.
+	 */
+	public long pack(int[] symbols) {
+		long word = 0L;
+		for (int i = 0; i < paaSize; i++)
+			word = append(word, symbols[i]);
+		return word;
+	}
+
+	/**
+	 * Appends a symbol to a partially packed word.
+	 * @param word		The symbols packed so far.
+	 * @param symbol	The symbol index, 0 stands for 'a'.
+	 * @return the extended word.
+	 */
+	public long append(long word, int symbol) {
+		return (word << bits) | symbol;
+	}
+
+	/**
+	 * Packs a word of characters.
+	 * @param str The word.
+	 * @return the packed word.
+	 */
+	public long pack(char[] str) {
+		long word = 0L;
+		for (int i = 0; i < paaSize; i++)
+			word = append(word, str[i] - TSProcessor.ALPHABET[0]);
+		return word;
+	}
+
+	/**
+	 * Get the symbol index at the given position of a packed word.
+	 * @param word	The packed word.
+	 * @param i		The symbol position.
+	 * @return the symbol index, 0 stands for 'a'.
+	 */
+	public int symbol(long word, int i) {
+		return (int) ((word >>> ((paaSize - 1 - i) * bits)) & mask);
+	}
+
+	/**
+	 * Unpacks a word into characters.
+	 * @param word	The packed word.
+	 * @param str	The array to write the symbols to.
+	 * @return the str array.
+	 */
+	public char[] unpack(long word, char[] str) {
+		for (int i = 0; i < paaSize; i++)
+			str[i] = TSProcessor.ALPHABET[symbol(word, i)];
+		return str;
+	}
+
+	/**
+	 * Unpacks a word into a string.
+	 * @param word The packed word.
+	 * @return the SAX string.
+	 */
+	public String toString(long word) {
+		return String.valueOf(unpack(word, new char[paaSize]));
+	}
+
+	/**
+	 * Check for trivial mindist case, as SAXProcessor.checkMinDistIsZero does on strings.
+	 * @param a first word.
+	 * @param b second word.
+	 * @return true if mindist between words is zero.
+	 */
+	public boolean checkMinDistIsZero(long a, long b) {
+		for (int i = 0; i < paaSize; i++)
+			if (Math.abs(symbol(a, i) - symbol(b, i)) > 1)
+				return false;
+		return true;
+	}
+}
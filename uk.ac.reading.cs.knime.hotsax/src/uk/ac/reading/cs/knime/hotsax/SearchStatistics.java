@@ -0,0 +1,91 @@
+package uk.ac.reading.cs.knime.hotsax;
+
+/**
+ * The counters of a discord search of one window size, to tune the settings and to spot
+ * slower searches. Each search thread counts into its own instance, without synchronisation,
+ * and the instances are added up once the threads are done.
+ *
+ * @author Ryan Faulkner
+ */
+public final class SearchStatistics {
+	/** The engine searched with. */
+	final String engine;
+	/** The sliding window size. */
+	final int windowSize;
+	/** The number of candidates, the ones of the magic array for HOTSAX. */
+	long candidates;
+	/** The candidates skipped as a neighbour found for another one was closer than the threshold. */
+	long pruned;
+	/** The candidate searches abandoned on a neighbour closer than the threshold. */
+	long abandoned;
+	/** The number of distances computed. */
+	long distances;
+	/** The distances abandoned as soon as their partial sum reached the cut-off. */
+	long abandonedDistances;
+	/* The neighbours visited: the one found for the window size before, the occurrences of the
+	   candidate's word, the ones of the MINDIST buckets and the ones visited at random */
+	long hintVisits;
+	long occurrenceVisits;
+	long bucketVisits;
+	long randomVisits;
+	/** The number of discords found. */
+	int discords;
+	/** The search time in nanoseconds, added up over the groups. */
+	long nanos;
+
+	/**
+	 * Constructor.
+	 * @param engine		The engine searched with.
+	 * @param windowSize	The sliding window size.
+	 */
+	SearchStatistics(String engine, int windowSize) {
+		this.engine = engine;
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * Adds the counters of another search of the same window size.
+	 * @param other The other counters.
+	 */
+	void add(SearchStatistics other) {
+		candidates += other.candidates;
+		pruned += other.pruned;
+		abandoned += other.abandoned;
+		distances += other.distances;
+		abandonedDistances += other.abandonedDistances;
+		hintVisits += other.hintVisits;
+		occurrenceVisits += other.occurrenceVisits;
+		bucketVisits += other.bucketVisits;
+		randomVisits += other.randomVisits;
+		discords += other.discords;
+		nanos += other.nanos;
+	}
+
+	/**
+	 * Get the share of the distances abandoned before their sum was complete.
+	 * @return the rate, 0 without distances.
+	 */
+	public double getEarlyAbandonRate() {
+		return (distances == 0) ? 0.0D : (double) abandonedDistances / distances;
+	}
+
+	/**
+	 * Get the search time per discord found.
+	 * @return the time in milliseconds, the whole search time without discords.
+	 */
+	public double getMillisPerDiscord() {
+		return nanos / 1.0E6D / Math.max(1, discords);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return engine + ", window size " + windowSize + ": " + candidates + " candidates, " + pruned + " pruned, " + abandoned
+				+ " abandoned, " + distances + " distances, " + String.format("%.1f", 100.0D * getEarlyAbandonRate())
+				+ "% abandoned early, visits " + hintVisits + " hint / " + occurrenceVisits + " occurrence / "
+				+ bucketVisits + " bucket / " + randomVisits + " random, " + discords + " discords in "
+				+ String.format("%.1f", nanos / 1.0E6D) + " ms";
+	}
+}
@@ -5,6 +5,8 @@ import java.util.ArrayList;
 
 import org.knime.core.data.container.CloseableRowIterator;
 import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
 
 /**
  * Implements algorithms for low-level data manipulation.
@@ -21,28 +23,18 @@ public class TSProcessor {
 	public TSProcessor() {}
 	
 	/**
-	 * Reads time series from a file. Assumes that file has a single double value on every line.
-	 * Assigned time stamps are the line numbers.
-	 * 
-	 * @param filename The file to read from.
-	 * @param columnIdx The column index.
-	 * @param sizeLimit The number of lines to read, 0 == all.
-	 * @return data.
-	 * @throws IOException if error occurs.
-	 * @throws SAXException if error occurs.
+	 * Reads time series from a input node. 
+	 * Assumes that input has a single double value on every line.
+	 * Missing values take the last value seen before them.
+	 * @param inData	The input tables.
+	 * @param colname	The column name.
+	 * @param exec		The monitor to report progress to.
+	 * @return Timeseries data.
+	 * @throws CanceledExecutionException if the execution was cancelled.
 	 */
-	public static double[] readColumn(BufferedDataTable[] inData, String colname) {
-		ArrayList<Double> ts_a = new ArrayList<Double>();
-		// Create iterator
-		CloseableRowIterator tableIterator = inData[0].iterator();
-		// Access rows using iterator
+	public static double[] readColumn(BufferedDataTable[] inData, String colname, ExecutionMonitor exec) throws CanceledExecutionException {
 		int index = inData[0].getDataTableSpec().findColumnIndex(colname);
-		// Using the index execute the converter
-		while(tableIterator.hasNext()){
-			String cell = tableIterator.next().getCell(index).toString();
-			ts_a.add(Double.parseDouble(cell));
-		}
-		return ts_a.stream().mapToDouble(d -> d).toArray();
+		return ColumnReader.readDoubleColumn(inData[0], index, true, exec);
 	}
 	
 	public static String[] readDateColumn(BufferedDataTable[] inData, String colname) {
@@ -67,7 +59,7 @@ public class TSProcessor {
 	 * @param series The timeseries.
 	 * @return The mean value.
 	 */
-	public double mean(double[] series) {
+	public static double mean(double[] series) {
 		double res = 0D;
 		int count = 0;
 		for (double tp : series) {
@@ -186,19 +178,30 @@ public class TSProcessor {
 //		return res;
 //	}
 //
-//	/**
-//	 * Get mapping of a number to char.
-//	 * 
-//	 * @param value the value to map.
-//	 * @param cuts the array of intervals.
-//	 * @return character corresponding to numeric value.
-//	 */
-//	public char num2char(double value, double[] cuts) {
-//		int count = 0;
-//		while ((count < cuts.length) && (cuts[count] <= value))
-//			count++;
-//		return ALPHABET[count];
-//	}
+	/**
+	 * Get mapping of a number to char.
+	 * 
+	 * @param value the value to map.
+	 * @param cuts the array of intervals.
+	 * @return character corresponding to numeric value.
+	 */
+	public static char num2char(double value, double[] cuts) {
+		return ALPHABET[num2index(value, cuts)];
+	}
+
+	/**
+	 * Get mapping of a number to the index of its symbol.
+	 * 
+	 * @param value the value to map.
+	 * @param cuts the array of intervals.
+	 * @return index of the symbol corresponding to numeric value, 0 stands for 'a'.
+	 */
+	public static int num2index(double value, double[] cuts) {
+		int count = 0;
+		while ((count < cuts.length) && (cuts[count] <= value))
+			count++;
+		return count;
+	}
 	
 	/**
 	   * Extract subseries out of series.
@@ -0,0 +1,144 @@
+package uk.ac.reading.cs.knime.hotsax;
+
+/**
+ * The subsequences of a series bucketed by their SAX word, for visiting nearest neighbour
+ * candidates in increasing MINDIST order. MINDIST of two words lower-bounds the Euclidean
+ * distance of the Z-normalised subsequences, so once a bucket's bound reaches the nearest
+ * neighbour distance found so far, neither it nor any farther bucket can hold a nearer one.
+ *
+ * Every window gets a word, whatever the numerosity reduction of the magic array. Windows
+ * whose standard deviation is below the normalisation threshold are not Z-normalised by SAX,
+ * so their words bound nothing; they are kept in a last bucket whose bound is always 0.
+ *
+ * @author Ryan Faulkner
+ */
+public final class WordBuckets {
+	/** The relative slack taken off the bounds, for the rounding of the PAA and distances. */
+	private static final double SLACK = 1.0E-9D;
+
+	private final SAXWordCodec codec;
+	private final int paaSize;
+	/* The squared symbol distances, scaled by the points per PAA segment */
+	private final double[][] symbolDistances2;
+	/* The word of each bucket, the last bucket has none */
+	private final long[] words;
+	/* The positions of bucket b are positions[offsets[b]] to positions[offsets[b + 1] - 1] */
+	private final int[] offsets;
+	private final int[] positions;
+	/* The bucket of each position */
+	private final int[] buckets;
+
+	/**
+	 * Constructor.
+	 * @param series		The time series.
+	 * @param windowSize	The sliding window size.
+	 * @param paaSize		The PAA size.
+	 * @param alphabetSize	The alphabet size.
+	 * @param nThreshold	The normalisation threshold value.
+	 * @param invSigmas		The inverse window standard deviations, 0 for flat windows.
+	 * @param visitOrder	The order positions are visited in within a bucket.
+	 * @throws SAXException if the words can't be packed.
+	 */
+	public WordBuckets(double[] series, int windowSize, int paaSize, int alphabetSize, double nThreshold,
+			double[] invSigmas, int[] visitOrder) throws SAXException {
+		this.codec = new SAXWordCodec(paaSize, alphabetSize);
+		this.paaSize = paaSize;
+
+		// the distances between the symbol intervals, from the cuts the words are assigned with;
+		// the tabled distances of NormalAlphabet are rounded and can exceed the gaps between cuts
+		double[] cuts = new NormalAlphabet().getCuts(alphabetSize);
+		double scale = (double) windowSize / paaSize;
+		this.symbolDistances2 = new double[alphabetSize][alphabetSize];
+		for (int r = 0; r < alphabetSize; r++)
+			for (int c = 0; c < alphabetSize; c++)
+				if (Math.abs(r - c) > 1) {
+					double d = cuts[Math.max(r, c) - 1] - cuts[Math.min(r, c)];
+					symbolDistances2[r][c] = scale * d * d;
+				}
+
+		CompactSAXRecords sax = new SAXProcessor().ts2compactSaxViaWindow(series, windowSize, paaSize, alphabetSize,
+				NumerosityReductionStrategy.NONE, nThreshold);
+		int unbounded = sax.getWordCount();
+		this.words = new long[unbounded];
+		for (int id = 0; id < unbounded; id++)
+			words[id] = sax.getWord(id);
+
+		// the word ids of the windows, in position order as nothing was reduced
+		this.buckets = new int[sax.size()];
+		for (int i = 0; i < buckets.length; i++)
+			buckets[i] = (invSigmas[i] == 0.0D || 1.0D / invSigmas[i] < nThreshold * (1.0D + SLACK))
+					? unbounded : sax.getWordIdAt(i);
+
+		this.offsets = new int[unbounded + 2];
+		for (int i = 0; i < buckets.length; i++)
+			offsets[buckets[i] + 1]++;
+		for (int b = 0; b <= unbounded; b++)
+			offsets[b + 1] += offsets[b];
+		int[] fill = new int[unbounded + 1];
+		System.arraycopy(offsets, 0, fill, 0, fill.length);
+		this.positions = new int[buckets.length];
+		for (int pos : visitOrder)
+			positions[fill[buckets[pos]]++] = pos;
+	}
+
+	/**
+	 * Get the number of buckets, the one of the unbounded windows included.
+	 * @return the number of buckets.
+	 */
+	public int size() {
+		return words.length + 1;
+	}
+
+	/**
+	 * Get the bucket of a window.
+	 * @param position The window position.
+	 * @return the bucket.
+	 */
+	public int getBucket(int position) {
+		return buckets[position];
+	}
+
+	/**
+	 * Get the index of the first position of a bucket.
+	 * @param bucket The bucket.
+	 * @return the index, for getPosition.
+	 */
+	public int start(int bucket) {
+		return offsets[bucket];
+	}
+
+	/**
+	 * Get the index after the last position of a bucket.
+	 * @param bucket The bucket.
+	 * @return the index, for getPosition.
+	 */
+	public int end(int bucket) {
+		return offsets[bucket + 1];
+	}
+
+	/**
+	 * Get a position of a bucket.
+	 * @param index The index, between start and end of the bucket.
+	 * @return the window position.
+	 */
+	public int getPosition(int index) {
+		return positions[index];
+	}
+
+	/**
+	 * Computes the squared lower bound of the distance between the windows of two buckets.
+	 * @param a The first bucket.
+	 * @param b The second bucket.
+	 * @return the squared MINDIST, less the slack for rounding, 0 for the unbounded bucket.
+	 */
+	public double lowerBound2(int a, int b) {
+		if (a >= words.length || b >= words.length || a == b)
+			return 0.0D;
+		long wa = words[a];
+		long wb = words[b];
+		double sum = 0.0D;
+		for (int i = 0; i < paaSize; i++)
+			sum += symbolDistances2[codec.symbol(wa, i)][codec.symbol(wb, i)];
+		return sum * (1.0D - SLACK);
+	}
+}
@@ -0,0 +1,129 @@
+package uk.ac.reading.cs.knime.sax;
+
+import java.text.ParseException;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * Reads numeric table columns straight into primitive arrays.
+ * Cells implementing DoubleValue are read without any string conversion; other cells are
+ * parsed from their string representation, as the readers did before.
+ *
+ * @author Ryan Faulkner
+ */
+public final class ColumnReader {
+	/** The number of rows between two progress reports and cancellation checks. */
+	private static final int REPORT_INTERVAL = 1 << 16;
+
+	/**
+	 * Constructor.
+	 */
+	private ColumnReader() {}
+
+	/**
+	 * Reads a numeric column into a pre-sized array.
+	 * @param table			The input table.
+	 * @param column		The column index.
+	 * @param fillMissing	If true missing cells take the last value seen before them (or the first value
+	 * 						seen after them at the start of the column), otherwise they are read as NaN.
+	 * @param exec			The monitor to report progress to and check for cancellation.
+	 * @return the column values.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 */
+	public static double[] readDoubleColumn(BufferedDataTable table, int column, boolean fillMissing, ExecutionMonitor exec)
+			throws CanceledExecutionException {
+		if (column < 0)
+			throw new IllegalArgumentException("The time series column is not present in the input table.");
+		long rows = checkSize(table);
+
+		double[] res = new double[(int) rows];
+		int firstValue = -1;
+		int i = 0;
+		CloseableRowIterator it = table.iterator();
+		try {
+			while (it.hasNext()) {
+				DataCell cell = it.next().getCell(column);
+				if (cell.isMissing()) {
+					res[i] = (fillMissing && firstValue >= 0) ? res[i - 1] : Double.NaN;
+				} else {
+					res[i] = getDouble(cell);
+					if (firstValue < 0)
+						firstValue = i;
+				}
+				i++;
+				if ((i % REPORT_INTERVAL) == 0) {
+					exec.checkCanceled();
+					exec.setProgress((double) i / rows, "Read " + i + " of " + rows + " rows");
+				}
+			}
+		} finally {
+			it.close();
+		}
+		// back-fill the missing cells at the start of the column
+		if (fillMissing && firstValue > 0)
+			for (int j = 0; j < firstValue; j++)
+				res[j] = res[firstValue];
+		return res;
+	}
+
+	/**
+	 * Reads a timestamp column into a pre-sized array of epoch milliseconds.
+	 * @param table		The input table.
+	 * @param column	The column index.
+	 * @param converter	The converter of the column's cells, missing cells become TimestampConverter.MISSING.
+	 * @param exec		The monitor to report progress to and check for cancellation.
+	 * @return the timestamps.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 * @throws ParseException if a timestamp can't be parsed.
+	 */
+	public static long[] readTimestampColumn(BufferedDataTable table, int column, TimestampConverter converter,
+			ExecutionMonitor exec) throws CanceledExecutionException, ParseException {
+		if (column < 0)
+			throw new IllegalArgumentException("The timestamp column is not present in the input table.");
+		long rows = checkSize(table);
+
+		long[] res = new long[(int) rows];
+		int i = 0;
+		CloseableRowIterator it = table.iterator();
+		try {
+			while (it.hasNext()) {
+				res[i++] = converter.toMillis(it.next().getCell(column));
+				if ((i % REPORT_INTERVAL) == 0) {
+					exec.checkCanceled();
+					exec.setProgress((double) i / rows, "Read " + i + " of " + rows + " timestamps");
+				}
+			}
+		} finally {
+			it.close();
+		}
+		return res;
+	}
+
+	/**
+	 * Checks that a column of the table fits into an array.
+	 * @param table The input table.
+	 * @return the number of rows.
+	 */
+	private static long checkSize(BufferedDataTable table) {
+		long rows = table.size();
+		if (rows > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many rows for an in-memory time series: " + rows);
+		return rows;
+	}
+
+	/**
+	 * Reads the value of a cell which is not missing.
+	 * @param cell	The cell.
+	 * @return the cell value.
+	 */
+	public static double getDouble(DataCell cell) {
+		if (cell instanceof DoubleValue)
+			return ((DoubleValue) cell).getDoubleValue();
+		return Double.parseDouble(cell.toString());
+	}
+}
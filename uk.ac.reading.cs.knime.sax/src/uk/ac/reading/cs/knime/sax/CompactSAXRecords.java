@@ -0,0 +1,363 @@
+package uk.ac.reading.cs.knime.sax;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+
+/**
+ * The compact counterpart of SAXRecords. Words are packed into longs by a SAXWordCodec and
+ * every occurrence costs two ints: its position and the id of its word. The word to positions
+ * index is a pair of int arrays built on demand, so no per-occurrence objects are kept.
+ * Occurrences must be added in ascending position order, as the sliding window produces them.
+ *
+ * @author Ryan Faulkner
+ */
+public class CompactSAXRecords {
+	private final SAXWordCodec codec;
+
+	/* Occurrences, in position order */
+	private int[] positions;
+	private int[] wordIds;
+	private int size;
+	private final BitSet removed;
+	private int removedCount;
+
+	/* Word dictionary */
+	private long[] words;
+	private int[] frequency;
+	private int wordCount;
+	private final LongIntHashMap dictionary;
+
+	/* Word to occurrences index, null until built */
+	private int[] offsets;
+	private int[] byWord;
+
+	/**
+	 * Constructor.
+	 * @param codec		The word codec.
+	 * @param expected	The expected number of occurrences.
+	 */
+	public CompactSAXRecords(SAXWordCodec codec, int expected) {
+		this.codec = codec;
+		this.positions = new int[Math.max(16, expected)];
+		this.wordIds = new int[positions.length];
+		this.removed = new BitSet();
+		this.words = new long[64];
+		this.frequency = new int[64];
+		this.dictionary = new LongIntHashMap(64);
+	}
+
+	/**
+	 * Get the codec words are packed with.
+	 * @return the codec.
+	 */
+	public SAXWordCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Adds a single packed word and index entry.
+	 * @param word	The packed word.
+	 * @param idx	The index, greater than any index added before.
+	 */
+	public void add(long word, int idx) {
+		if (size > 0 && positions[size - 1] >= idx)
+			throw new IllegalArgumentException("Occurrences must be added in ascending order: " + idx);
+		append(intern(word), idx);
+	}
+
+	/**
+	 * Appends the occurrences of another collection of words packed the same way, from one of its
+	 * slots on. Removed occurrences are skipped and every distinct word is looked up only once.
+	 * @param records	The records, positions greater than any index added before.
+	 * @param fromSlot	The first slot to append.
+	 */
+	public void addAll(CompactSAXRecords records, int fromSlot) {
+		if (fromSlot >= records.size)
+			return;
+		if (size > 0 && positions[size - 1] >= records.positions[fromSlot])
+			throw new IllegalArgumentException("Occurrences must be added in ascending order: " + records.positions[fromSlot]);
+		int needed = size + records.size - fromSlot;
+		if (needed > positions.length) {
+			positions = Arrays.copyOf(positions, needed);
+			wordIds = Arrays.copyOf(wordIds, needed);
+		}
+		int[] remap = new int[records.wordCount];
+		Arrays.fill(remap, LongIntHashMap.NO_VALUE);
+		for (int slot = fromSlot; slot < records.size; slot++) {
+			if (records.removed.get(slot))
+				continue;
+			int id = records.wordIds[slot];
+			if (remap[id] == LongIntHashMap.NO_VALUE)
+				remap[id] = intern(records.words[id]);
+			append(remap[id], records.positions[slot]);
+		}
+	}
+
+	/**
+	 * Adds a single string and index entry.
+	 * @param str	The string.
+	 * @param idx	The index, greater than any index added before.
+	 */
+	public void add(char[] str, int idx) {
+		add(codec.pack(str), idx);
+	}
+
+	/**
+	 * Get the collection size in indexes.
+	 * @return the collection size in indexes.
+	 */
+	public int size() {
+		return size - removedCount;
+	}
+
+	/**
+	 * Get the number of distinct words ever added, including the ones all occurrences of which were removed.
+	 * @return the number of word ids.
+	 */
+	public int getWordCount() {
+		return wordCount;
+	}
+
+	/**
+	 * Get a packed word by its id.
+	 * @param id The word id.
+	 * @return the packed word.
+	 */
+	public long getWord(int id) {
+		return words[id];
+	}
+
+	/**
+	 * Get the number of occurrences of a word.
+	 * @param id The word id.
+	 * @return the word frequency.
+	 */
+	public int getFrequency(int id) {
+		return frequency[id];
+	}
+
+	/**
+	 * Get the id of a packed word.
+	 * @param word The packed word.
+	 * @return the word id, or -1 if the word is unknown.
+	 */
+	public int getWordId(long word) {
+		return dictionary.get(word);
+	}
+
+	/**
+	 * Get the number of occurrence slots, including removed ones. Slots are in position order.
+	 * @return the number of slots.
+	 */
+	public int getSlotCount() {
+		return size;
+	}
+
+	/**
+	 * Get the position stored in a slot.
+	 * @param slot The slot.
+	 * @return the position in the time series.
+	 */
+	public int getPositionAt(int slot) {
+		return positions[slot];
+	}
+
+	/**
+	 * Get the word id stored in a slot.
+	 * @param slot The slot.
+	 * @return the word id.
+	 */
+	public int getWordIdAt(int slot) {
+		return wordIds[slot];
+	}
+
+	/**
+	 * Checks whether a slot was removed.
+	 * @param slot The slot.
+	 * @return true if removed.
+	 */
+	public boolean isRemoved(int slot) {
+		return removed.get(slot);
+	}
+
+	/**
+	 * Finds the slot of a position.
+	 * @param idx The position.
+	 * @return the slot, or -1 if the position is not indexed.
+	 */
+	public int findSlot(int idx) {
+		int slot = Arrays.binarySearch(positions, 0, size, idx);
+		if (slot < 0 || removed.get(slot))
+			return -1;
+		return slot;
+	}
+
+	/**
+	 * Get the positions of a word's occurrences, in ascending order.
+	 * @param id The word id.
+	 * @return the positions.
+	 */
+	public int[] getPositions(int id) {
+		buildIndex();
+		int[] res = new int[frequency[id]];
+		int count = 0;
+		for (int i = offsets[id]; i < offsets[id + 1]; i++)
+			if (!removed.get(byWord[i]))
+				res[count++] = positions[byWord[i]];
+		return res;
+	}
+
+	/**
+	 * Get all indexes, sorted.
+	 * @return all the indexes.
+	 */
+	public int[] getAllIndices() {
+		int[] res = new int[size()];
+		int count = 0;
+		for (int slot = 0; slot < size; slot++)
+			if (!removed.get(slot))
+				res[count++] = positions[slot];
+		return res;
+	}
+
+	/**
+	 * Gets an entry by the index.
+	 * @param idx The index.
+	 * @return The entry, or null if the index is not present.
+	 */
+	public SAXRecord getByIndex(int idx) {
+		int slot = findSlot(idx);
+		if (slot < 0)
+			return null;
+		return toRecord(wordIds[slot]);
+	}
+
+	/**
+	 * Get a SAX record by the string key.
+	 * @param str The query string.
+	 * @return the record if exists.
+	 */
+	public SAXRecord getByWord(String str) {
+		if (str.length() != codec.getPaaSize())
+			return null;
+		int id = dictionary.get(codec.pack(str.toCharArray()));
+		if (id == LongIntHashMap.NO_VALUE || frequency[id] == 0)
+			return null;
+		return toRecord(id);
+	}
+
+	/**
+	 * Drops a single entry.
+	 * @param idx the index.
+	 */
+	public void dropByIndex(int idx) {
+		int slot = findSlot(idx);
+		if (slot >= 0) {
+			removed.set(slot);
+			removedCount++;
+			frequency[wordIds[slot]]--;
+		}
+	}
+
+	/**
+	 * Removes occurrences that correspond to these positions.
+	 * @param positions The positions to clear.
+	 */
+	public void excludePositions(ArrayList<Integer> positions) {
+		for (Integer p : positions)
+			dropByIndex(p);
+	}
+
+	/**
+	 * Get motifs.
+	 * @param num how many motifs to report.
+	 * @return the array of motif SAXRecords.
+	 */
+	public ArrayList<SAXRecord> getMotifs(int num) {
+		ArrayList<SAXRecord> res = new ArrayList<SAXRecord>(num);
+		DoublyLinkedSortedList<Integer> list = new DoublyLinkedSortedList<Integer>(num, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return Integer.compare(frequency[o1], frequency[o2]);
+			}
+		});
+		for (int id = 0; id < wordCount; id++)
+			if (frequency[id] > 0)
+				list.addElement(id);
+		Iterator<Integer> i = list.iterator();
+		while (i.hasNext())
+			res.add(toRecord(i.next()));
+		return res;
+	}
+
+	/**
+	 * This builds the word to occurrences index; it is rebuilt lazily after additions.
+	 */
+	public void buildIndex() {
+		if (offsets != null)
+			return;
+		int[] start = new int[wordCount + 1];
+		for (int slot = 0; slot < size; slot++)
+			start[wordIds[slot] + 1]++;
+		for (int id = 0; id < wordCount; id++)
+			start[id + 1] += start[id];
+		int[] fill = Arrays.copyOf(start, wordCount);
+		int[] index = new int[size];
+		for (int slot = 0; slot < size; slot++)
+			index[fill[wordIds[slot]]++] = slot;
+		this.byWord = index;
+		this.offsets = start;
+	}
+
+	/**
+	 * Get the id of a packed word, adding it to the dictionary if it is new.
+	 * @param word The packed word.
+	 * @return the word id.
+	 */
+	private int intern(long word) {
+		int id = dictionary.get(word);
+		if (id == LongIntHashMap.NO_VALUE) {
+			if (wordCount == words.length) {
+				words = Arrays.copyOf(words, wordCount * 2);
+				frequency = Arrays.copyOf(frequency, wordCount * 2);
+			}
+			id = wordCount++;
+			words[id] = word;
+			dictionary.put(word, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Appends an occurrence of a known word.
+	 * @param id	The word id.
+	 * @param idx	The index.
+	 */
+	private void append(int id, int idx) {
+		if (size == positions.length) {
+			positions = Arrays.copyOf(positions, size + (size >> 1));
+			wordIds = Arrays.copyOf(wordIds, positions.length);
+		}
+		positions[size] = idx;
+		wordIds[size] = id;
+		size++;
+		frequency[id]++;
+		offsets = null;
+	}
+
+	/**
+	 * Materialises a word and its current occurrences as a SAXRecord.
+	 * @param id The word id.
+	 * @return the record.
+	 */
+	private SAXRecord toRecord(int id) {
+		int[] occurrences = getPositions(id);
+		SAXRecord rec = new SAXRecord(codec.unpack(words[id], new char[codec.getPaaSize()]), occurrences[0]);
+		for (int i = 1; i < occurrences.length; i++)
+			rec.addIndex(occurrences[i]);
+		return rec;
+	}
+}
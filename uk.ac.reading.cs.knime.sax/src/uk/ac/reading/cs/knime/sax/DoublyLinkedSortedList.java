@@ -125,9 +125,9 @@ public class DoublyLinkedSortedList<T> {
 					newNode.prev = prev;
 					size++;
 				}
-				if (size > this.maxSize)
-					dropLastElement();
 			}
+			if (size > this.maxSize)
+				dropLastElement();
 		}
 	}
 
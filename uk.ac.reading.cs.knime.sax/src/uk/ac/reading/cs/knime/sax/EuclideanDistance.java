@@ -39,7 +39,7 @@ public final class EuclideanDistance {
 	 * @throws Exception In the case of error.
 	 */
 	public double distance(int[] point1, int[] point2) throws Exception {
-		return Math.sqrt(Long.valueOf(distance2(point1, point2)).doubleValue());
+		return Math.sqrt((double) distance2(point1, point2));
 	}
 
 	/**
@@ -62,7 +62,7 @@ public final class EuclideanDistance {
 	 */
 	public double distance2(double[] point1, double[] point2) throws Exception {
 		if (point1.length == point2.length) {
-			Double sum = 0D;
+			double sum = 0D;
 			for (int i = 0; i < point1.length; i++) {
 				double tmp = point2[i] - point1[i];
 				sum = sum + tmp * tmp;
@@ -100,7 +100,7 @@ public final class EuclideanDistance {
 	 */
 	public double seriesDistance(double[][] series1, double[][] series2) throws Exception {
 		if (series1.length == series2.length) {
-			Double res = 0D;
+			double res = 0D;
 			for (int i = 0; i < series1.length; i++)
 				res = res + distance2(series1[i], series2[i]);
 			return Math.sqrt(res);
@@ -127,12 +127,12 @@ public final class EuclideanDistance {
 	 * @return the distance if it is less than cutoff or Double.NAN if it is above.
 	 * @throws Exception if error occurs.
 	 */
-	public Double earlyAbandonedDistance(double[] series1, double[] series2, double cutoff) throws Exception {
+	public double earlyAbandonedDistance(double[] series1, double[] series2, double cutoff) throws Exception {
 		if (series1.length == series2.length) {
 			double cutOff2 = cutoff;
 			if (Double.MAX_VALUE != cutoff)
 				cutOff2 = cutoff * cutoff;
-			Double res = 0D;
+			double res = 0D;
 			for (int i = 0; i < series1.length; i++) {
 				res = res + distance2(series1[i], series2[i]);
 				if (res > cutOff2)
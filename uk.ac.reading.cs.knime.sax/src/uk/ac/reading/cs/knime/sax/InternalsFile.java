@@ -0,0 +1,161 @@
+package uk.ac.reading.cs.knime.sax;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads and writes the binary files the node internals are saved to, so the views of a
+ * reloaded workflow open without executing it again. A file starts with a magic number telling
+ * what it holds and a format version; arrays are written as their length followed by their
+ * values, big-endian. Files are memory mapped to be read, the arrays copied out in bulk.
+ *
+ * @author Ryan Faulkner
+ */
+public final class InternalsFile {
+	/** The version of the format. */
+	private static final int VERSION = 1;
+
+	/**
+	 * Constructor.
+	 */
+	private InternalsFile() {}
+
+	/**
+	 * Creates a file and writes its header.
+	 * @param file	The file.
+	 * @param magic	The magic number of the content.
+	 * @return the stream to write the content to.
+	 * @throws IOException if the file can't be written.
+	 */
+	public static DataOutputStream create(File file, int magic) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		out.writeInt(magic);
+		out.writeInt(VERSION);
+		return out;
+	}
+
+	/**
+	 * Maps a file and checks its header.
+	 * @param file	The file.
+	 * @param magic	The magic number of the content expected.
+	 * @return the content, positioned after the header.
+	 * @throws IOException if the file can't be read or holds something else.
+	 */
+	public static ByteBuffer map(File file, int magic) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < 8 || buffer.getInt() != magic || buffer.getInt() != VERSION)
+				throw new IOException("The internals file " + file.getName() + " has an unknown format.");
+			return buffer;
+		}
+	}
+
+	/**
+	 * Writes an array of doubles.
+	 * @param out		The stream.
+	 * @param values	The values.
+	 * @throws IOException if the file can't be written.
+	 */
+	public static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+		out.writeInt(values.length);
+		for (double v : values)
+			out.writeDouble(v);
+	}
+
+	/**
+	 * Reads an array of doubles.
+	 * @param in The mapped file.
+	 * @return the values.
+	 */
+	public static double[] readDoubles(ByteBuffer in) {
+		double[] values = new double[in.getInt()];
+		in.asDoubleBuffer().get(values);
+		in.position(in.position() + values.length * Double.BYTES);
+		return values;
+	}
+
+	/**
+	 * Writes an array of longs.
+	 * @param out		The stream.
+	 * @param values	The values.
+	 * @throws IOException if the file can't be written.
+	 */
+	public static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+		out.writeInt(values.length);
+		for (long v : values)
+			out.writeLong(v);
+	}
+
+	/**
+	 * Reads an array of longs.
+	 * @param in The mapped file.
+	 * @return the values.
+	 */
+	public static long[] readLongs(ByteBuffer in) {
+		long[] values = new long[in.getInt()];
+		in.asLongBuffer().get(values);
+		in.position(in.position() + values.length * Long.BYTES);
+		return values;
+	}
+
+	/**
+	 * Writes a string in UTF-8, null included.
+	 * @param out	The stream.
+	 * @param str	The string.
+	 * @throws IOException if the file can't be written.
+	 */
+	public static void writeString(DataOutputStream out, String str) throws IOException {
+		if (str == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string.
+	 * @param in The mapped file.
+	 * @return the string, which may be null.
+	 */
+	public static String readString(ByteBuffer in) {
+		int length = in.getInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes an array of strings.
+	 * @param out		The stream.
+	 * @param strings	The strings.
+	 * @throws IOException if the file can't be written.
+	 */
+	public static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+		out.writeInt(strings.length);
+		for (String str : strings)
+			writeString(out, str);
+	}
+
+	/**
+	 * Reads an array of strings.
+	 * @param in The mapped file.
+	 * @return the strings.
+	 */
+	public static String[] readStrings(ByteBuffer in) {
+		String[] strings = new String[in.getInt()];
+		for (int i = 0; i < strings.length; i++)
+			strings[i] = readString(in);
+		return strings;
+	}
+}
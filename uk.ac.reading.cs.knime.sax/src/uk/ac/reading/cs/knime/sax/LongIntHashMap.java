@@ -0,0 +1,91 @@
+package uk.ac.reading.cs.knime.sax;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from long keys to non-negative int values, without boxing.
+ *
+ * @author Ryan Faulkner
+ */
+final class LongIntHashMap {
+	/** The value reported for absent keys. */
+	static final int NO_VALUE = -1;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+	private int shift;
+
+	/**
+	 * Constructor.
+	 * @param expected The expected number of keys.
+	 */
+	LongIntHashMap(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+		allocate(capacity);
+	}
+
+	/**
+	 * Get the value of a key.
+	 * @param key The key.
+	 * @return the value, or NO_VALUE if the key is absent.
+	 */
+	int get(long key) {
+		int slot = slot(key);
+		while (values[slot] != NO_VALUE) {
+			if (keys[slot] == key)
+				return values[slot];
+			slot = (slot + 1) & (keys.length - 1);
+		}
+		return NO_VALUE;
+	}
+
+	/**
+	 * Associates a value with a key.
+	 * @param key	The key.
+	 * @param value	The value, non-negative.
+	 */
+	void put(long key, int value) {
+		int slot = slot(key);
+		while (values[slot] != NO_VALUE) {
+			if (keys[slot] == key) {
+				values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & (keys.length - 1);
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size * 2 > keys.length)
+			rehash();
+	}
+
+	/**
+	 * Get the number of keys.
+	 * @return the number of keys.
+	 */
+	int size() {
+		return size;
+	}
+
+	private int slot(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+		Arrays.fill(values, NO_VALUE);
+		this.shift = Long.SIZE - Integer.numberOfTrailingZeros(capacity);
+	}
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(keys.length << 1);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++)
+			if (oldValues[i] != NO_VALUE)
+				put(oldKeys[i], oldValues[i]);
+	}
+}
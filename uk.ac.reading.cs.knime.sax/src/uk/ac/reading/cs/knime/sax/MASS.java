@@ -0,0 +1,324 @@
+package uk.ac.reading.cs.knime.sax;
+
+import java.util.Arrays;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * Mueen's Algorithm for Similarity Search. The dot products of a query with every subsequence
+ * of a series are one convolution, computed in O(n log n) with a fast Fourier transform instead
+ * of O(nm) by sliding the query along the series. Long series are convolved block by block, so
+ * memory doesn't grow with the series and the transforms stay in cache.
+ *
+ * An instance holds the window statistics of a series, which are shared by all queries of a
+ * given length, and computes their Z-normalised distance profiles. The subsequences are
+ * normalised by their sample standard deviation, and the ones flat or deviating less than the
+ * normalisation threshold to zeros, as the discord searches do.
+ *
+ * @author Ryan Faulkner
+ */
+public final class MASS {
+	/** The transform size long series are convolved with, unless the query needs a larger one. */
+	private static final int BLOCK = 1 << 16;
+	/** The number of windows after which the running statistics are recomputed. */
+	private static final int REFRESH = 1 << 12;
+
+	private final double[] series;
+	private final int queryLength;
+	private final double nThreshold;
+	private final double[] means;
+	/* The inverse standard deviations of the windows, 0 for the windows which are not normalised */
+	private final double[] invSigmas;
+
+	/**
+	 * Constructor.
+	 * @param series		The time series.
+	 * @param queryLength	The length of the queries.
+	 * @param nThreshold	The normalisation threshold value.
+	 * @throws SAXException if the query length doesn't fit the series.
+	 */
+	public MASS(double[] series, int queryLength, double nThreshold) throws SAXException {
+		if (queryLength < 1 || queryLength > series.length)
+			throw new SAXException("The query length must be between 1 and the series length.");
+		// distances don't change when the series is shifted, centring it keeps the dot products small
+		double mean = TSProcessor.mean(series);
+		this.series = new double[series.length];
+		for (int i = 0; i < series.length; i++)
+			this.series[i] = series[i] - mean;
+		this.queryLength = queryLength;
+		this.nThreshold = nThreshold;
+		this.means = new double[series.length - queryLength + 1];
+		this.invSigmas = new double[means.length];
+		computeStatistics();
+	}
+
+	/**
+	 * Computes the Z-normalised Euclidean distance of a query to every subsequence of the series.
+	 * A query or subsequence which is not normalised is as far from a normalised one as the
+	 * latter is from zero.
+	 * @param query	The query.
+	 * @param exec	The monitor to report progress to.
+	 * @return the distances, the one of the subsequence starting at i at index i.
+	 * @throws SAXException if the query length isn't the one the statistics are computed for.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 */
+	public double[] distanceProfile(double[] query, ExecutionMonitor exec) throws SAXException, CanceledExecutionException {
+		int m = queryLength;
+		if (query.length != m)
+			throw new SAXException("The query length must be " + m + ".");
+		double mean = TSProcessor.mean(query);
+		double squares = 0.0D;
+		boolean flat = true;
+		for (int k = 0; k < m; k++) {
+			squares += (query[k] - mean) * (query[k] - mean);
+			flat &= query[k] == query[0];
+		}
+		double invSigma = invSigma(flat, (m > 1) ? squares / (m - 1) : 0.0D);
+
+		// a normalised subsequence is sqrt(m - 1) from zero
+		double[] profile = slidingDotProducts(query, series, exec);
+		for (int i = 0; i < profile.length; i++) {
+			if (invSigma == 0.0D || invSigmas[i] == 0.0D) {
+				profile[i] = (invSigma == invSigmas[i]) ? 0.0D : Math.sqrt(m - 1);
+				continue;
+			}
+			double d2 = 2.0D * (m - 1) - 2.0D * (profile[i] - m * mean * means[i]) * invSigma * invSigmas[i];
+			profile[i] = (d2 > 0.0D) ? Math.sqrt(d2) : 0.0D;
+		}
+		return profile;
+	}
+
+	/**
+	 * Finds the subsequences closest to a query. A window around each match is excluded from the
+	 * following ones, so matches don't overlap. A match excludes at most 2m - 1 positions, so the
+	 * k matches are among the (k - 1)(2m - 1) + 1 closest positions, which are kept in a heap in
+	 * one pass over the profile and then walked closest first, ties by position.
+	 * @param profile	The distance profile of the query.
+	 * @param k			The number of matches.
+	 * @return the positions of the matches, closest first.
+	 */
+	public int[] topMatches(double[] profile, int k) {
+		if (k < 1 || profile.length == 0)
+			return new int[0];
+		long closest = (long) (Math.min(k, profile.length) - 1) * (2 * queryLength - 1) + 1;
+		// a heap of the closest positions so far, the farthest of them at the root
+		int[] heap = new int[(int) Math.min(profile.length, closest)];
+		int count = 0;
+		for (int i = 0; i < profile.length; i++) {
+			if (count < heap.length) {
+				int c = count++;
+				while (c > 0 && isCloser(profile, heap[(c - 1) / 2], i)) {
+					heap[c] = heap[(c - 1) / 2];
+					c = (c - 1) / 2;
+				}
+				heap[c] = i;
+			} else if (isCloser(profile, i, heap[0]))
+				siftDown(profile, heap, i, count);
+		}
+		// the farthest comes off first, so the order is filled from its end
+		int[] order = new int[count];
+		while (count > 0) {
+			order[--count] = heap[0];
+			if (count > 0)
+				siftDown(profile, heap, heap[count], count);
+		}
+
+		boolean[] excluded = new boolean[profile.length];
+		int[] matches = new int[Math.min(k, profile.length)];
+		int found = 0;
+		for (int i = 0; i < order.length && found < matches.length; i++) {
+			int best = order[i];
+			if (excluded[best])
+				continue;
+			matches[found++] = best;
+			int markEnd = Math.min(profile.length, best + queryLength);
+			for (int j = Math.max(0, best - queryLength + 1); j < markEnd; j++)
+				excluded[j] = true;
+		}
+		return Arrays.copyOf(matches, found);
+	}
+
+	/**
+	 * Puts a position at the root of a heap of positions and moves it down to its place.
+	 * @param profile	The distance profile.
+	 * @param heap		The heap, the farthest position at the root.
+	 * @param position	The position.
+	 * @param count		The number of positions in the heap.
+	 */
+	private static void siftDown(double[] profile, int[] heap, int position, int count) {
+		int c = 0;
+		while (2 * c + 1 < count) {
+			int child = 2 * c + 1;
+			if (child + 1 < count && isCloser(profile, heap[child], heap[child + 1]))
+				child++;
+			if (!isCloser(profile, position, heap[child]))
+				break;
+			heap[c] = heap[child];
+			c = child;
+		}
+		heap[c] = position;
+	}
+
+	/**
+	 * Tells if a position is closer to the query than another one, ties by position.
+	 * @param profile	The distance profile.
+	 * @param a			A position.
+	 * @param b			Another position.
+	 * @return true if a comes first.
+	 */
+	private static boolean isCloser(double[] profile, int a, int b) {
+		int c = Double.compare(profile[a], profile[b]);
+		return c < 0 || (c == 0 && a < b);
+	}
+
+	/**
+	 * Get the inverse standard deviation a subsequence is normalised by.
+	 * @param flat		Whether all the values of the subsequence are equal.
+	 * @param variance	The sample variance of the subsequence.
+	 * @return the inverse, 0 if the subsequence is flat or deviates less than the threshold.
+	 */
+	private double invSigma(boolean flat, double variance) {
+		double sd = (variance > 0.0D) ? Math.sqrt(variance) : 0.0D;
+		return (flat || sd < nThreshold || sd == 0.0D) ? 0.0D : 1.0D / sd;
+	}
+
+	/**
+	 * Computes the mean and deviation of every window with running sums. The sums are shifted
+	 * by the first value of a run, so the variance doesn't cancel out. Windows are flat when all
+	 * their values are equal, which running sums can't tell exactly.
+	 */
+	private void computeStatistics() {
+		int m = queryLength;
+		double shift = 0, sum = 0, squares = 0;
+		// the number of values in the window differing from the one before them
+		int changes = 0;
+		for (int k = 1; k < m; k++)
+			if (series[k] != series[k - 1])
+				changes++;
+		for (int i = 0; i < means.length; i++) {
+			if (i > 0) {
+				if (series[i] != series[i - 1])
+					changes--;
+				if (series[i + m - 1] != series[i + m - 2])
+					changes++;
+			}
+			if (i % REFRESH == 0) {
+				shift = series[i];
+				sum = 0;
+				squares = 0;
+				for (int k = i; k < i + m; k++) {
+					double v = series[k] - shift;
+					sum += v;
+					squares += v * v;
+				}
+			} else {
+				double in = series[i + m - 1] - shift;
+				double out = series[i - 1] - shift;
+				sum += in - out;
+				squares += in * in - out * out;
+			}
+			// the sample variance, as TSProcessor.stDev and the SAX words use
+			means[i] = sum / m + shift;
+			invSigmas[i] = invSigma(changes == 0, (m > 1) ? (squares - sum * sum / m) / (m - 1) : 0.0D);
+		}
+	}
+
+	/**
+	 * Computes the dot products of a query with every subsequence of a series.
+	 * @param query		The query.
+	 * @param series	The series.
+	 * @param exec		The monitor to report progress to, null when the caller checks for cancellation itself.
+	 * @return the dot products, the one of the subsequence starting at i at index i.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 */
+	public static double[] slidingDotProducts(double[] query, double[] series, ExecutionMonitor exec)
+			throws CanceledExecutionException {
+		int m = query.length;
+		int n = series.length;
+		int size = 1;
+		while (size < n + m - 1 && (size < BLOCK || size < 4 * m))
+			size <<= 1;
+
+		double[] cos = new double[size / 2];
+		double[] sin = new double[size / 2];
+		for (int k = 0; k < cos.length; k++) {
+			cos[k] = Math.cos(2 * Math.PI * k / size);
+			sin[k] = Math.sin(2 * Math.PI * k / size);
+		}
+
+		// the convolution with the reversed query gives the dot products
+		double[] queryRe = new double[size];
+		double[] queryIm = new double[size];
+		for (int i = 0; i < m; i++)
+			queryRe[i] = query[m - 1 - i];
+		fft(queryRe, queryIm, cos, sin, false);
+
+		// each block gives the products of the windows starting in its first size - m + 1 values
+		double[] products = new double[n - m + 1];
+		double[] re = new double[size];
+		double[] im = new double[size];
+		for (int start = 0; start < products.length; start += size - m + 1) {
+			if (exec != null)
+				exec.checkCanceled();
+			int len = Math.min(size, n - start);
+			System.arraycopy(series, start, re, 0, len);
+			Arrays.fill(re, len, size, 0.0D);
+			Arrays.fill(im, 0.0D);
+			fft(re, im, cos, sin, false);
+			for (int i = 0; i < size; i++) {
+				double r = re[i] * queryRe[i] - im[i] * queryIm[i];
+				im[i] = re[i] * queryIm[i] + im[i] * queryRe[i];
+				re[i] = r;
+			}
+			fft(re, im, cos, sin, true);
+			int count = Math.min(size - m + 1, products.length - start);
+			for (int i = 0; i < count; i++)
+				products[start + i] = re[i + m - 1] / size;
+			if (exec != null)
+				exec.setProgress((double) (start + count) / products.length);
+		}
+		return products;
+	}
+
+	/**
+	 * In-place iterative radix-2 fast Fourier transform. The inverse transform is not scaled.
+	 * @param re		The real parts, of a power of two length.
+	 * @param im		The imaginary parts.
+	 * @param cos		The cosines of the angles 2 pi k / length, for k below half the length.
+	 * @param sin		The sines of the same angles.
+	 * @param inverse	If true the inverse transform is computed.
+	 */
+	static void fft(double[] re, double[] im, double[] cos, double[] sin, boolean inverse) {
+		int n = re.length;
+		// bit reversal permutation
+		for (int i = 1, j = 0; i < n; i++) {
+			int bit = n >> 1;
+			for (; (j & bit) != 0; bit >>= 1)
+				j ^= bit;
+			j ^= bit;
+			if (i < j) {
+				double t = re[i]; re[i] = re[j]; re[j] = t;
+				t = im[i]; im[i] = im[j]; im[j] = t;
+			}
+		}
+		double sign = inverse ? 1.0D : -1.0D;
+		for (int len = 2; len <= n; len <<= 1) {
+			int half = len >> 1;
+			int stride = n / len;
+			for (int i = 0; i < n; i += len)
+				for (int k = 0; k < half; k++) {
+					double c = cos[k * stride];
+					double s = sign * sin[k * stride];
+					int a = i + k;
+					int b = a + half;
+					double tRe = re[b] * c - im[b] * s;
+					double tIm = re[b] * s + im[b] * c;
+					re[b] = re[a] - tRe;
+					im[b] = im[a] - tIm;
+					re[a] += tRe;
+					im[a] += tIm;
+				}
+		}
+	}
+}
@@ -1,33 +1,40 @@
 package uk.ac.reading.cs.knime.sax;
 
-import java.text.DateFormat;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collections;
 
 import org.knime.core.data.DataCell;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.RowKey;
-import org.knime.core.data.date.DateAndTimeCell;
 import org.knime.core.data.def.DefaultRow;
-import org.knime.core.data.def.StringCell;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.streamable.RowInput;
+import org.knime.core.node.streamable.RowOutput;
 
 /**
  * This implements a simple tool for ad-hoc SAX discretisation.
  * @author Ryan Faulkner
  */
 public final class SAXConverter {
-	String[] ts_d;
+	/** The magic number of the internals file, "SAXC". */
+	private static final int MAGIC = 0x53415843;
+
+	SAXParameters params;
+	long[] ts_d;
+	TimestampConverter stamps;
 	double[] ts;
 	double[] ts_z;
-	ArrayList<PAARecord> paa;
 	SAXRecords res;
+	CompactSAXRecords words;
 	
 	/**
 	 * Constructor.
@@ -37,66 +44,263 @@ public final class SAXConverter {
 	/**
 	 * The main runnable implementing the SAX logic.
 	 * @param  SAXParameters		the parameters parsed from the node dialog box
-	 * @return BufferedDataTable	the discretised representation of the time series input
+	 * @return BufferedDataTable[]	the discretised representation of the time series input and its word dictionary
+	 * @throws CanceledExecutionException if the execution was cancelled.
 	 */
-	public BufferedDataTable run(SAXParameters params, BufferedDataTable[] inData, ExecutionContext exec) {
-		DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-		DateFormat tf = new SimpleDateFormat("HH:mm:ss.SSS");
-
+	public BufferedDataTable[] run(SAXParameters params, BufferedDataTable[] inData, ExecutionContext exec) throws CanceledExecutionException {
 		// Define results collection object 
-		DataTableSpec outSpec = SAXTable.createDataTableSpec();
+		DataTableSpec outSpec = SAXTable.createDataTableSpec(params.SAX_WORD_IDS);
 		BufferedDataContainer container = exec.createDataContainer(outSpec);
+		BufferedDataContainer dictContainer = exec.createDataContainer(SAXTable.createDictionarySpec());
+		WordDictionary dictionary = new WordDictionary(params.SAX_WORD_IDS);
+		this.params = params;
 		
 		try {
 			// Read column data
-			ts_d = TSProcessor.readTSColumn(inData, params.DATECOL);
-			ts = TSProcessor.readColumn(inData, params.COLNAME);
+			// timestamps are converted once, the rows and the view share the milliseconds
+			stamps = new TimestampConverter();
+			ts_d = TSProcessor.readTimestamps(inData, params.DATECOL, stamps, exec);
+			ts = TSProcessor.readColumn(inData, params.COLNAME, exec);
 
 			NormalAlphabet na = new NormalAlphabet();
 			SAXProcessor sp = new SAXProcessor();
 			
 			if(params.SAX_WINDOW_SIZE == 0)
 				res = sp.ts2saxByChunking(ts, params.SAX_PAA_SIZE, na.getCuts(params.SAX_ALPHABET_SIZE), params.SAX_NORM_THRESHOLD);
+			else if(SAXWordCodec.fits(params.SAX_PAA_SIZE, params.SAX_ALPHABET_SIZE))
+				words = sp.ts2compactSaxViaWindow(ts, params.SAX_WINDOW_SIZE, params.SAX_PAA_SIZE, params.SAX_ALPHABET_SIZE, params.SAX_NR_STRATEGY, params.SAX_NORM_THRESHOLD, params.SAX_THREADS);
 			else
-				res = sp.ts2saxViaWindow(ts, params.SAX_WINDOW_SIZE, params.SAX_PAA_SIZE, na.getCuts(params.SAX_ALPHABET_SIZE), params.SAX_NR_STRATEGY, params.SAX_NORM_THRESHOLD);
-			
-			ts_z = TSProcessor.znorm(ts, params.SAX_NORM_THRESHOLD);
-			paa = sp.tsp.paa_idx;
+				res = sp.ts2saxViaWindow(ts, params.SAX_WINDOW_SIZE, params.SAX_PAA_SIZE, na.getCuts(params.SAX_ALPHABET_SIZE), params.SAX_NR_STRATEGY, params.SAX_NORM_THRESHOLD, params.SAX_THREADS);
 			
-			ArrayList<Integer> indexes = new ArrayList<Integer>();
-			indexes.addAll(res.getIndexes());
-			Collections.sort(indexes);
-        
-			RowKey key = null;
-			DataCell[] cells = null;
-			DataRow row = null;
-			for (Integer idx : indexes) {
-				key = new RowKey("Row"+idx);
-				cells = new DataCell[2];
-				//Timestamp: Handle dates
-				Calendar c = Calendar.getInstance();
-				if(ts_d[idx].length()<=12) {
-					//Time only
-					c.setTime(tf.parse(ts_d[idx]));
-					cells[0] = new DateAndTimeCell(c.get(Calendar.HOUR), c.get(Calendar.MINUTE), c.get(Calendar.SECOND), c.get(Calendar.MILLISECOND));
-				} else {
-					//Date and Time
-					c.setTime(df.parse(ts_d[idx]));
-					cells[0] = new DateAndTimeCell(c.get(Calendar.YEAR), c.get(Calendar.MONTH), c.get(Calendar.DAY_OF_MONTH), c.get(Calendar.HOUR), c.get(Calendar.MINUTE), c.get(Calendar.SECOND));
+			if(words != null) {
+				// packed words are kept in position order and numbered as they first appear,
+				// so their ids are the dictionary's and each distinct word is unpacked once
+				for (int id = 0; id < words.getWordCount(); id++)
+					dictionary.define(words.getCodec().toString(words.getWord(id)), words.getFrequency(id));
+				for (int slot = 0; slot < words.getSlotCount(); slot++) {
+					int idx = words.getPositionAt(slot);
+					container.addRowToTable(createRow(idx, stamps.createCell(ts_d[idx]), dictionary.getCell(words.getWordIdAt(slot))));
+				}
+			} else {
+				ArrayList<Integer> indexes = new ArrayList<Integer>();
+				indexes.addAll(res.getIndexes());
+				Collections.sort(indexes);
+				for (Integer idx : indexes) {
+					int id = dictionary.add(String.valueOf(res.getByIndex(idx).getPayload()));
+					container.addRowToTable(createRow(idx, stamps.createCell(ts_d[idx]), dictionary.getCell(id)));
 				}
-				//SAX String
-				cells[1] = new StringCell(String.valueOf(res.getByIndex(idx).getPayload()));
-				//Add cells to row
-				row = new DefaultRow(key,cells);
-				//Add row to table
-				container.addRowToTable(row);
 			}
 			container.close();
+			for (int id = 0; id < dictionary.size(); id++)
+				dictContainer.addRowToTable(dictionary.createRow(id));
+			dictContainer.close();
 		
 		} catch (SAXException | ParseException e) {
 			System.err.println("error occured while parsing parameters." + e.getStackTrace());
 			System.exit(-1);
 		}
-		return container.getTable();
+		return new BufferedDataTable[]{container.getTable(), dictContainer.getTable()};
+	}
+
+	/**
+	 * Saves what the view draws, the series, its timestamps and the parameters, so it opens
+	 * without converting the series again.
+	 * @param file The file.
+	 * @throws IOException if the file can't be written.
+	 */
+	void save(File file) throws IOException {
+		try (DataOutputStream out = InternalsFile.create(file, MAGIC)) {
+			out.writeInt(params.SAX_WINDOW_SIZE);
+			out.writeInt(params.SAX_PAA_SIZE);
+			out.writeInt(params.SAX_ALPHABET_SIZE);
+			out.writeDouble(params.SAX_NORM_THRESHOLD);
+			out.writeBoolean(stamps.hasDate());
+			out.writeBoolean(stamps.hasTime());
+			out.writeBoolean(stamps.hasMillis());
+			InternalsFile.writeDoubles(out, ts);
+			InternalsFile.writeLongs(out, ts_d);
+		}
+	}
+
+	/**
+	 * Loads what the view draws, as it was saved.
+	 * @param file The file.
+	 * @return the converter, which holds no words.
+	 * @throws IOException if the file can't be read.
+	 */
+	static SAXConverter load(File file) throws IOException {
+		ByteBuffer in = InternalsFile.map(file, MAGIC);
+		SAXConverter converter = new SAXConverter();
+		converter.params = new SAXParameters();
+		converter.params.SAX_WINDOW_SIZE = in.getInt();
+		converter.params.SAX_PAA_SIZE = in.getInt();
+		converter.params.SAX_ALPHABET_SIZE = in.getInt();
+		converter.params.SAX_NORM_THRESHOLD = in.getDouble();
+		converter.stamps = new TimestampConverter();
+		converter.stamps.setFields(in.get() != 0, in.get() != 0, in.get() != 0);
+		converter.ts = InternalsFile.readDoubles(in);
+		converter.ts_d = InternalsFile.readLongs(in);
+		return converter;
+	}
+
+	/**
+	 * Get the Z-normalised series for the view, it is only computed once asked for.
+	 * @return the normalised series.
+	 */
+	double[] getNormalisedSeries() {
+		if (ts_z == null)
+			ts_z = TSProcessor.znorm(ts, params.SAX_NORM_THRESHOLD);
+		return ts_z;
+	}
+
+	/**
+	 * Generates the PAA segments drawn by the view. They are not recorded while converting,
+	 * but computed on demand for at most maxWindows windows spread evenly over the series.
+	 * @param maxWindows	The maximal number of windows.
+	 * @return the segments.
+	 * @throws SAXException if the PAA size is greater than the window size.
+	 */
+	ArrayList<PAARecord> getPAARecords(int maxWindows) throws SAXException {
+		ArrayList<PAARecord> records = new ArrayList<PAARecord>();
+		int paaSize = params.SAX_PAA_SIZE;
+		if(params.SAX_WINDOW_SIZE == 0) {
+			// the whole series makes up a single word, the trivial case has no segments
+			if(ts.length > paaSize) {
+				double[] paa = new TSProcessor().paa(getNormalisedSeries(), paaSize);
+				double pointsPerSegment = (double) ts.length / (double) paaSize;
+				for (int i = 0; i < paaSize; i++)
+					records.add(new PAARecord(i * pointsPerSegment, (i + 1) * pointsPerSegment, paa[i]));
+			}
+			return records;
+		}
+		RollingSAXProcessor rsp = new RollingSAXProcessor(ts, params.SAX_WINDOW_SIZE, paaSize, params.SAX_NORM_THRESHOLD);
+		double[] paa = new double[paaSize];
+		int step = Math.max(1, (rsp.size() + maxWindows - 1) / maxWindows);
+		for (int i = 0; i < rsp.size(); i += step)
+			rsp.addPAARecords(i, rsp.paa(i, paa), records);
+		return records;
+	}
+
+	/**
+	 * The streaming counterpart of run. Rows are read one at a time and the row of a SAX word is
+	 * pushed as soon as its window is complete, so only a block of values and a window of
+	 * timestamps are held in memory. Without a sliding window the whole series makes up a single
+	 * word, so the input is collected and converted by run.
+	 * The word dictionary is pushed once the input is exhausted.
+	 * @param params	the parameters parsed from the node dialog box
+	 * @param input		the time series rows
+	 * @param output	the discretised representation of the time series input
+	 * @param dictOutput	the word dictionary
+	 * @param exec		the execution context
+	 * @throws Exception if error occurs.
+	 */
+	public void stream(SAXParameters params, RowInput input, RowOutput output, RowOutput dictOutput, ExecutionContext exec) throws Exception {
+		DataTableSpec inSpec = input.getDataTableSpec();
+		if(params.SAX_WINDOW_SIZE == 0) {
+			BufferedDataContainer collected = exec.createDataContainer(inSpec);
+			DataRow row;
+			while ((row = input.poll()) != null)
+				collected.addRowToTable(row);
+			collected.close();
+			input.close();
+			BufferedDataTable[] tables = run(params, new BufferedDataTable[]{collected.getTable()}, exec);
+			for (DataRow out : tables[0])
+				output.push(out);
+			output.close();
+			for (DataRow out : tables[1])
+				dictOutput.push(out);
+			dictOutput.close();
+			return;
+		}
+
+		int dateIdx = inSpec.findColumnIndex(params.DATECOL);
+		int colIdx = inSpec.findColumnIndex(params.COLNAME);
+		if (dateIdx < 0 || colIdx < 0)
+			throw new IllegalArgumentException("The time series columns are not present in the input table.");
+
+		NormalAlphabet na = new NormalAlphabet();
+		StreamingSAXProcessor ssp = new StreamingSAXProcessor(params.SAX_WINDOW_SIZE, params.SAX_PAA_SIZE,
+				na.getCuts(params.SAX_ALPHABET_SIZE), params.SAX_NR_STRATEGY, params.SAX_NORM_THRESHOLD);
+		TimestampConverter converter = new TimestampConverter();
+		WordDictionary dictionary = new WordDictionary(params.SAX_WORD_IDS);
+		// the timestamps of the last window, the series position of a value picks its slot
+		long[] window = new long[params.SAX_WINDOW_SIZE];
+		// missing values take the last value seen, leading ones wait for the first value
+		ArrayList<Long> leading = new ArrayList<Long>();
+		double last = Double.NaN;
+		long count = 0;
+
+		DataRow row;
+		while ((row = input.poll()) != null) {
+			DataCell cell = row.getCell(colIdx);
+			long stamp = converter.toMillis(row.getCell(dateIdx));
+			if (cell.isMissing() && leading != null) {
+				leading.add(stamp);
+				continue;
+			}
+			if (!cell.isMissing())
+				last = ColumnReader.getDouble(cell);
+			if (leading != null) {
+				for (long s : leading)
+					count = push(ssp, converter, dictionary, s, last, count, window, output);
+				leading = null;
+			}
+			count = push(ssp, converter, dictionary, stamp, last, count, window, output);
+			if ((count & 0xFFFF) == 0) {
+				exec.checkCanceled();
+				exec.setMessage("Read " + count + " rows");
+			}
+		}
+		// a column without any value is read as missing values, as by run
+		if (leading != null)
+			for (long s : leading)
+				count = push(ssp, converter, dictionary, s, Double.NaN, count, window, output);
+		input.close();
+		output.close();
+		for (int id = 0; id < dictionary.size(); id++)
+			dictOutput.push(dictionary.createRow(id));
+		dictOutput.close();
+	}
+
+	/**
+	 * Adds a value to a streaming conversion and pushes the row of a word kept.
+	 * @param ssp		The streaming processor.
+	 * @param converter	The timestamp converter.
+	 * @param dictionary	The word dictionary.
+	 * @param stamp		The timestamp of the value.
+	 * @param value		The value.
+	 * @param count		The number of values added before.
+	 * @param window	The timestamps of the last window.
+	 * @param output	The output rows.
+	 * @return the number of values added.
+	 * @throws InterruptedException if pushing the row is interrupted.
+	 */
+	private static long push(StreamingSAXProcessor ssp, TimestampConverter converter, WordDictionary dictionary,
+			long stamp, double value, long count, long[] window, RowOutput output) throws InterruptedException {
+		window[(int) (count % window.length)] = stamp;
+		long idx = ssp.add(value);
+		if (idx >= 0) {
+			int id = dictionary.add(ssp.getWord());
+			output.push(createRow(idx, converter.createCell(window[(int) (idx % window.length)]), dictionary.getCell(id)));
+		}
+		return count + 1;
+	}
+
+	/**
+	 * Creates the output row of a SAX word.
+	 * @param idx		The position of the word in the time series.
+	 * @param timestamp	The timestamp cell of the position.
+	 * @param word		The SAX word cell, its string or dictionary id.
+	 * @return the row.
+	 */
+	static DataRow createRow(long idx, DataCell timestamp, DataCell word) {
+		RowKey key = new RowKey("Row"+idx);
+		DataCell[] cells = new DataCell[2];
+		//Timestamp
+		cells[0] = timestamp;
+		//SAX String or word id
+		cells[1] = word;
+		//Add cells to row
+		return new DefaultRow(key,cells);
 	}
-}
\ No newline at end of file
+}
@@ -1,13 +1,18 @@
 package uk.ac.reading.cs.knime.sax;
 
 import org.knime.core.data.DoubleValue;
+import org.knime.core.data.LongValue;
+import org.knime.core.data.StringValue;
 import org.knime.core.data.date.DateAndTimeValue;
+import org.knime.core.data.time.localdatetime.LocalDateTimeValue;
+import org.knime.core.data.time.zoneddatetime.ZonedDateTimeValue;
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
 import org.knime.core.node.defaultnodesettings.DialogComponentColumnNameSelection;
 import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
 import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
 import org.knime.core.node.defaultnodesettings.SettingsModelDouble;
 import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 
 /**
@@ -35,7 +40,8 @@ public class SAXNodeDialog extends DefaultNodeSettingsPane {
 				"Select a column",
 				0,
 				true,
-				DateAndTimeValue.class));
+				DateAndTimeValue.class, LocalDateTimeValue.class, ZonedDateTimeValue.class,
+				LongValue.class, DoubleValue.class, StringValue.class));
 		
 		createNewGroup("Time Series");
 		// TIMESERIES COLUMN
@@ -76,5 +82,17 @@ public class SAXNodeDialog extends DefaultNodeSettingsPane {
 				new SettingsModelDouble(
                 SAXNodeModel.THRESH, 0.01),
                 "SAX Normalisation Threshold:", 0.01));	
+
+		// SAX_THREADS
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelIntegerBounded(SAXNodeModel.THREADS, SAXNodeModel.DEFAULT_THREADS, 1, 256),
+				"Threads:",
+				1));
+
+		// SAX_WORD_IDS
+		addDialogComponent(new DialogComponentStringSelection(
+				new SettingsModelString(SAXNodeModel.OUTPUT, SAXTable.SAX_STRING),
+				"SAX Output:",
+				SAXTable.SAX_STRING, SAXTable.WORD_ID));
 	}
 }
\ No newline at end of file
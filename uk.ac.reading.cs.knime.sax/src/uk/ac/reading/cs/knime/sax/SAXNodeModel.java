@@ -16,6 +16,15 @@ import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.streamable.InputPortRole;
+import org.knime.core.node.streamable.OutputPortRole;
+import org.knime.core.node.streamable.PartitionInfo;
+import org.knime.core.node.streamable.PortInput;
+import org.knime.core.node.streamable.PortOutput;
+import org.knime.core.node.streamable.RowInput;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.node.streamable.StreamableOperator;
 
 /**
  * This is the model implementation of SAX.
@@ -39,6 +48,14 @@ public class SAXNodeModel extends NodeModel {
 	static final String ALPHABET_SIZE = "sax.alphabet_size.name";
 	static final String NUMEROSITY = "sax.numerosity.name";
 	static final String THRESH = "sax.thresh.name";
+	static final String THREADS = "sax.threads.name";
+	static final String OUTPUT = "sax.output.name";
+	
+	/** The default number of threads, one per processor, within the bounds of the setting. */
+	static final int DEFAULT_THREADS = Math.min(256, Runtime.getRuntime().availableProcessors());
+
+	/** The file the data of the view is saved to with the node internals. */
+	private static final String INTERNALS = "sax.bin";
 
 	// example value: the models count variable filled from the dialog 
 	// and used in the models execution method. The default components of the
@@ -50,14 +67,17 @@ public class SAXNodeModel extends NodeModel {
 	private final SettingsModelInteger alpha_sz   = new SettingsModelInteger(ALPHABET_SIZE, 3);
 	private final SettingsModelString  numerosity = new SettingsModelString(NUMEROSITY, "NONE");
 	private final SettingsModelDouble  threshold  = new SettingsModelDouble(THRESH, 0.01);
+	private final SettingsModelIntegerBounded threads = new SettingsModelIntegerBounded(THREADS, DEFAULT_THREADS, 1, 256);
+	private final SettingsModelString  output     = new SettingsModelString(OUTPUT, SAXTable.SAX_STRING);
 
 	/**
 	 * Constructor for the node model.
 	 */
 	protected SAXNodeModel() {
 		// Input port:	Time series data
-		// Output port:	SAX String
-		super(1, 1);
+		// Output port:	SAX String or Word ID
+		// Output port:	Word dictionary
+		super(1, 2);
 	}
 
 	/**
@@ -66,16 +86,59 @@ public class SAXNodeModel extends NodeModel {
 	@Override
 	protected BufferedDataTable[] execute(final BufferedDataTable[] inData, final ExecutionContext exec) throws Exception {
 		converter = new SAXConverter();
-		params = new SAXParameters();
-		params.DATECOL = dateCol.getStringValue();
-		params.COLNAME = colname.getStringValue();
-		params.SAX_WINDOW_SIZE = window_sz.getIntValue();
-		params.SAX_PAA_SIZE = paa_sz.getIntValue();
-		params.SAX_ALPHABET_SIZE = alpha_sz.getIntValue();
-		params.SAX_NR_STRATEGY = NumerosityReductionStrategy.fromString(numerosity.getStringValue());
-		params.SAX_NORM_THRESHOLD = threshold.getDoubleValue();
-		
-		return new BufferedDataTable[]{converter.run(params, inData, exec)};
+		params = createParameters();
+		return converter.run(params, inData, exec);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public InputPortRole[] getInputPortRoles() {
+		return new InputPortRole[]{InputPortRole.NONDISTRIBUTED_STREAMABLE};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public OutputPortRole[] getOutputPortRoles() {
+		return new OutputPortRole[]{OutputPortRole.NONDISTRIBUTED, OutputPortRole.NONDISTRIBUTED};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public StreamableOperator createStreamableOperator(final PartitionInfo partitionInfo, final PortObjectSpec[] inSpecs)
+			throws InvalidSettingsException {
+		final SAXParameters streamParams = createParameters();
+		return new StreamableOperator() {
+			@Override
+			public void runFinal(final PortInput[] inputs, final PortOutput[] outputs, final ExecutionContext exec) throws Exception {
+				// rows are pushed as they are converted, nothing is kept for the view
+				converter = null;
+				new SAXConverter().stream(streamParams, (RowInput) inputs[0], (RowOutput) outputs[0], (RowOutput) outputs[1], exec);
+			}
+		};
+	}
+
+	/**
+	 * Creates the parameters of a run from the current settings.
+	 * @return the parameters.
+	 */
+	private SAXParameters createParameters() {
+		SAXParameters p = new SAXParameters();
+		p.DATECOL = dateCol.getStringValue();
+		p.COLNAME = colname.getStringValue();
+		p.SAX_WINDOW_SIZE = window_sz.getIntValue();
+		p.SAX_PAA_SIZE = paa_sz.getIntValue();
+		p.SAX_ALPHABET_SIZE = alpha_sz.getIntValue();
+		p.SAX_NR_STRATEGY = NumerosityReductionStrategy.fromString(numerosity.getStringValue());
+		p.SAX_NORM_THRESHOLD = threshold.getDoubleValue();
+		p.SAX_THREADS = threads.getIntValue();
+		p.SAX_WORD_IDS = SAXTable.WORD_ID.equals(output.getStringValue());
+		return p;
 	}
 
 	/**
@@ -84,6 +147,7 @@ public class SAXNodeModel extends NodeModel {
 	@Override
 	protected void reset() {
 		System.err.println("SAXModel: reset called");
+		converter = null;
 	}
 
 	/**
@@ -92,7 +156,8 @@ public class SAXNodeModel extends NodeModel {
 	@Override
 	protected DataTableSpec[] configure(final DataTableSpec[] inSpecs) throws InvalidSettingsException {
 		System.err.println("SAXModel: configure called");
-		return new DataTableSpec[]{SAXTable.createDataTableSpec()};
+		boolean wordIds = SAXTable.WORD_ID.equals(output.getStringValue());
+		return new DataTableSpec[]{SAXTable.createDataTableSpec(wordIds), SAXTable.createDictionarySpec()};
 	}
 
 	/**
@@ -108,6 +173,8 @@ public class SAXNodeModel extends NodeModel {
 		this.alpha_sz.saveSettingsTo(settings);
 		this.numerosity.saveSettingsTo(settings);
 		this.threshold.saveSettingsTo(settings);
+		this.threads.saveSettingsTo(settings);
+		this.output.saveSettingsTo(settings);
 	}
 
 	/**
@@ -123,6 +190,11 @@ public class SAXNodeModel extends NodeModel {
 		this.alpha_sz.loadSettingsFrom(settings);
 		this.numerosity.loadSettingsFrom(settings);
 		this.threshold.loadSettingsFrom(settings);
+		// workflows saved before the option was added run with the default
+		if (settings.containsKey(THREADS))
+			this.threads.loadSettingsFrom(settings);
+		if (settings.containsKey(OUTPUT))
+			this.output.loadSettingsFrom(settings);
 	}
 
 	/**
@@ -153,17 +225,31 @@ public class SAXNodeModel extends NodeModel {
 		this.alpha_sz.validateSettings(settings);
 		this.numerosity.validateSettings(settings);
 		this.threshold.validateSettings(settings);
+		if (settings.containsKey(THREADS))
+			this.threads.validateSettings(settings);
+		if (settings.containsKey(OUTPUT))
+			this.output.validateSettings(settings);
 	}
     
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	protected void loadInternals(final File internDir, final ExecutionMonitor exec) throws IOException, CanceledExecutionException {}
+	protected void loadInternals(final File internDir, final ExecutionMonitor exec) throws IOException, CanceledExecutionException {
+		File file = new File(internDir, INTERNALS);
+		if (file.exists()) {
+			converter = SAXConverter.load(file);
+			params = converter.params;
+		}
+	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	protected void saveInternals(final File internDir, final ExecutionMonitor exec) throws IOException, CanceledExecutionException {}
+	protected void saveInternals(final File internDir, final ExecutionMonitor exec) throws IOException, CanceledExecutionException {
+		// a streamed execution keeps nothing for the view
+		if (converter != null)
+			converter.save(new File(internDir, INTERNALS));
+	}
 }
@@ -2,10 +2,12 @@ package uk.ac.reading.cs.knime.sax;
 
 import java.awt.Color;
 import java.text.DateFormat;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Locale;
+
+import javax.swing.JLabel;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
@@ -29,6 +31,8 @@ import org.knime.core.node.NodeView;
  * @author Ryan Faulkner
  */
 public class SAXNodeView extends NodeView<SAXNodeModel> {
+	/** The maximal number of windows whose PAA segments are drawn. */
+	private static final int MAX_PAA_WINDOWS = 1000;
 	private static DateFormat df;
     
 	/**
@@ -39,10 +43,18 @@ public class SAXNodeView extends NodeView<SAXNodeModel> {
 		super(nodeModel);
 		NormalAlphabet na = new NormalAlphabet();
 		
-		if(nodeModel.converter.ts_d[0].length()<=12)
+		// a streamed execution keeps no series to plot
+		if(nodeModel.converter == null) {
+			setComponent(new JLabel("No data to display, the node was executed in streaming mode."));
+			return;
+		}
+		
+		if(!nodeModel.converter.stamps.hasDate())
 			df = new SimpleDateFormat("HH:mm:ss.SSS");
 		else
 			df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+		// timestamps are epoch milliseconds with local times taken as UTC
+		df.setTimeZone(TimestampConverter.UTC);
 		
 		//Create plot using model data
 		//Plot z-normalised time series data
@@ -51,31 +63,39 @@ public class SAXNodeView extends NodeView<SAXNodeModel> {
         XYPlot p = lineScatterPlot.getXYPlot();
                 
         DateAxis dateAxis = new DateAxis();
+        dateAxis.setTimeZone(TimestampConverter.UTC);
         dateAxis.setDateFormatOverride(df); 
         p.setDomainAxis(dateAxis);
         
+        //PAA segments are generated for the view only
+        ArrayList<PAARecord> segments = new ArrayList<PAARecord>();
+        try {
+        	segments = nodeModel.converter.getPAARecords(MAX_PAA_WINDOWS);
+        } catch (SAXException e) { e.printStackTrace(); }
+        
         //Plot PAA transform and SAX string as bar charts
-        p.setDataset(1, getSAXDataset(nodeModel));
+        p.setDataset(1, getSAXDataset(nodeModel, segments));
         XYBarRenderer r2 = new XYBarRenderer();
         r2.setSeriesPaint(0, new Color(1,1,1,.9f));
         p.setRenderer(1, r2);
         
         //Plot SAX characters alongside relevant lines
-        for(int i=0; i<nodeModel.converter.paa.size(); i++) {
+        long[] ts_d = nodeModel.converter.ts_d;
+        for(int i=0; i<segments.size(); i++) {
         	try {
-        		PAARecord paa = nodeModel.converter.paa.get(i);
+        		PAARecord paa = segments.get(i);
             	int start = (int) Math.floor(paa.start);
             	int end = (int) Math.floor(paa.end);
-            	if(end >= nodeModel.converter.ts_d.length)
+            	if(end >= ts_d.length)
             		end--;
-        		Millisecond m = new Millisecond(df.parse(nodeModel.converter.ts_d[start]));
-        		Millisecond m2 = new Millisecond(df.parse(nodeModel.converter.ts_d[end]));
+            	if(ts_d[start] == TimestampConverter.MISSING || ts_d[end] == TimestampConverter.MISSING)
+            		continue;
         		
-        		char s = TSProcessor.num2char(nodeModel.converter.paa.get(i).level, na.getCuts(nodeModel.params.SAX_ALPHABET_SIZE));
+        		char s = TSProcessor.num2char(paa.level, na.getCuts(nodeModel.params.SAX_ALPHABET_SIZE));
         		
-            	XYTextAnnotation annotation = new XYTextAnnotation(String.valueOf(s), (m.getLastMillisecond()+m2.getLastMillisecond())/2, paa.level);
+            	XYTextAnnotation annotation = new XYTextAnnotation(String.valueOf(s), (ts_d[start]+ts_d[end])/2, paa.level);
             	p.addAnnotation(annotation);
-			} catch (ParseException | SAXException e) { e.printStackTrace(); }
+			} catch (SAXException e) { e.printStackTrace(); }
         }
         //Set plot as the component of the view
         ChartPanel chartPanel = new ChartPanel(lineScatterPlot);
@@ -86,44 +106,41 @@ public class SAXNodeView extends NodeView<SAXNodeModel> {
     	TimeSeriesCollection dataset = new TimeSeriesCollection();
     	//Plot raw timeseries data
     	TimeSeries data = new TimeSeries("Normalised Timeseries");
-    	for(int i=0; i<nodeModel.converter.ts_z.length; i++) {
-			try { data.addOrUpdate(new Millisecond(df.parse(nodeModel.converter.ts_d[i])), nodeModel.converter.ts_z[i]);
-			} catch (ParseException e) { e.printStackTrace(); } 
+    	long[] ts_d = nodeModel.converter.ts_d;
+    	double[] ts_z = nodeModel.converter.getNormalisedSeries();
+    	for(int i=0; i<ts_z.length; i++) {
+    		if(ts_d[i] != TimestampConverter.MISSING)
+    			data.addOrUpdate(new Millisecond(new Date(ts_d[i]), TimestampConverter.UTC, Locale.getDefault()), ts_z[i]);
     	}
     	dataset.addSeries(data);
     	//Return set of series as dataset
     	return dataset;
     }
 	
-    private static XYDataset getSAXDataset(final SAXNodeModel nodeModel) { 
+    private static XYDataset getSAXDataset(final SAXNodeModel nodeModel, final ArrayList<PAARecord> segments) { 
     	TimePeriodValuesCollection dataset = new TimePeriodValuesCollection();
     	//Plot sax string
     	TimePeriodValues sax = new TimePeriodValues("PAA - SAX String");
-    	Calendar sCal = Calendar.getInstance();
-    	Calendar eCal = Calendar.getInstance();
-    	try {
-			long unitDiff = df.parse(nodeModel.converter.ts_d[1]).getTime() - df.parse(nodeModel.converter.ts_d[0]).getTime();
-	    	for(PAARecord p: nodeModel.converter.paa) {
+    	long[] ts_d = nodeModel.converter.ts_d;
+    	if(ts_d.length > 1) {
+			long unitDiff = ts_d[1] - ts_d[0];
+	    	for(PAARecord p: segments) {
     			int start = (int)p.start;
     			double startFract = p.start-start;
-    			Date s = df.parse(nodeModel.converter.ts_d[start]);
-    			sCal.setTime(s);
-    			if(startFract!=0)
-    				sCal.add(Calendar.MILLISECOND, (int) (unitDiff*startFract));    			
     			int end = (int) p.end;
     			double endFract = p.end-end;
-    			if(end >= nodeModel.converter.ts_d.length)
-    				end = nodeModel.converter.ts_d.length-1;
-    			Date e = df.parse(nodeModel.converter.ts_d[end]);
-    			eCal.setTime(e);
-    			if(endFract!=0)
-    				eCal.add(Calendar.MILLISECOND, (int) (unitDiff*endFract));
+    			if(end >= ts_d.length)
+    				end = ts_d.length-1;
+    			if(ts_d[start] == TimestampConverter.MISSING || ts_d[end] == TimestampConverter.MISSING)
+    				continue;
+    			long s = ts_d[start] + (long) (unitDiff*startFract);
+    			long e = ts_d[end] + (long) (unitDiff*endFract);
     			
-    			if(sCal.before(eCal))
-    				sax.add(new SimpleTimePeriod(sCal.getTime(), eCal.getTime()), p.level);
+    			if(s < e)
+    				sax.add(new SimpleTimePeriod(s, e), p.level);
 	    	}
-	    	dataset.addSeries(sax);
-    	} catch (ParseException e1) { e1.printStackTrace(); }
+    	}
+    	dataset.addSeries(sax);
     	return dataset;
     }
 
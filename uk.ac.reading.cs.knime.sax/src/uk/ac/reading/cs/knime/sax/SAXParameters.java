@@ -46,5 +46,27 @@ public class SAXParameters {
 	 * SAX Normalisation threshold
 	 */
 	public double SAX_NORM_THRESHOLD = 0.01;
+	
+	/**
+	 * Number of threads used for the discretisation
+	 */
+	public int SAX_THREADS = 1;
+	
+	/**
+	 * Write word ids into the SAX output instead of strings
+	 */
+	public boolean SAX_WORD_IDS = false;
+	
+	// Subsequence search parameters
+	//
+	/**
+	 * Query column id
+	 */
+	public String QUERYCOL;
+	
+	/**
+	 * Number of matches
+	 */
+	public int MATCHES = 10;
 
 }
@@ -2,6 +2,9 @@ package uk.ac.reading.cs.knime.sax;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Implements SAX algorithms.
@@ -10,6 +13,9 @@ import java.util.Arrays;
  * 
  */
 public final class SAXProcessor {
+	/** Minimal number of windows a parallel conversion hands to one task. */
+	private static final int MIN_CHUNK = 1 << 16;
+
 	TSProcessor tsp;
 	ArrayList<Double> paa;
 
@@ -37,7 +43,7 @@ public final class SAXProcessor {
 		double[] normalizedTS = TSProcessor.znorm(ts, nThreshold);
 	
 		// perform PAA conversion if needed
-		double[] paa = tsp.paa(normalizedTS, paaSize, 0);
+		double[] paa = tsp.paa(normalizedTS, paaSize);
 		
 		// Convert the PAA to a string.
 		char[] currentString = TSProcessor.ts2String(paa, cuts);
@@ -67,36 +73,339 @@ public final class SAXProcessor {
 	 */
 	public SAXRecords ts2saxViaWindow(double[] ts, int windowSize, int paaSize, double[] cuts,
 			NumerosityReductionStrategy strategy, double nThreshold) throws SAXException {
-		// the resulting data structure initialisation
-		SAXRecords saxFrequencyData = new SAXRecords();
+		return ts2saxViaWindow(ts, windowSize, paaSize, cuts, strategy, nThreshold, 1);
+	}
 
-		// scan across the time series extract sub sequences, and convert them to strings
-		char[] previousString = null;
+	/**
+	 * Converts the input time series into a SAX data structure via sliding window and Z
+	 * normalisation, using several threads. The windows are split into chunks which are converted
+	 * on a ForkJoinPool, each with its own numerosity reduction. The chunks are merged in order and
+	 * the reduction decisions at the start of every chunk are replayed from the last word kept
+	 * before it, so the result is the same as the sequential conversion.
+	 * 
+	 * @param ts the input data.
+	 * @param windowSize the sliding window size.
+	 * @param paaSize the PAA size.
+	 * @param cuts the Alphabet cuts.
+	 * @param strategy the NR strategy.
+	 * @param nThreshold the normalisation threshold value.
+	 * @param threads the number of threads, 1 converts sequentially.
+	 * 
+	 * @return SAX representation of the time series.
+	 * @throws SAXException if error occurs.
+	 */
+	public SAXRecords ts2saxViaWindow(double[] ts, int windowSize, int paaSize, double[] cuts,
+			NumerosityReductionStrategy strategy, double nThreshold, int threads) throws SAXException {
+		// windows are normalised and approximated straight from the prefix sums
+		RollingSAXProcessor rsp = new RollingSAXProcessor(ts, windowSize, paaSize, nThreshold);
+		int[] bounds = chunkBounds(rsp.size(), rsp.getBlockSize(), threads);
+		if (bounds.length == 2)
+			return saxChunk(rsp, 0, rsp.size(), cuts, strategy).records;
 
-		for (int i = 0; i <= ts.length - windowSize; i++ /*i+=windowSize*/) {
-			// fix the current subsection
-			double[] subSection = Arrays.copyOfRange(ts, i, i + windowSize);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			ArrayList<ForkJoinTask<Chunk<SAXRecords>>> tasks = new ArrayList<ForkJoinTask<Chunk<SAXRecords>>>();
+			for (int c = 0; c + 1 < bounds.length; c++) {
+				final int from = bounds[c], to = bounds[c + 1];
+				tasks.add(pool.submit(() -> saxChunk(new RollingSAXProcessor(ts, windowSize, paaSize, nThreshold),
+						from, to, cuts, strategy)));
+			}
 
-			// Z normalise it
-			subSection = TSProcessor.znorm(subSection, nThreshold);
+			// the first chunk starts the same way as the sequential run
+			Chunk<SAXRecords> chunk = await(tasks.get(0));
+			SAXRecords saxFrequencyData = chunk.records;
+			char[] previousString = chunk.last;
+			for (int c = 1; c < tasks.size(); c++) {
+				chunk = await(tasks.get(c));
+				previousString = repairChunk(rsp, chunk, previousString, cuts, strategy);
+				saxFrequencyData.addAll(chunk.records);
+			}
+			return saxFrequencyData;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
 
-			// perform PAA conversion if needed
-			double[] paa = tsp.paa(subSection, paaSize, i);
+	/**
+	 * Converts the input time series into a compact SAX data structure of packed words via sliding
+	 * window and Z normalisation. Produces the same words and positions as ts2saxViaWindow.
+	 * 
+	 * @param ts the input data.
+	 * @param windowSize the sliding window size.
+	 * @param paaSize the PAA size.
+	 * @param alphabetSize the alphabet size.
+	 * @param strategy the NR strategy.
+	 * @param nThreshold the normalisation threshold value.
+	 * 
+	 * @return SAX representation of the time series.
+	 * @throws SAXException if error occurs.
+	 */
+	public CompactSAXRecords ts2compactSaxViaWindow(double[] ts, int windowSize, int paaSize, int alphabetSize,
+			NumerosityReductionStrategy strategy, double nThreshold) throws SAXException {
+		return ts2compactSaxViaWindow(ts, windowSize, paaSize, alphabetSize, strategy, nThreshold, 1);
+	}
 
-			// Convert the PAA to a string.
-			char[] currentString = TSProcessor.ts2String(paa, cuts);
+	/**
+	 * Converts the input time series into a compact SAX data structure of packed words via sliding
+	 * window and Z normalisation, using several threads. The chunks are converted and merged as in
+	 * ts2saxViaWindow, so the result is the same as the sequential conversion.
+	 * 
+	 * @param ts the input data.
+	 * @param windowSize the sliding window size.
+	 * @param paaSize the PAA size.
+	 * @param alphabetSize the alphabet size.
+	 * @param strategy the NR strategy.
+	 * @param nThreshold the normalisation threshold value.
+	 * @param threads the number of threads, 1 converts sequentially.
+	 * 
+	 * @return SAX representation of the time series.
+	 * @throws SAXException if error occurs.
+	 */
+	public CompactSAXRecords ts2compactSaxViaWindow(double[] ts, int windowSize, int paaSize, int alphabetSize,
+			NumerosityReductionStrategy strategy, double nThreshold, int threads) throws SAXException {
+		SAXWordCodec codec = new SAXWordCodec(paaSize, alphabetSize);
+		double[] cuts = new NormalAlphabet().getCuts(alphabetSize);
+		RollingSAXProcessor rsp = new RollingSAXProcessor(ts, windowSize, paaSize, nThreshold);
+		int[] bounds = chunkBounds(rsp.size(), rsp.getBlockSize(), threads);
+		if (bounds.length == 2)
+			return packedChunk(rsp, 0, rsp.size(), cuts, codec, strategy).records;
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			ArrayList<ForkJoinTask<Chunk<CompactSAXRecords>>> tasks = new ArrayList<ForkJoinTask<Chunk<CompactSAXRecords>>>();
+			for (int c = 0; c + 1 < bounds.length; c++) {
+				final int from = bounds[c], to = bounds[c + 1];
+				tasks.add(pool.submit(() -> packedChunk(new RollingSAXProcessor(ts, windowSize, paaSize, nThreshold),
+						from, to, cuts, codec, strategy)));
+			}
 
-			if (previousString != null) {
-				if (NumerosityReductionStrategy.EXACT.equals(strategy) && Arrays.equals(previousString, currentString))
-					continue;
-				else if (NumerosityReductionStrategy.MINDIST.equals(strategy) && checkMinDistIsZero(previousString, currentString))
-					continue;
+			// the first chunk starts the same way as the sequential run
+			Chunk<CompactSAXRecords> chunk = await(tasks.get(0));
+			CompactSAXRecords saxFrequencyData = chunk.records;
+			for (int c = 1; c < tasks.size(); c++) {
+				chunk = await(tasks.get(c));
+				int slot = repairChunk(rsp, chunk, saxFrequencyData, cuts, strategy);
+				saxFrequencyData.addAll(chunk.records, slot);
 			}
+			return saxFrequencyData;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Converts the windows of a chunk into SAX words, reducing numerosity within the chunk only.
+	 * @param rsp the rolling processor of the series.
+	 * @param from the first window of the chunk.
+	 * @param to the window after the last one of the chunk.
+	 * @param cuts the Alphabet cuts.
+	 * @param strategy the NR strategy.
+	 * @return the converted chunk.
+	 */
+	private Chunk<SAXRecords> saxChunk(RollingSAXProcessor rsp, int from, int to, double[] cuts,
+			NumerosityReductionStrategy strategy) {
+		int paaSize = rsp.getBreaks().length - 1;
+		Chunk<SAXRecords> chunk = new Chunk<SAXRecords>(from, to, new SAXRecords());
+		double[] paa = new double[paaSize];
+
+		// scan across the time series extract sub sequences, and convert them to strings
+		char[] previousString = null;
+		char[] currentString = new char[paaSize];
+
+		for (int i = from; i < to; i++ /*i+=windowSize*/) {
+			// Z normalise and PAA the current subsection, then convert the PAA to a string.
+			rsp.sax(i, cuts, paa, currentString);
+
+			if (previousString != null && isReduced(strategy, previousString, currentString))
+				continue;
+			chunk.records.add(currentString, i);
+
+			// keep the kept word, reuse the other buffer
+			char[] swap = (previousString == null) ? new char[paaSize] : previousString;
 			previousString = currentString;
-			saxFrequencyData.add(currentString, i);
+			currentString = swap;
+		}
+		chunk.last = previousString;
+		return chunk;
+	}
+
+	/**
+	 * Converts the windows of a chunk into packed SAX words, reducing numerosity within the chunk only.
+	 * @param rsp the rolling processor of the series.
+	 * @param from the first window of the chunk.
+	 * @param to the window after the last one of the chunk.
+	 * @param cuts the Alphabet cuts.
+	 * @param codec the word codec.
+	 * @param strategy the NR strategy.
+	 * @return the converted chunk.
+	 */
+	private Chunk<CompactSAXRecords> packedChunk(RollingSAXProcessor rsp, int from, int to, double[] cuts,
+			SAXWordCodec codec, NumerosityReductionStrategy strategy) {
+		Chunk<CompactSAXRecords> chunk = new Chunk<CompactSAXRecords>(from, to, new CompactSAXRecords(codec,
+				NumerosityReductionStrategy.NONE.equals(strategy) ? to - from : 1024));
+		double[] paa = new double[codec.getPaaSize()];
+
+		boolean first = true;
+		long previousWord = 0L;
+		for (int i = from; i < to; i++) {
+			long currentWord = rsp.word(i, cuts, paa, codec);
+
+			if (!first && isReduced(strategy, codec, previousWord, currentWord))
+				continue;
+			first = false;
+			previousWord = currentWord;
+			chunk.records.add(currentWord, i);
+		}
+		return chunk;
+	}
+
+	/**
+	 * Replays the numerosity reduction at the start of a chunk from the last word kept before it.
+	 * Words are recomputed until a window kept by the sequential run was also kept by the chunk,
+	 * after which both runs agree.
+	 * @param rsp the rolling processor of the series.
+	 * @param chunk the chunk, its records are corrected in place.
+	 * @param previousString the last word kept before the chunk.
+	 * @param cuts the Alphabet cuts.
+	 * @param strategy the NR strategy.
+	 * @return the last word kept up to the end of the chunk.
+	 */
+	private char[] repairChunk(RollingSAXProcessor rsp, Chunk<SAXRecords> chunk, char[] previousString,
+			double[] cuts, NumerosityReductionStrategy strategy) {
+		int paaSize = previousString.length;
+		double[] paa = new double[paaSize];
+		char[] currentString = new char[paaSize];
+		for (int i = chunk.from; i < chunk.to; i++) {
+			rsp.sax(i, cuts, paa, currentString);
+			boolean kept = chunk.records.getByIndex(i) != null;
+			if (!isReduced(strategy, previousString, currentString)) {
+				if (kept)
+					return chunk.last;
+				chunk.records.add(currentString, i);
+				previousString = currentString;
+				currentString = new char[paaSize];
+			} else if (kept)
+				chunk.records.dropByIndex(i);
+		}
+		return previousString;
+	}
+
+	/**
+	 * Replays the numerosity reduction at the start of a chunk of packed words from the last
+	 * word kept before it, adding the words the chunk missed to the merged records.
+	 * @param rsp the rolling processor of the series.
+	 * @param chunk the chunk.
+	 * @param merged the records of the preceding chunks.
+	 * @param cuts the Alphabet cuts.
+	 * @param strategy the NR strategy.
+	 * @return the first slot of the chunk which agrees with the sequential run.
+	 */
+	private int repairChunk(RollingSAXProcessor rsp, Chunk<CompactSAXRecords> chunk, CompactSAXRecords merged,
+			double[] cuts, NumerosityReductionStrategy strategy) {
+		SAXWordCodec codec = merged.getCodec();
+		CompactSAXRecords records = chunk.records;
+		double[] paa = new double[codec.getPaaSize()];
+		long previousWord = merged.getWord(merged.getWordIdAt(merged.getSlotCount() - 1));
+		int slot = 0;
+		for (int i = chunk.from; i < chunk.to; i++) {
+			long currentWord = rsp.word(i, cuts, paa, codec);
+			boolean kept = slot < records.getSlotCount() && records.getPositionAt(slot) == i;
+			if (!isReduced(strategy, codec, previousWord, currentWord)) {
+				if (kept)
+					return slot;
+				merged.add(currentWord, i);
+				previousWord = currentWord;
+			} else if (kept)
+				slot++;
+		}
+		return slot;
+	}
+
+	/**
+	 * Checks whether numerosity reduction drops a word.
+	 * @param strategy the NR strategy.
+	 * @param previousString the last word kept.
+	 * @param currentString the current word.
+	 * @return true if the current word is dropped.
+	 */
+	boolean isReduced(NumerosityReductionStrategy strategy, char[] previousString, char[] currentString) {
+		if (NumerosityReductionStrategy.EXACT.equals(strategy))
+			return Arrays.equals(previousString, currentString);
+		else if (NumerosityReductionStrategy.MINDIST.equals(strategy))
+			return checkMinDistIsZero(previousString, currentString);
+		return false;
+	}
+
+	/**
+	 * Checks whether numerosity reduction drops a packed word.
+	 * @param strategy the NR strategy.
+	 * @param codec the word codec.
+	 * @param previousWord the last word kept.
+	 * @param currentWord the current word.
+	 * @return true if the current word is dropped.
+	 */
+	private static boolean isReduced(NumerosityReductionStrategy strategy, SAXWordCodec codec, long previousWord, long currentWord) {
+		if (NumerosityReductionStrategy.EXACT.equals(strategy))
+			return previousWord == currentWord;
+		else if (NumerosityReductionStrategy.MINDIST.equals(strategy))
+			return codec.checkMinDistIsZero(previousWord, currentWord);
+		return false;
+	}
+
+	/**
+	 * Splits the windows into chunks for the parallel conversion. Chunks are aligned to the blocks
+	 * of prefix sums, so no block is summed by two tasks.
+	 * @param windows the number of windows.
+	 * @param blockSize the block size of the rolling processor.
+	 * @param threads the number of threads.
+	 * @return the chunk bounds, a single chunk if the series is too short to split.
+	 */
+	private static int[] chunkBounds(int windows, int blockSize, int threads) {
+		if (threads <= 1 || windows < 2 * MIN_CHUNK)
+			return new int[] { 0, windows };
+		// a few chunks per thread even out the load
+		long chunkSize = Math.max(MIN_CHUNK, ((long) windows + threads * 4 - 1) / (threads * 4));
+		chunkSize = (chunkSize + blockSize - 1) / blockSize * blockSize;
+		int chunks = (int) ((windows + chunkSize - 1) / chunkSize);
+		int[] bounds = new int[chunks + 1];
+		for (int c = 1; c < chunks; c++)
+			bounds[c] = (int) (c * chunkSize);
+		bounds[chunks] = windows;
+		return bounds;
+	}
+
+	/**
+	 * Waits for a chunk conversion to finish.
+	 * @param task the conversion task.
+	 * @return the converted chunk.
+	 * @throws SAXException if the conversion failed or was interrupted.
+	 */
+	private static <T> Chunk<T> await(ForkJoinTask<Chunk<T>> task) throws SAXException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SAXException("The SAX conversion was interrupted.", e);
+		} catch (ExecutionException e) {
+			throw new SAXException("The SAX conversion of a chunk failed.", e.getCause());
+		}
+	}
+
+	/**
+	 * The records converted from a chunk of windows.
+	 */
+	private static final class Chunk<T> {
+		final int from;
+		final int to;
+		final T records;
+		/* The last word kept in the chunk, string records only */
+		char[] last;
+
+		Chunk(int from, int to, T records) {
+			this.from = from;
+			this.to = to;
+			this.records = records;
 		}
-				
-		return saxFrequencyData;
 	}
 
 	/**
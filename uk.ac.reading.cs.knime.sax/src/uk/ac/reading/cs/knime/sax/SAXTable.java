@@ -7,10 +7,23 @@ import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.DataType;
 import org.knime.core.data.RowIterator;
 import org.knime.core.data.date.DateAndTimeCell;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.IntCell;
 import org.knime.core.data.def.StringCell;
 import org.knime.core.node.ExecutionContext;
 
 public class SAXTable implements DataTable {
+	/** The name of the word id column, in the word id output and the dictionary. */
+	public static final String WORD_ID = "Word ID";
+	/** The name of the SAX string column. */
+	public static final String SAX_STRING = "SAX String";
+	/** The name of the word frequency column of the dictionary. */
+	public static final String FREQUENCY = "Frequency";
+	/** The name of the match position column of the subsequence search. */
+	public static final String POSITION = "Position";
+	/** The name of the match distance column of the subsequence search. */
+	public static final String DISTANCE = "Distance";
+	
 	private DataTableSpec dataTableSpec = createDataTableSpec();
 	private String filename;
 	
@@ -19,11 +32,44 @@ public class SAXTable implements DataTable {
 	}
 
 	public static DataTableSpec createDataTableSpec() {
+		return createDataTableSpec(false);
+	}
+
+	/**
+	 * Creates the spec of the SAX output.
+	 * @param wordIds	If true words are given by their id in the dictionary, otherwise as strings.
+	 * @return the spec.
+	 */
+	public static DataTableSpec createDataTableSpec(boolean wordIds) {
 		DataColumnSpec time = new DataColumnSpecCreator("Time", DataType.getType(DateAndTimeCell.class)).createSpec();
-		DataColumnSpec sax  = new DataColumnSpecCreator("SAX String", DataType.getType(StringCell.class)).createSpec();
+		DataColumnSpec sax  = wordIds
+				? new DataColumnSpecCreator(WORD_ID, DataType.getType(IntCell.class)).createSpec()
+				: new DataColumnSpecCreator(SAX_STRING, DataType.getType(StringCell.class)).createSpec();
 		return new DataTableSpec(time, sax);
 	}
 
+	/**
+	 * Creates the spec of the word dictionary output.
+	 * @return the spec.
+	 */
+	public static DataTableSpec createDictionarySpec() {
+		DataColumnSpec id   = new DataColumnSpecCreator(WORD_ID, DataType.getType(IntCell.class)).createSpec();
+		DataColumnSpec sax  = new DataColumnSpecCreator(SAX_STRING, DataType.getType(StringCell.class)).createSpec();
+		DataColumnSpec freq = new DataColumnSpecCreator(FREQUENCY, DataType.getType(IntCell.class)).createSpec();
+		return new DataTableSpec(id, sax, freq);
+	}
+
+	/**
+	 * Creates the spec of the subsequence search output.
+	 * @return the spec.
+	 */
+	public static DataTableSpec createMatchSpec() {
+		DataColumnSpec pos  = new DataColumnSpecCreator(POSITION, DataType.getType(IntCell.class)).createSpec();
+		DataColumnSpec time = new DataColumnSpecCreator("Time", DataType.getType(DateAndTimeCell.class)).createSpec();
+		DataColumnSpec dist = new DataColumnSpecCreator(DISTANCE, DataType.getType(DoubleCell.class)).createSpec();
+		return new DataTableSpec(pos, time, dist);
+	}
+
 	@Override
 	public DataTableSpec getDataTableSpec() {
 		return this.dataTableSpec;
@@ -0,0 +1,89 @@
+package uk.ac.reading.cs.knime.sax;
+
+/**
+ * Converts a stream of values into SAX words, one window at a time, with the same numerosity
+ * reduction as SAXProcessor.ts2saxViaWindow. Only one block of values is buffered, the block
+ * being the one RollingSAXProcessor sums over, so the words are exactly those of the batch
+ * conversion while memory does not depend on the series length.
+ *
+ * @author Ryan Faulkner
+ */
+public final class StreamingSAXProcessor {
+	private final int windowSize;
+	private final double[] cuts;
+	private final NumerosityReductionStrategy strategy;
+	private final SAXProcessor sp;
+
+	/* The values of the current block, and the windows' overlap with the next one */
+	private final double[] buffer;
+	private final RollingSAXProcessor rsp;
+	private int filled;
+	private long bufferStart;
+
+	private final double[] paa;
+	private char[] previousString;
+	private char[] currentString;
+
+	/**
+	 * Constructor.
+	 * @param windowSize	The sliding window size.
+	 * @param paaSize		The PAA size.
+	 * @param cuts			The Alphabet cuts.
+	 * @param strategy		The NR strategy.
+	 * @param nThreshold	The normalisation threshold value.
+	 * @throws SAXException if the PAA size is greater than the window size.
+	 */
+	public StreamingSAXProcessor(int windowSize, int paaSize, double[] cuts, NumerosityReductionStrategy strategy,
+			double nThreshold) throws SAXException {
+		if (windowSize < 1)
+			throw new SAXException("Streaming SAX needs a sliding window.");
+		this.windowSize = windowSize;
+		this.cuts = cuts;
+		this.strategy = strategy;
+		this.sp = new SAXProcessor();
+		this.buffer = new double[RollingSAXProcessor.blockSize(windowSize) + windowSize - 1];
+		this.rsp = new RollingSAXProcessor(buffer, windowSize, paaSize, nThreshold);
+		this.rsp.setAvailable(0);
+		this.paa = new double[paaSize];
+		this.currentString = new char[paaSize];
+	}
+
+	/**
+	 * Adds the next value of the series.
+	 * @param value The value.
+	 * @return the position of the window the value completes if its word is kept, -1 otherwise.
+	 */
+	public long add(double value) {
+		if (filled == buffer.length) {
+			// the next window starts a new block, keep the values it shares with the last one
+			int keep = windowSize - 1;
+			System.arraycopy(buffer, filled - keep, buffer, 0, keep);
+			bufferStart += filled - keep;
+			filled = keep;
+			rsp.invalidate();
+		}
+		buffer[filled++] = value;
+		rsp.setAvailable(filled);
+		if (filled < windowSize)
+			return -1;
+
+		int start = filled - windowSize;
+		rsp.sax(start, cuts, paa, currentString);
+		if (previousString != null && sp.isReduced(strategy, previousString, currentString))
+			return -1;
+
+		// keep the kept word, reuse the other buffer
+		char[] swap = (previousString == null) ? new char[paa.length] : previousString;
+		previousString = currentString;
+		currentString = swap;
+		return bufferStart + start;
+	}
+
+	/**
+	 * Get the last word kept.
+	 * @return the SAX string, or null if no window was complete yet.
+	 */
+	public String getWord() {
+		return (previousString == null) ? null : String.valueOf(previousString);
+	}
+}
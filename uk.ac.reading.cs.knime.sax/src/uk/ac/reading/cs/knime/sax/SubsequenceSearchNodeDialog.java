@@ -0,0 +1,67 @@
+package uk.ac.reading.cs.knime.sax;
+
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.LongValue;
+import org.knime.core.data.StringValue;
+import org.knime.core.data.date.DateAndTimeValue;
+import org.knime.core.data.time.localdatetime.LocalDateTimeValue;
+import org.knime.core.data.time.zoneddatetime.ZonedDateTimeValue;
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentColumnNameSelection;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+
+/**
+ * <code>NodeDialog</code> for the "Subsequence Search" Node.
+ * Finds the subsequences of a time series closest to a query
+ *
+ * This node dialog derives from {@link DefaultNodeSettingsPane} which allows
+ * creation of a simple dialog with standard components. If you need a more 
+ * complex dialog please derive directly from 
+ * {@link org.knime.core.node.NodeDialogPane}.
+ * 
+ * @author Ryan Faulkner
+ */
+public class SubsequenceSearchNodeDialog extends DefaultNodeSettingsPane {
+	/**
+	 * New pane for configuring Subsequence Search node dialog.
+	 */
+	@SuppressWarnings("unchecked")
+	protected SubsequenceSearchNodeDialog() {
+		super();
+		createNewGroup("Time Indexes");
+		// TIMESTAMP COLUMN
+		addDialogComponent(new DialogComponentColumnNameSelection(
+				new SettingsModelString(SubsequenceSearchNodeModel.TS_DATE, ""),
+				"Select a column",
+				0,
+				true,
+				DateAndTimeValue.class, LocalDateTimeValue.class, ZonedDateTimeValue.class,
+				LongValue.class, DoubleValue.class, StringValue.class));
+		
+		createNewGroup("Time Series");
+		// TIMESERIES COLUMN
+		addDialogComponent(new DialogComponentColumnNameSelection(
+				new SettingsModelString(SubsequenceSearchNodeModel.TS_DATA, ""), 
+				"Select a column", 
+				0,
+				true,
+				DoubleValue.class));
+
+		createNewGroup("Query");
+		// QUERY COLUMN
+		addDialogComponent(new DialogComponentColumnNameSelection(
+				new SettingsModelString(SubsequenceSearchNodeModel.QUERY, ""), 
+				"Select a column", 
+				1,
+				true,
+				DoubleValue.class));
+
+		// MATCHES
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelIntegerBounded(SubsequenceSearchNodeModel.MATCHES, 10, 1, Integer.MAX_VALUE),
+				"No. of Matches:",
+				1));
+	}
+}
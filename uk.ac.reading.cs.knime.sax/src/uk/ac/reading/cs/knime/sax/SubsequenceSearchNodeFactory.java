@@ -0,0 +1,53 @@
+package uk.ac.reading.cs.knime.sax;
+
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+
+/**
+ * <code>NodeFactory</code> for the "Subsequence Search" Node.
+ * Finds the subsequences of a time series closest to a query
+ *
+ * @author Ryan Faulkner
+ */
+public class SubsequenceSearchNodeFactory extends NodeFactory<SubsequenceSearchNodeModel> {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SubsequenceSearchNodeModel createNodeModel() {
+        return new SubsequenceSearchNodeModel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNrNodeViews() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeView<SubsequenceSearchNodeModel> createNodeView(final int viewIndex, final SubsequenceSearchNodeModel nodeModel) {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasDialog() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeDialogPane createNodeDialogPane() {
+        return new SubsequenceSearchNodeDialog();
+    }
+}
@@ -0,0 +1,153 @@
+package uk.ac.reading.cs.knime.sax;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+
+/**
+ * This is the model implementation of Subsequence Search.
+ * Finds the subsequences of a time series closest to a query
+ *
+ * @author Ryan Faulkner
+ */
+public class SubsequenceSearchNodeModel extends NodeModel {
+	SAXParameters params;
+
+	/**
+	 * The settings key which is used to retrieve and 
+	 * store the settings (from the dialog or from a settings file)
+	 * (package visibility to be usable from the dialog). 
+	 */
+	static final String TS_DATE = "ts.dat.name";
+	static final String TS_DATA = "ts.col.name";
+	static final String QUERY = "search.query.name";
+	static final String MATCHES = "search.matches.name";
+
+	private final SettingsModelString  dateCol  = new SettingsModelString(TS_DATE, null);
+	private final SettingsModelString  colname  = new SettingsModelString(TS_DATA, null);
+	private final SettingsModelString  queryCol = new SettingsModelString(QUERY, null);
+	private final SettingsModelIntegerBounded matches = new SettingsModelIntegerBounded(MATCHES, 10, 1, Integer.MAX_VALUE);
+
+	/**
+	 * Constructor for the node model.
+	 */
+	protected SubsequenceSearchNodeModel() {
+		// Input port:	Time series data
+		// Input port:	Query
+		// Output port:	Matches
+		super(2, 1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected BufferedDataTable[] execute(final BufferedDataTable[] inData, final ExecutionContext exec) throws Exception {
+		params = new SAXParameters();
+		params.DATECOL = dateCol.getStringValue();
+		params.COLNAME = colname.getStringValue();
+		params.QUERYCOL = queryCol.getStringValue();
+		params.MATCHES = matches.getIntValue();
+
+		TimestampConverter stamps = new TimestampConverter();
+		long[] ts_d = TSProcessor.readTimestamps(inData, params.DATECOL, stamps, exec.createSubProgress(0.1));
+		double[] ts = TSProcessor.readColumn(inData, params.COLNAME, exec.createSubProgress(0.1));
+		int queryIdx = inData[1].getDataTableSpec().findColumnIndex(params.QUERYCOL);
+		double[] query = ColumnReader.readDoubleColumn(inData[1], queryIdx, true, exec.createSubProgress(0.0));
+
+		MASS mass = new MASS(ts, query.length, params.SAX_NORM_THRESHOLD);
+		double[] profile = mass.distanceProfile(query, exec.createSubProgress(0.8));
+
+		BufferedDataContainer container = exec.createDataContainer(SAXTable.createMatchSpec());
+		int rank = 0;
+		for (int pos : mass.topMatches(profile, params.MATCHES)) {
+			DataCell[] cells = new DataCell[3];
+			cells[0] = new IntCell(pos);
+			cells[1] = stamps.createCell(ts_d[pos]);
+			cells[2] = new DoubleCell(profile[pos]);
+			container.addRowToTable(new DefaultRow(new RowKey("Match"+rank++), cells));
+		}
+		container.close();
+		return new BufferedDataTable[]{container.getTable()};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void reset() {}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected DataTableSpec[] configure(final DataTableSpec[] inSpecs) throws InvalidSettingsException {
+		if (colname.getStringValue() == null || inSpecs[0].findColumnIndex(colname.getStringValue()) < 0)
+			throw new InvalidSettingsException("Select the time series column.");
+		if (queryCol.getStringValue() == null || inSpecs[1].findColumnIndex(queryCol.getStringValue()) < 0)
+			throw new InvalidSettingsException("Select the query column.");
+		return new DataTableSpec[]{SAXTable.createMatchSpec()};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		this.dateCol.saveSettingsTo(settings);
+		this.colname.saveSettingsTo(settings);
+		this.queryCol.saveSettingsTo(settings);
+		this.matches.saveSettingsTo(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		this.dateCol.loadSettingsFrom(settings);
+		this.colname.loadSettingsFrom(settings);
+		this.queryCol.loadSettingsFrom(settings);
+		this.matches.loadSettingsFrom(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		this.dateCol.validateSettings(settings);
+		this.colname.validateSettings(settings);
+		this.queryCol.validateSettings(settings);
+		this.matches.validateSettings(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadInternals(final File internDir, final ExecutionMonitor exec) throws IOException, CanceledExecutionException {}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveInternals(final File internDir, final ExecutionMonitor exec) throws IOException, CanceledExecutionException {}
+}
@@ -1,10 +1,11 @@
 package uk.ac.reading.cs.knime.sax;
 
+import java.text.ParseException;
 import java.util.Arrays;
-import java.util.ArrayList;
 
-import org.knime.core.data.container.CloseableRowIterator;
 import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
 
 /**
  * Implements algorithms for low-level data manipulation.
@@ -12,57 +13,45 @@ import org.knime.core.node.BufferedDataTable;
  * @author Ryan Faulkner
  */
 public class TSProcessor {
-	ArrayList<PAARecord> paa_idx;
-	
 	/** The Latin alphabet, lower case letters a-z. */
 	public static final char[] ALPHABET = { 'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm', 
 											'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z' };
 	/**
 	 * Constructor.
 	 */
-	public TSProcessor() {
-		paa_idx = new ArrayList<PAARecord>();
-	}
+	public TSProcessor() {}
 	
 	/**
 	 * Reads time series from a input node. 
 	 * Assumes that input has a single double value on every line.
-	 * Assigned timestamps are the line numbers.
-	 * @param filename	The file to read from.
-	 * @param columnIdx The column index.
-	 * @param sizeLimit The number of lines to read, 0 == all.
+	 * Missing values take the last value seen before them.
+	 * @param inData	The input tables.
+	 * @param colname	The column name.
+	 * @param exec		The monitor to report progress to.
 	 * @return Timeseries data.
+	 * @throws CanceledExecutionException if the execution was cancelled.
 	 */
-	public static double[] readColumn(BufferedDataTable[] inData, String colname) {
-		ArrayList<Double> ts_a = new ArrayList<Double>();
-		// Create iterator
-		CloseableRowIterator tableIterator = inData[0].iterator();
-		// Access rows using iterator
+	public static double[] readColumn(BufferedDataTable[] inData, String colname, ExecutionMonitor exec) throws CanceledExecutionException {
 		int index = inData[0].getDataTableSpec().findColumnIndex(colname);
-		// Using the index execute the converter
-		while(tableIterator.hasNext()){
-			String cell = tableIterator.next().getCell(index).toString();
-			ts_a.add(Double.parseDouble(cell));
-		}
-		return ts_a.stream().mapToDouble(d -> d).toArray();
+		return ColumnReader.readDoubleColumn(inData[0], index, true, exec);
 	}
 	
-	public static String[] readTSColumn(BufferedDataTable[] inData, String colname) {
-		ArrayList<String> ts_a = new ArrayList<String>();
-		// Create iterator
-		CloseableRowIterator tableIterator = inData[0].iterator();
-		// Access rows using iterator
+	/**
+	 * Reads the timestamps of a time series from a input node, as epoch milliseconds.
+	 * @param inData	The input tables.
+	 * @param colname	The column name.
+	 * @param converter	The converter of the column's cells.
+	 * @param exec		The monitor to report progress to.
+	 * @return the timestamps.
+	 * @throws CanceledExecutionException if the execution was cancelled.
+	 * @throws ParseException if a timestamp can't be parsed.
+	 */
+	public static long[] readTimestamps(BufferedDataTable[] inData, String colname, TimestampConverter converter,
+			ExecutionMonitor exec) throws CanceledExecutionException, ParseException {
 		int index = inData[0].getDataTableSpec().findColumnIndex(colname);
-		// Using the index execute the converter
-		while(tableIterator.hasNext()){
-			String cell = tableIterator.next().getCell(index).toString();
-			ts_a.add(cell);
-		}
-		String[] ts_d = new String[ts_a.size()];
-		ts_d = ts_a.toArray(ts_d);
-		return ts_d;
+		return ColumnReader.readTimestampColumn(inData[0], index, converter, exec);
 	}
-
+	
 	/**
 	 * Computes the mean value of timeseries.
 	 * @param series The timeseries.
@@ -126,7 +115,7 @@ public class TSProcessor {
 	 * @return PAA-approximated timeseries.
 	 * @throws SAXException if error occurs.
 	 */
-	public double[] paa(double[] ts, int paaSize, int offset) throws SAXException {
+	public double[] paa(double[] ts, int paaSize) throws SAXException {
 		// fix the length
 		int len = ts.length;
 		if (len < paaSize)
@@ -164,8 +153,6 @@ public class TSProcessor {
 					elementsSum = elementsSum + e;
 
 				paa[i] = elementsSum / pointsPerSegment;
-				
-				paa_idx.add(new PAARecord(segStart + offset, segEnd + offset, paa[i]));
 			}
 			return paa;
 		}
@@ -192,9 +179,19 @@ public class TSProcessor {
 	 * @return character corresponding to numeric value.
 	 */
 	public static char num2char(double value, double[] cuts) {
+		return ALPHABET[num2index(value, cuts)];
+	}
+
+	/**
+	 * Get mapping of a number to the index of its symbol.
+	 * @param value the value to map.
+	 * @param cuts the array of intervals.
+	 * @return index of the symbol corresponding to numeric value, 0 stands for 'a'.
+	 */
+	public static int num2index(double value, double[] cuts) {
 		int count = 0;
 		while ((count < cuts.length) && (cuts[count] <= value))
 			count++;
-		return ALPHABET[count];
-	}	
+		return count;
+	}
 }
\ No newline at end of file
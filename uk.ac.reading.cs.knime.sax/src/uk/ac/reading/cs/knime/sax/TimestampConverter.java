@@ -0,0 +1,138 @@
+package uk.ac.reading.cs.knime.sax;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.ZoneOffset;
+import java.util.TimeZone;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataType;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.LongValue;
+import org.knime.core.data.date.DateAndTimeCell;
+import org.knime.core.data.date.DateAndTimeValue;
+import org.knime.core.data.time.localdatetime.LocalDateTimeValue;
+import org.knime.core.data.time.zoneddatetime.ZonedDateTimeValue;
+
+/**
+ * Converts the cells of a timestamp column into epoch milliseconds, and milliseconds back into
+ * output cells. Date and time cells are read natively, local ones as if they were UTC so the
+ * output shows the same fields as the input, and numeric cells are taken as epoch milliseconds.
+ * Any other cell is parsed from its string representation, with a format picked once from
+ * the first such cell. The output cells have the date, time and milliseconds fields of the
+ * first timestamp converted.
+ *
+ * @author Ryan Faulkner
+ */
+public final class TimestampConverter {
+	/** The value of a missing timestamp. */
+	public static final long MISSING = Long.MIN_VALUE;
+
+	/** The time zone the timestamps are expressed in. */
+	public static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+	private boolean typed;
+	private boolean hasDate = true;
+	private boolean hasTime = true;
+	private boolean hasMillis;
+	private DateFormat format;
+
+	/**
+	 * Constructor.
+	 */
+	public TimestampConverter() {}
+
+	/**
+	 * Converts a cell into epoch milliseconds.
+	 * @param cell	The cell.
+	 * @return the epoch milliseconds, or MISSING if the cell is missing.
+	 * @throws ParseException if the string representation of the cell can't be parsed.
+	 */
+	public long toMillis(DataCell cell) throws ParseException {
+		if (cell.isMissing())
+			return MISSING;
+		if (cell instanceof DateAndTimeValue) {
+			DateAndTimeValue v = (DateAndTimeValue) cell;
+			setFields(v.hasDate(), v.hasTime(), v.hasMillis());
+			return v.getUTCTimeInMillis();
+		}
+		if (cell instanceof LocalDateTimeValue) {
+			setFields(true, true, true);
+			return ((LocalDateTimeValue) cell).getLocalDateTime().toInstant(ZoneOffset.UTC).toEpochMilli();
+		}
+		if (cell instanceof ZonedDateTimeValue) {
+			setFields(true, true, true);
+			return ((ZonedDateTimeValue) cell).getZonedDateTime().toInstant().toEpochMilli();
+		}
+		if (cell instanceof LongValue) {
+			setFields(true, true, true);
+			return ((LongValue) cell).getLongValue();
+		}
+		if (cell instanceof DoubleValue) {
+			setFields(true, true, true);
+			return (long) ((DoubleValue) cell).getDoubleValue();
+		}
+
+		String str = cell.toString();
+		if (format == null) {
+			// the formats the node has always accepted, told apart by their length
+			boolean timeOnly = str.length() <= 12;
+			format = new SimpleDateFormat(timeOnly ? "HH:mm:ss.SSS" : "yyyy-MM-dd'T'HH:mm:ss");
+			format.setTimeZone(UTC);
+			setFields(!timeOnly, true, timeOnly);
+		}
+		return format.parse(str).getTime();
+	}
+
+	/**
+	 * Creates the output cell of a timestamp.
+	 * @param millis The epoch milliseconds.
+	 * @return the cell.
+	 */
+	public DataCell createCell(long millis) {
+		if (millis == MISSING)
+			return DataType.getMissingCell();
+		return new DateAndTimeCell(millis, hasDate, hasTime, hasMillis);
+	}
+
+	/**
+	 * Checks whether the timestamps carry a date.
+	 * @return false if the timestamps are times of day only.
+	 */
+	public boolean hasDate() {
+		return hasDate;
+	}
+
+	/**
+	 * Checks whether the timestamps carry a time of day.
+	 * @return false if the timestamps are dates only.
+	 */
+	public boolean hasTime() {
+		return hasTime;
+	}
+
+	/**
+	 * Checks whether the timestamps carry milliseconds.
+	 * @return true if the timestamps carry milliseconds.
+	 */
+	public boolean hasMillis() {
+		return hasMillis;
+	}
+
+	/**
+	 * Sets the fields of the output cells from the first timestamp, or from the ones saved
+	 * with the node internals.
+	 * @param date		Whether the timestamp has a date.
+	 * @param time		Whether the timestamp has a time.
+	 * @param millis	Whether the timestamp has milliseconds.
+	 */
+	void setFields(boolean date, boolean time, boolean millis) {
+		if (typed)
+			return;
+		typed = true;
+		hasDate = date;
+		hasTime = time;
+		hasMillis = millis;
+	}
+}
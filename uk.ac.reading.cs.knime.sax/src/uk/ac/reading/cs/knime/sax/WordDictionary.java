@@ -0,0 +1,94 @@
+package uk.ac.reading.cs.knime.sax;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
+
+/**
+ * The dictionary of the SAX words written by the node. Words get ids in the order they first
+ * appear in the series, and the word cell of every id is created once and shared by all its rows.
+ *
+ * @author Ryan Faulkner
+ */
+final class WordDictionary {
+	private final boolean wordIds;
+	private final HashMap<String, Integer> ids;
+	private final ArrayList<String> words;
+	private final ArrayList<DataCell> cells;
+	private int[] frequency;
+
+	/**
+	 * Constructor.
+	 * @param wordIds If true the word cells are ids, otherwise SAX strings.
+	 */
+	WordDictionary(boolean wordIds) {
+		this.wordIds = wordIds;
+		this.ids = new HashMap<String, Integer>();
+		this.words = new ArrayList<String>();
+		this.cells = new ArrayList<DataCell>();
+		this.frequency = new int[64];
+	}
+
+	/**
+	 * Counts an occurrence of a word.
+	 * @param word The SAX string.
+	 * @return the word id.
+	 */
+	int add(String word) {
+		Integer id = ids.get(word);
+		if (id == null)
+			id = define(word, 0);
+		frequency[id]++;
+		return id;
+	}
+
+	/**
+	 * Adds a word which does not appear yet, with all its occurrences.
+	 * @param word		The SAX string.
+	 * @param count		The number of occurrences.
+	 * @return the word id, the number of words defined before.
+	 */
+	int define(String word, int count) {
+		int id = words.size();
+		if (id == frequency.length)
+			frequency = Arrays.copyOf(frequency, id * 2);
+		ids.put(word, id);
+		words.add(word);
+		cells.add(wordIds ? new IntCell(id) : new StringCell(word));
+		frequency[id] = count;
+		return id;
+	}
+
+	/**
+	 * Get the number of words.
+	 * @return the number of words.
+	 */
+	int size() {
+		return words.size();
+	}
+
+	/**
+	 * Get the cell a word is written as in the SAX output.
+	 * @param id The word id.
+	 * @return the word cell.
+	 */
+	DataCell getCell(int id) {
+		return cells.get(id);
+	}
+
+	/**
+	 * Creates the dictionary row of a word.
+	 * @param id The word id.
+	 * @return the row.
+	 */
+	DataRow createRow(int id) {
+		return new DefaultRow(new RowKey("Word" + id), new IntCell(id), new StringCell(words.get(id)), new IntCell(frequency[id]));
+	}
+}